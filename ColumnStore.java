@@ -0,0 +1,216 @@
+package quoc_a3.ePortfolio;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the positions of columnar {@link Holdings} in parallel primitive arrays, one per
+ * field, instead of one {@link Investment} object per position. The symbol is kept as its id in the
+ * {@link SymbolTable} and the type as a byte, so a slot costs 29 bytes of array space and no object
+ * header, and the arrays are indexed by the same slots as the holdings' other arrays.
+ *
+ * Code that works with investments is handed {@link Row} views, which read and write their slot in
+ * place and cost nothing once they are no longer used. A view finds its slot again by its symbol after
+ * the slots are compacted; a view passed to {@link Holdings#remove(Investment)} keeps the values it had
+ * when it was removed.
+ */
+final class ColumnStore {
+
+    private static final InvestmentType[] TYPES = InvestmentType.values();
+
+    /** The holdings the positions belong to, told of every change made through a view. */
+    private final Holdings holdings;
+
+    /** Slot of each held position, by symbol id; the holdings' own index. */
+    private final IntIndex slots;
+
+    // One entry per slot; an empty slot has a symbol id of -1
+    private byte[] types;
+    private int[] symbolIds;
+    private String[] names;
+    private int[] quantities;
+    private long[] prices;
+    private long[] bookValues;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param holdings The holdings the positions belong to.
+     * @param slots The holdings' index of slots by symbol id.
+     * @param capacity The number of slots to allocate space for.
+     */
+    ColumnStore(Holdings holdings, IntIndex slots, int capacity) {
+        this.holdings = holdings;
+        this.slots = slots;
+        types = new byte[capacity];
+        symbolIds = new int[capacity];
+        names = new String[capacity];
+        quantities = new int[capacity];
+        prices = new long[capacity];
+        bookValues = new long[capacity];
+        Arrays.fill(symbolIds, -1);
+    }
+
+    /**
+     * @return The number of slots there is space for.
+     */
+    int capacity() {
+        return symbolIds.length;
+    }
+
+    /**
+     * Grows every column to a new number of slots.
+     */
+    void grow(int capacity) {
+        int old = symbolIds.length;
+        types = Arrays.copyOf(types, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        bookValues = Arrays.copyOf(bookValues, capacity);
+        Arrays.fill(symbolIds, old, capacity, -1);
+    }
+
+    /**
+     * Copies an investment's values into a slot.
+     */
+    void set(int slot, Investment investment) {
+        types[slot] = (byte) investment.getInvestmentType().ordinal();
+        symbolIds[slot] = investment.getSymbolId();
+        names[slot] = investment.getName().intern();
+        quantities[slot] = investment.getQuantity();
+        prices[slot] = investment.getPriceUnits();
+        bookValues[slot] = investment.getBookValueUnits();
+    }
+
+    /**
+     * Moves the position in one slot to another, leaving the first as it was.
+     */
+    void move(int from, int to) {
+        types[to] = types[from];
+        symbolIds[to] = symbolIds[from];
+        names[to] = names[from];
+        quantities[to] = quantities[from];
+        prices[to] = prices[from];
+        bookValues[to] = bookValues[from];
+    }
+
+    /**
+     * Empties a range of slots.
+     *
+     * @param from The first slot to empty, inclusive.
+     * @param to The last slot to empty, exclusive.
+     */
+    void clear(int from, int to) {
+        Arrays.fill(symbolIds, from, to, -1);
+        Arrays.fill(names, from, to, null);
+    }
+
+    /**
+     * @return The symbol id of the position in a slot, or -1 if the slot is empty.
+     */
+    int symbolId(int slot) {
+        return symbolIds[slot];
+    }
+
+    /**
+     * @param slot A slot that holds a position.
+     * @return A view that reads and writes the position in place.
+     */
+    Investment view(int slot) {
+        return new Row(symbolIds[slot], slot);
+    }
+
+    /**
+     * @return True if the investment is a view of a position still held in this store.
+     */
+    boolean holds(Investment investment) {
+        return investment instanceof Row && ((Row) investment).isHeldIn(this);
+    }
+
+    /**
+     * Makes a view keep the values its position has now, before the position is removed.
+     *
+     * @param investment A view of a position held in this store.
+     */
+    void detach(Investment investment) {
+        ((Row) investment).detach();
+    }
+
+    /**
+     * An Investment that keeps no values of its own and reads and writes one slot of the store.
+     */
+    private final class Row extends Investment {
+        /** The slot the position was last found in. */
+        private int slot;
+
+        /** The values the position had when it was removed, or null while it is held. */
+        private Investment removed;
+
+        private Row(int symbolId, int slot) {
+            super(null, symbolId, null, 0, 0, 0);
+            this.slot = slot;
+            setHoldings(holdings);
+        }
+
+        /**
+         * @return The slot that holds the position now, looked up again if the slots were compacted.
+         * @throws IllegalStateException If the position is no longer held.
+         */
+        private int slot() {
+            if (slot >= symbolIds.length || symbolIds[slot] != getSymbolId()) {
+                slot = slots.get(getSymbolId());
+                if (slot < 0) {
+                    throw new IllegalStateException(getSymbol() + " is no longer held.");
+                }
+            }
+            return slot;
+        }
+
+        private boolean isHeldIn(ColumnStore store) {
+            return store == ColumnStore.this && removed == null && slots.get(getSymbolId()) >= 0;
+        }
+
+        private void detach() {
+            removed = new Investment(getInvestmentType(), getSymbolId(), getName(),
+                    getQuantity(), getPriceUnits(), getBookValueUnits());
+        }
+
+        @Override
+        public InvestmentType getInvestmentType() {
+            return removed != null ? removed.getInvestmentType() : TYPES[types[slot()]];
+        }
+
+        @Override
+        public String getName() {
+            return removed != null ? removed.getName() : names[slot()];
+        }
+
+        @Override
+        public int getQuantity() {
+            return removed != null ? removed.getQuantity() : quantities[slot()];
+        }
+
+        @Override
+        public long getPriceUnits() {
+            return removed != null ? removed.getPriceUnits() : prices[slot()];
+        }
+
+        @Override
+        public long getBookValueUnits() {
+            return removed != null ? removed.getBookValueUnits() : bookValues[slot()];
+        }
+
+        @Override
+        void assign(int quantity, long price, long bookValue) {
+            if (removed != null) {
+                removed.assign(quantity, price, bookValue);
+                return;
+            }
+            int at = slot();
+            quantities[at] = quantity;
+            prices[at] = price;
+            bookValues[at] = bookValue;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package quoc_a3.ePortfolio;
+
+/**
+ * This class keeps running totals of the market value and book value of a portfolio, per investment type.
+ * The totals are adjusted by the change in value whenever a held investment's price, quantity, or book
+ * value changes, so the portfolio-wide gain is available in constant time instead of by summing every holding.
+ * The totals are kept in exact {@link Money} units, so millions of changes add up without rounding drift.
+ * The gain of the units still held is unrealized; the gain of the units already sold is kept separately as
+ * the realized gain, which stays in the totals after the investment is no longer held.
+ * Every sum is checked for overflow, and {@link Holdings} checks a change with checkChange before it
+ * changes a position, so a change too large for the totals is refused instead of wrapping around.
+ */
+public class GainTotals {
+
+    /** Index of the stock totals, which is the type's ordinal. */
+    private static final int STOCK = InvestmentType.STOCK.ordinal();
+
+    /** Index of the mutual fund totals, which is the type's ordinal. */
+    private static final int MUTUAL_FUND = InvestmentType.MUTUAL_FUND.ordinal();
+
+    /** Total price * quantity of the holdings of each type. */
+    private final long[] marketValue = new long[2];
+
+    /** Total book value of the holdings of each type. */
+    private final long[] bookValue = new long[2];
+
+    /** Total sale proceeds minus the cost of the units sold, for each type. */
+    private final long[] realizedGain = new long[2];
+
+    /** Number of holdings included in the totals. */
+    private int count;
+
+    /**
+     * @return A copy of the totals as they are now, which later changes do not affect.
+     */
+    public GainTotals copy() {
+        GainTotals copy = new GainTotals();
+        System.arraycopy(marketValue, 0, copy.marketValue, 0, marketValue.length);
+        System.arraycopy(bookValue, 0, copy.bookValue, 0, bookValue.length);
+        System.arraycopy(realizedGain, 0, copy.realizedGain, 0, realizedGain.length);
+        copy.count = count;
+        return copy;
+    }
+
+    /**
+     * Adds another portfolio's totals to these, such as to combine the totals of several accounts.
+     *
+     * @param other The totals to add, which are not changed.
+     * @throws ArithmeticException If a combined total would not fit in a long; these totals are then left as they were.
+     */
+    void add(GainTotals other) {
+        long[] sums = new long[3 * marketValue.length];
+        for (int type = 0; type < marketValue.length; type++) {
+            sums[3 * type] = Math.addExact(marketValue[type], other.marketValue[type]);
+            sums[3 * type + 1] = Math.addExact(bookValue[type], other.bookValue[type]);
+            sums[3 * type + 2] = Math.addExact(realizedGain[type], other.realizedGain[type]);
+        }
+        long totalMarketValue = 0;
+        long totalBookValue = 0;
+        long totalRealizedGain = 0;
+        for (int type = 0; type < marketValue.length; type++) {
+            Math.subtractExact(sums[3 * type], sums[3 * type + 1]);
+            totalMarketValue = Math.addExact(totalMarketValue, sums[3 * type]);
+            totalBookValue = Math.addExact(totalBookValue, sums[3 * type + 1]);
+            totalRealizedGain = Math.addExact(totalRealizedGain, sums[3 * type + 2]);
+        }
+        Math.subtractExact(totalMarketValue, totalBookValue);
+
+        // Only change the totals once every sum is known to fit
+        for (int type = 0; type < marketValue.length; type++) {
+            marketValue[type] = sums[3 * type];
+            bookValue[type] = sums[3 * type + 1];
+            realizedGain[type] = sums[3 * type + 2];
+        }
+        count += other.count;
+    }
+
+    /**
+     * Checks that the totals can take a change to the market and book values of one type, so the
+     * change can be refused before anything is changed. The totals themselves are not changed.
+     *
+     * @param type The type of the investment changing.
+     * @param marketValueDelta The change in market value, in units.
+     * @param bookValueDelta The change in book value, in units.
+     * @throws ArithmeticException If a total or gain would not fit in a long.
+     */
+    void checkChange(InvestmentType type, long marketValueDelta, long bookValueDelta) {
+        long totalMarketValue = 0;
+        long totalBookValue = 0;
+        for (int index = 0; index < marketValue.length; index++) {
+            long market = marketValue[index];
+            long book = bookValue[index];
+            if (index == type.ordinal()) {
+                market = Math.addExact(market, marketValueDelta);
+                book = Math.addExact(book, bookValueDelta);
+            }
+            Math.subtractExact(market, book);
+            totalMarketValue = Math.addExact(totalMarketValue, market);
+            totalBookValue = Math.addExact(totalBookValue, book);
+        }
+        Math.subtractExact(totalMarketValue, totalBookValue);
+    }
+
+    /**
+     * Checks that the realized gain can take the gain of a sale, without changing it.
+     *
+     * @param type The type of the investment sold.
+     * @param gain The gain of the sale, in units.
+     * @throws ArithmeticException If the realized gain would not fit in a long.
+     */
+    void checkRealized(InvestmentType type, long gain) {
+        long realized = Math.addExact(realizedGain[type.ordinal()], gain);
+        for (int index = 0; index < realizedGain.length; index++) {
+            if (index != type.ordinal()) {
+                realized = Math.addExact(realized, realizedGain[index]);
+            }
+        }
+    }
+
+    /**
+     * Adds a newly held investment to the totals.
+     *
+     * @param investment The investment now held.
+     */
+    void add(Investment investment) {
+        int type = investment.getInvestmentType().ordinal();
+        long market = Math.addExact(marketValue[type], Money.times(investment.getPriceUnits(), investment.getQuantity()));
+        bookValue[type] = Math.addExact(bookValue[type], investment.getBookValueUnits());
+        marketValue[type] = market;
+        count++;
+    }
+
+    /**
+     * Removes an investment that is no longer held from the totals.
+     *
+     * @param investment The investment no longer held.
+     */
+    void remove(Investment investment) {
+        int type = investment.getInvestmentType().ordinal();
+        long market = Math.subtractExact(marketValue[type], Money.times(investment.getPriceUnits(), investment.getQuantity()));
+        bookValue[type] = Math.subtractExact(bookValue[type], investment.getBookValueUnits());
+        marketValue[type] = market;
+        count--;
+    }
+
+    /**
+     * Adjusts the totals by the change in a held investment's market value and book value.
+     *
+     * @param investment The investment whose price, quantity, or book value changed.
+     * @param marketValueDelta The new market value minus the old market value, in units.
+     * @param bookValueDelta The new book value minus the old book value, in units.
+     */
+    void changed(Investment investment, long marketValueDelta, long bookValueDelta) {
+        int type = investment.getInvestmentType().ordinal();
+        long market = Math.addExact(marketValue[type], marketValueDelta);
+        bookValue[type] = Math.addExact(bookValue[type], bookValueDelta);
+        marketValue[type] = market;
+    }
+
+    /**
+     * Adds the gain of a sale to the realized gain.
+     *
+     * @param type The type of the investment sold.
+     * @param gain The sale proceeds minus the cost of the units sold, in units.
+     */
+    void realized(InvestmentType type, long gain) {
+        realizedGain[type.ordinal()] = Math.addExact(realizedGain[type.ordinal()], gain);
+    }
+
+    /**
+     * @return The number of holdings included in the totals.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The total market value of all holdings.
+     */
+    public double getMarketValue() {
+        return Money.toDouble(marketValue[STOCK] + marketValue[MUTUAL_FUND]);
+    }
+
+    /**
+     * @return The total book value of all holdings.
+     */
+    public double getBookValue() {
+        return Money.toDouble(bookValue[STOCK] + bookValue[MUTUAL_FUND]);
+    }
+
+    /**
+     * @return The total unrealized gain of all holdings.
+     */
+    public double getGain() {
+        return Money.toDouble(getGainUnits());
+    }
+
+    /**
+     * @return The exact total unrealized gain of all holdings, in {@link Money} units.
+     */
+    public long getGainUnits() {
+        return marketValue[STOCK] + marketValue[MUTUAL_FUND] - bookValue[STOCK] - bookValue[MUTUAL_FUND];
+    }
+
+    /**
+     * @param type The investment type.
+     * @return The total unrealized gain of the holdings of that type.
+     */
+    public double getGain(InvestmentType type) {
+        return Money.toDouble(getGainUnits(type));
+    }
+
+    /**
+     * @param type The investment type.
+     * @return The exact total unrealized gain of the holdings of that type, in {@link Money} units.
+     */
+    public long getGainUnits(InvestmentType type) {
+        return marketValue[type.ordinal()] - bookValue[type.ordinal()];
+    }
+
+    /**
+     * @return The total gain realized by every sale.
+     */
+    public double getRealizedGain() {
+        return Money.toDouble(getRealizedGainUnits());
+    }
+
+    /**
+     * @return The exact total gain realized by every sale, in {@link Money} units.
+     */
+    public long getRealizedGainUnits() {
+        return realizedGain[STOCK] + realizedGain[MUTUAL_FUND];
+    }
+
+    /**
+     * @param type The investment type.
+     * @return The total gain realized by the sales of that type.
+     */
+    public double getRealizedGain(InvestmentType type) {
+        return Money.toDouble(realizedGain[type.ordinal()]);
+    }
+
+    /**
+     * @param type The investment type.
+     * @return The exact total gain realized by the sales of that type, in {@link Money} units.
+     */
+    public long getRealizedGainUnits(InvestmentType type) {
+        return realizedGain[type.ordinal()];
+    }
+}
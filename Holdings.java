@@ -0,0 +1,832 @@
+package quoc_a3.ePortfolio;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * This class holds every investment in the portfolio, indexed by the id its symbol has in the
+ * {@link SymbolTable}. Each symbol maps to exactly one position, kept in an array in the order the
+ * positions were bought, and an {@link IntIndex} maps each held symbol's id to its slot, so looking
+ * up, merging, and removing a holding are constant-time int operations instead of a scan over the
+ * whole list or a hash of the symbol's String. The arrays grow with the number of positions held
+ * rather than with the number of symbols the application has seen, so many small holdings, one per
+ * account, stay small however many symbols they hold between them. Names and prices are
+ * also kept in a {@link SearchIndex} so that keyword and price range searches avoid a full scan, and
+ * the market and book values are kept in running {@link GainTotals} so the total gain needs no scan.
+ * A position bought more than once keeps its purchase lots in {@link TaxLots}, so each sale reduces the
+ * book value by the cost of the units it sold and adds its gain to the realized gain.
+ * Every price a position takes can also be recorded in a {@link PriceHistory}, and checked against
+ * the rules of a {@link PriceAlerts}.
+ *
+ * The holdings are changed on one thread only. Other threads read them through immutable
+ * {@link PortfolioSnapshot}s: after a batch of changes, {@link #publish()} copies only the positions
+ * that changed into a new version of a persistent {@link SymbolMap} and publishes it atomically.
+ *
+ * Holdings made by {@link #columnar()} keep their positions in a {@link ColumnStore} instead, one
+ * primitive array per field, and hand out views of them, for portfolios too large to keep an object
+ * per position.
+ */
+public class Holdings {
+
+    /**
+     * Receives every change to the positions, on the thread that made the change.
+     */
+    public interface Listener {
+        /**
+         * Called when a new symbol becomes a position.
+         *
+         * @param investment The new position.
+         */
+        void added(Investment investment);
+
+        /**
+         * Called when a position is removed.
+         *
+         * @param investment The removed position.
+         */
+        void removed(Investment investment);
+
+        /**
+         * Called when the price, quantity, or book value of a position changes.
+         *
+         * @param investment The changed position.
+         */
+        void changed(Investment investment);
+    }
+
+    /**
+     * Longest symbol or name that can be bought, in characters. Even at the most UTF-8 bytes a
+     * character takes, a purchase's journal record stays within {@link TransactionJournal#MAX_RECORD_LENGTH}.
+     */
+    static final int MAX_TEXT_LENGTH = 100_000;
+
+    /** Positions in the order they were bought; a removed position leaves a null slot until the array is compacted. */
+    private Investment[] positions;
+
+    /** The same positions kept in columns instead, in columnar holdings; null otherwise. */
+    private final ColumnStore columns;
+
+    /** Number of slots used in the positions array or columns, including slots left empty by removed positions. */
+    private int end;
+
+    /** Number of positions held. */
+    private int count;
+
+    /** Slot of each held position in the positions array or columns, by symbol id. */
+    private final IntIndex slots = new IntIndex();
+
+    /** Keyword and price index over the same positions. */
+    private final SearchIndex searchIndex = new SearchIndex(this::find);
+
+    /** Prefix trie over the same positions' symbols, or null until a search first needs it. */
+    private SymbolTrie symbols;
+
+    /** Running market and book value totals over the same positions. */
+    private final GainTotals totals = new GainTotals();
+
+    /**
+     * Purchase lots of the positions bought more than once, in the same slots as their positions. A
+     * position with no entry is a single lot made up of its whole quantity and book value.
+     */
+    private TaxLots[] lots = new TaxLots[16];
+
+    /** Journal that records every buy, sell, and price update, or null if changes are not journaled. */
+    private TransactionJournal journal;
+
+    /** History that records every price a position has had, or null if prices are not recorded. */
+    private PriceHistory history;
+
+    /** Alert rules checked against the positions that change, or null if no alerts are checked. */
+    private PriceAlerts alerts;
+
+    /** Listener told about every change to the positions, or null if there is none. */
+    private Listener listener;
+
+    /** The latest published version of the positions, read by other threads. */
+    private volatile PortfolioSnapshot snapshot = PortfolioSnapshot.EMPTY;
+
+    /** Builds the next version from the last one published; null until the first version is published. */
+    private SymbolMap.Builder<Investment> versions;
+
+    /** Positions added, changed, or removed since the last version was published; may repeat a position. */
+    private final ArrayList<Investment> unpublished = new ArrayList<>();
+
+    /**
+     * Creates empty holdings that keep an object per position.
+     */
+    public Holdings() {
+        this(false);
+    }
+
+    private Holdings(boolean columnar) {
+        if (columnar) {
+            columns = new ColumnStore(this, slots, lots.length);
+        } else {
+            positions = new Investment[lots.length];
+            columns = null;
+        }
+    }
+
+    /**
+     * Creates empty holdings that keep their positions in primitive columns rather than an object per
+     * position, which takes much less heap for very large portfolios. Investments added are copied into
+     * the columns, and the positions are handed out as views that read and write them in place; a view
+     * of a position can not be used once it is removed, except the one it was removed through.
+     *
+     * @return The new holdings.
+     */
+    public static Holdings columnar() {
+        return new Holdings(true);
+    }
+
+    /**
+     * Normalizes a symbol so that lookups ignore surrounding whitespace and letter case.
+     *
+     * @param symbol The symbol as entered by the user or read from a file.
+     * @return The key used to index the symbol.
+     */
+    public static String normalize(String symbol) {
+        return symbol.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the position held for a symbol.
+     *
+     * @param symbol The symbol to look up, in any letter case.
+     * @return The matching investment, or null if the symbol is not held.
+     */
+    public Investment find(String symbol) {
+        int symbolId = SymbolTable.find(symbol);
+        return symbolId < 0 ? null : find(symbolId);
+    }
+
+    /**
+     * Finds the position held for a symbol id.
+     *
+     * @param symbolId The id of the symbol in the {@link SymbolTable}.
+     * @return The matching investment, or null if the symbol is not held.
+     */
+    public Investment find(int symbolId) {
+        int slot = slots.get(symbolId);
+        return slot < 0 ? null : position(slot);
+    }
+
+    /**
+     * Adds an investment to the portfolio. If the symbol is already held, the new investment is
+     * merged into the existing position: the quantities and book values are added together and
+     * the price is set to the latest purchase price. Columnar holdings copy a new investment's values
+     * and return a view of them instead.
+     *
+     * @param investment The investment to add.
+     * @return The indexed position that now holds the investment.
+     * @throws IllegalArgumentException If the quantity is not positive, the price is negative, the
+     *         symbol is already held as a different type, or the position or the totals would be too
+     *         large; the holdings are then left as they were.
+     */
+    public Investment add(Investment investment) {
+        checkQuantity(investment.getQuantity());
+        checkPrice(investment.getPriceUnits());
+        int symbolId = investment.getSymbolId();
+        Investment existing = find(symbolId);
+
+        // A new symbol simply becomes its own position, once the totals are known to have room for it
+        if (existing == null) {
+            try {
+                totals.checkChange(investment.getInvestmentType(),
+                        Money.times(investment.getPriceUnits(), investment.getQuantity()), investment.getBookValueUnits());
+            } catch (ArithmeticException e) {
+                throw tooLarge(e);
+            }
+            if (end == capacity()) {
+                makeRoom();
+            }
+            slots.put(symbolId, end);
+            if (columns != null) {
+                columns.set(end, investment);
+                investment = columns.view(end);
+            } else {
+                positions[end] = investment;
+            }
+            end++;
+            count++;
+            searchIndex.add(investment);
+            if (symbols != null) {
+                symbols.add(SymbolTable.key(symbolId), symbolId);
+            }
+            totals.add(investment);
+            investment.setHoldings(this);
+            if (history != null) {
+                history.record(SymbolTable.key(symbolId), System.currentTimeMillis(), investment.getPriceUnits());
+            }
+            unpublished(investment);
+            if (alerts != null) {
+                alerts.changed(investment);
+            }
+            if (listener != null) {
+                listener.added(investment);
+            }
+            return investment;
+        }
+
+        // A symbol can not be both a stock and a mutual fund
+        if (existing.getInvestmentType() != investment.getInvestmentType()) {
+            throw new IllegalArgumentException(existing.getSymbol() + " is already held as a "
+                    + existing.getType() + ".");
+        }
+
+        // Merge the purchase into the position that is already indexed, as its newest lot; the merged
+        // values are checked before anything changes, so a purchase that does not fit changes nothing
+        int oldQuantity = existing.getQuantity();
+        long oldBookValue = existing.getBookValueUnits();
+        try {
+            existing.update(Math.addExact(oldQuantity, investment.getQuantity()), investment.getPriceUnits(),
+                    Math.addExact(oldBookValue, investment.getBookValueUnits()));
+        } catch (ArithmeticException e) {
+            throw tooLarge(e);
+        }
+        int slot = slots.get(symbolId);
+        TaxLots positionLots = lots[slot];
+        if (positionLots == null) {
+            positionLots = new TaxLots(oldQuantity, oldBookValue);
+            lots[slot] = positionLots;
+        }
+        positionLots.add(investment.getQuantity(), investment.getBookValueUnits());
+        return existing;
+    }
+
+    /**
+     * Buys an investment, merging it into the existing position if the symbol is already held.
+     * The purchase is recorded in the journal.
+     *
+     * @param type The investment type.
+     * @param symbol The symbol of the investment.
+     * @param name The name of the investment.
+     * @param quantity The number of units bought.
+     * @param price The price paid per unit.
+     * @return The indexed position that now holds the investment.
+     * @throws IllegalArgumentException If the symbol or name is too long, the quantity
+     *         is not positive, the price is negative, the symbol is held as a different type, or the
+     *         purchase is too large for the position or the totals.
+     */
+    public Investment buy(InvestmentType type, String symbol, String name, int quantity, double price) {
+        if (symbol.length() > MAX_TEXT_LENGTH || name.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("Symbol and name must be at most " + MAX_TEXT_LENGTH + " characters.");
+        }
+        checkQuantity(quantity);
+        priceUnits(price);
+        Investment investment;
+        try {
+            investment = Investment.of(type, symbol, name, quantity, price, 0);
+            investment.setBookValueUnits(Money.times(investment.getPriceUnits(), quantity));
+        } catch (ArithmeticException e) {
+            throw tooLarge(e);
+        }
+
+        Investment position = add(investment);
+        if (journal != null) {
+            journal.logBuy(type, symbol, name, quantity, price);
+        }
+        return position;
+    }
+
+    /**
+     * Sells part or all of a position at its current price, selling the units of the oldest lots first.
+     *
+     * @param symbol The symbol to sell, in any letter case.
+     * @param quantity The number of units to sell.
+     * @return The position that was sold from.
+     * @throws IllegalArgumentException If the quantity is not positive, the symbol is not held, or not
+     *         enough units are held.
+     * @see #sell(String, int, TaxLots.Method)
+     */
+    public Investment sell(String symbol, int quantity) {
+        return sell(symbol, quantity, TaxLots.Method.FIFO);
+    }
+
+    /**
+     * Sells part or all of a position at its current price. The book value is reduced by the cost of
+     * the units sold, chosen by the given method, and the sale proceeds minus that cost are added to
+     * the realized gain. The position is removed once its quantity reaches 0.
+     * The sale is recorded in the journal.
+     *
+     * @param symbol The symbol to sell, in any letter case.
+     * @param quantity The number of units to sell.
+     * @param method How the units sold are chosen from the position's lots.
+     * @return The position that was sold from.
+     * @throws IllegalArgumentException If the quantity is not positive, the symbol is not held, not
+     *         enough units are held, or the realized gain would be too large.
+     */
+    public Investment sell(String symbol, int quantity, TaxLots.Method method) {
+        checkQuantity(quantity);
+        Investment investment = find(symbol);
+        if (investment == null) {
+            throw new IllegalArgumentException("Investment not found.");
+        }
+        if (investment.getQuantity() < quantity) {
+            throw new IllegalArgumentException("Not enough quantity to sell.");
+        }
+
+        // Work out the cost of the units sold and check the sale fits before changing anything;
+        // a single lot is sold at its cost per unit either way
+        int slot = slots.get(investment.getSymbolId());
+        TaxLots positionLots = lots[slot];
+        long gain;
+        try {
+            long cost = positionLots != null ? positionLots.cost(quantity, method)
+                    : Money.share(investment.getBookValueUnits(), quantity, investment.getQuantity());
+            gain = Math.subtractExact(Money.times(investment.getPriceUnits(), quantity), cost);
+            totals.checkRealized(investment.getInvestmentType(), gain);
+            investment.update(investment.getQuantity() - quantity, investment.getPriceUnits(),
+                    Math.subtractExact(investment.getBookValueUnits(), cost));
+        } catch (ArithmeticException e) {
+            throw tooLarge(e);
+        }
+        if (positionLots != null) {
+            positionLots.relieve(quantity, method);
+            if (positionLots.getLotCount() <= 1) {
+                lots[slot] = null;
+            }
+        }
+        totals.realized(investment.getInvestmentType(), gain);
+
+        // Remove the investment if the quantity is 0
+        if (investment.getQuantity() == 0) {
+            remove(investment);
+        }
+        if (journal != null) {
+            journal.logSell(symbol, quantity, method);
+        }
+        return investment;
+    }
+
+    /**
+     * Checks the number of units bought or sold, so a negative quantity cannot reverse a trade.
+     *
+     * @throws IllegalArgumentException If the quantity is not positive.
+     */
+    private static void checkQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than 0.");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If the price, in units, is negative.
+     */
+    private static void checkPrice(long price) {
+        if (price < 0) {
+            throw new IllegalArgumentException("Price must not be negative.");
+        }
+    }
+
+    /**
+     * Converts a price entered by the user to units.
+     *
+     * @throws IllegalArgumentException If the price is not a number, is negative, or is too large.
+     */
+    private static long priceUnits(double price) {
+        if (Double.isNaN(price)) {
+            throw new IllegalArgumentException("Price must be a number.");
+        }
+        long units;
+        try {
+            units = Money.of(price);
+        } catch (ArithmeticException e) {
+            throw tooLarge(e);
+        }
+        checkPrice(units);
+        return units;
+    }
+
+    /**
+     * @return The exception to throw, with a message for the user, when a change was refused because an
+     *         amount would not fit in a long.
+     */
+    private static IllegalArgumentException tooLarge(ArithmeticException e) {
+        return new IllegalArgumentException("The amount is too large for the portfolio.", e);
+    }
+
+    /**
+     * Updates the price of a position. The update is recorded in the journal.
+     *
+     * @param symbol The symbol to update, in any letter case.
+     * @param price The new price per unit.
+     * @return The updated position.
+     * @throws IllegalArgumentException If the price is negative, the symbol is not held, or the position's
+     *         market value would be too large; the position is then left as it was.
+     */
+    public Investment updatePrice(String symbol, double price) {
+        long units = priceUnits(price);
+        Investment investment = find(symbol);
+        if (investment == null) {
+            throw new IllegalArgumentException("Investment not found.");
+        }
+
+        try {
+            investment.setPriceUnits(units);
+        } catch (ArithmeticException e) {
+            throw tooLarge(e);
+        }
+        if (journal != null) {
+            journal.logUpdate(symbol, price);
+        }
+        return investment;
+    }
+
+    /**
+     * Starts or stops recording changes made through buy, sell, and updatePrice.
+     *
+     * @param journal The journal to record changes in, or null to stop recording.
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Starts or stops recording the price of each position every time it changes, including live quotes.
+     *
+     * @param history The history to record prices in, or null to stop recording.
+     */
+    public void setHistory(PriceHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * @return The history that prices are recorded in, or null if prices are not recorded.
+     */
+    public PriceHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Starts or stops checking alert rules against the positions. The positions changed since the last
+     * check are checked each time the holdings are published.
+     *
+     * @param alerts The alerts to check, or null to stop checking.
+     */
+    public void setAlerts(PriceAlerts alerts) {
+        if (this.alerts != null) {
+            this.alerts.attach(null);
+        }
+        this.alerts = alerts;
+        if (alerts != null) {
+            alerts.attach(this);
+        }
+    }
+
+    /**
+     * @return The alerts checked against the positions, or null if no alerts are checked.
+     */
+    public PriceAlerts getAlerts() {
+        return alerts;
+    }
+
+    /**
+     * Takes a journal snapshot, so changes made without journal records, such as a bulk import, are saved.
+     * Does nothing if changes are not journaled.
+     */
+    public void checkpoint() {
+        if (journal != null) {
+            journal.snapshot();
+        }
+    }
+
+    /**
+     * Sets the listener told about every position that is added, removed, or changed.
+     *
+     * @param listener The listener, or null to stop telling one.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Removes the position held for the given investment's symbol.
+     *
+     * @param investment The investment to remove.
+     * @return True if the position was removed, false if it was not held.
+     */
+    public boolean remove(Investment investment) {
+        int symbolId = investment.getSymbolId();
+        if (columns != null ? !columns.holds(investment) : find(symbolId) != investment) {
+            return false;
+        }
+        // Update the totals first, so an overflow there leaves the position held; a view keeps the
+        // values it has, since its slot is emptied
+        totals.remove(investment);
+        if (columns != null) {
+            columns.detach(investment);
+        }
+        int slot = slots.remove(symbolId);
+        if (columns != null) {
+            columns.clear(slot, slot + 1);
+        } else {
+            positions[slot] = null;
+        }
+        lots[slot] = null;
+        count--;
+        searchIndex.remove(investment);
+        if (symbols != null) {
+            symbols.remove(SymbolTable.key(symbolId));
+        }
+        investment.setHoldings(null);
+        unpublished(investment);
+        if (alerts != null) {
+            alerts.changed(investment);
+        }
+        if (listener != null) {
+            listener.removed(investment);
+        }
+        return true;
+    }
+
+    /**
+     * @param investment A held position.
+     * @return The position's purchase lots, or null if the position is a single lot.
+     */
+    TaxLots getLots(Investment investment) {
+        return lots[slots.get(investment.getSymbolId())];
+    }
+
+    /**
+     * Makes room for one more position at the end of the arrays, by moving the positions down over the
+     * slots left empty by removed positions if at least half the slots are empty, or else by growing
+     * the arrays. Each slot is moved at most once per removal, so adding stays constant-time on average.
+     */
+    private void makeRoom() {
+        if (count > capacity() / 2) {
+            int capacity = capacity() + (capacity() >> 1);
+            if (columns != null) {
+                columns.grow(capacity);
+            } else {
+                positions = Arrays.copyOf(positions, capacity);
+            }
+            lots = Arrays.copyOf(lots, capacity);
+            return;
+        }
+        int used = 0;
+        for (int slot = 0; slot < end; slot++) {
+            int symbolId = symbolId(slot);
+            if (symbolId >= 0) {
+                if (columns != null) {
+                    columns.move(slot, used);
+                } else {
+                    positions[used] = positions[slot];
+                }
+                lots[used] = lots[slot];
+                slots.put(symbolId, used);
+                used++;
+            }
+        }
+        if (columns != null) {
+            columns.clear(used, end);
+        } else {
+            Arrays.fill(positions, used, end, null);
+        }
+        Arrays.fill(lots, used, end, null);
+        end = used;
+    }
+
+    /**
+     * @return The number of slots the positions array or columns have space for.
+     */
+    private int capacity() {
+        return columns != null ? columns.capacity() : positions.length;
+    }
+
+    /**
+     * @return The symbol id of the position in a slot, or -1 if the slot is empty.
+     */
+    private int symbolId(int slot) {
+        if (columns != null) {
+            return columns.symbolId(slot);
+        }
+        return positions[slot] == null ? -1 : positions[slot].getSymbolId();
+    }
+
+    /**
+     * @param slot A slot that holds a position.
+     * @return The position, or a view of it in columnar holdings.
+     */
+    private Investment position(int slot) {
+        return columns != null ? columns.view(slot) : positions[slot];
+    }
+
+    /**
+     * Adds a gain realized before the holdings were loaded, such as one stored in a snapshot.
+     *
+     * @param type The investment type.
+     * @param gain The realized gain to add, in {@link Money} units.
+     */
+    void addRealizedGain(InvestmentType type, long gain) {
+        totals.realized(type, gain);
+    }
+
+    /**
+     * Finds the positions whose name contains every keyword and whose price is within a range.
+     *
+     * @param keywords The words to match in the name; empty to match every name.
+     * @param low The lowest price to match, inclusive.
+     * @param high The highest price to match, inclusive.
+     * @return The matching positions, in the order their symbols were first seen.
+     */
+    public List<Investment> search(String keywords, double low, double high) {
+        return searchIndex.search(keywords, low, high);
+    }
+
+    /**
+     * @return The keyword and price index over the positions.
+     */
+    SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return The prefix trie over the held symbols. It is built the first time it is asked for, so
+     *         holdings never searched by symbol do not pay for it, and kept up to date from then on.
+     */
+    SymbolTrie getSymbols() {
+        if (symbols == null) {
+            symbols = new SymbolTrie();
+            for (Investment investment : all()) {
+                symbols.add(SymbolTable.key(investment.getSymbolId()), investment.getSymbolId());
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Checks that a held investment can take new values before it changes them, so a change whose
+     * market value or totals would not fit in a long is refused while nothing has changed yet.
+     *
+     * @param investment The investment about to change.
+     * @param quantity The new quantity.
+     * @param price The new price, in {@link Money} units.
+     * @param bookValue The new book value, in {@link Money} units.
+     * @throws ArithmeticException If the new market value or the totals would not fit in a long.
+     */
+    void checkChange(Investment investment, int quantity, long price, long bookValue) {
+        long marketValueDelta = Math.subtractExact(Money.times(price, quantity),
+                Money.times(investment.getPriceUnits(), investment.getQuantity()));
+        totals.checkChange(investment.getInvestmentType(), marketValueDelta,
+                Math.subtractExact(bookValue, investment.getBookValueUnits()));
+    }
+
+    /**
+     * Keeps the indexes and totals up to date when a held investment's quantity, price, or book value
+     * changes, and records a new price in the history if there is one.
+     *
+     * @param investment The investment that changed.
+     * @param oldQuantity The quantity before the change.
+     * @param oldPrice The price before the change, in {@link Money} units.
+     * @param oldBookValue The book value before the change, in {@link Money} units.
+     */
+    void positionChanged(Investment investment, int oldQuantity, long oldPrice, long oldBookValue) {
+        long price = investment.getPriceUnits();
+        if (price != oldPrice) {
+            searchIndex.priceChanged(investment, Money.toDouble(oldPrice));
+        }
+        totals.changed(investment, Money.times(price, investment.getQuantity()) - Money.times(oldPrice, oldQuantity),
+                investment.getBookValueUnits() - oldBookValue);
+        if (price != oldPrice && history != null) {
+            history.record(SymbolTable.key(investment.getSymbolId()), System.currentTimeMillis(), price);
+        }
+        changed(investment);
+    }
+
+    /**
+     * Tells the listener, if any, that a position changed.
+     */
+    private void changed(Investment investment) {
+        unpublished(investment);
+        if (alerts != null) {
+            alerts.changed(investment);
+        }
+        if (listener != null) {
+            listener.changed(investment);
+        }
+    }
+
+    /**
+     * Remembers a position to copy into the next published version, once versions are being published.
+     */
+    private void unpublished(Investment investment) {
+        if (versions != null && (unpublished.isEmpty() || unpublished.get(unpublished.size() - 1) != investment)) {
+            unpublished.add(investment);
+        }
+    }
+
+    /**
+     * Publishes the positions and totals as they are now as a new snapshot, if anything changed since
+     * the last one. The first call copies every position; later calls copy only the positions changed
+     * since, and share the rest with the previous snapshot. The changed positions are also checked
+     * against the alerts, if any. Only called on the thread that changes the holdings.
+     */
+    public void publish() {
+        if (alerts != null) {
+            alerts.check();
+        }
+        if (versions == null) {
+            versions = SymbolMap.<Investment>empty().toBuilder();
+            for (int slot = 0; slot < end; slot++) {
+                int symbolId = symbolId(slot);
+                if (symbolId >= 0) {
+                    versions.put(SymbolTable.key(symbolId), PortfolioCommand.detach(position(slot)));
+                }
+            }
+        } else if (unpublished.isEmpty()) {
+            return;
+        } else {
+            for (Investment investment : unpublished) {
+                // A symbol removed and bought again is looked up, so the order of the changes does not matter
+                String key = SymbolTable.key(investment.getSymbolId());
+                Investment current = find(investment.getSymbolId());
+                if (current == null) {
+                    versions.remove(key);
+                } else {
+                    versions.put(key, PortfolioCommand.detach(current));
+                }
+            }
+            unpublished.clear();
+        }
+        snapshot = new PortfolioSnapshot(snapshot.getVersion() + 1, versions.build(), totals.copy());
+    }
+
+    /**
+     * @return The latest published snapshot; safe to call on any thread.
+     */
+    public PortfolioSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return The running market value, book value, and gain totals of all positions.
+     */
+    public GainTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * @return The number of positions held.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return True if no positions are held.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return A read-only view of all positions, in the order they were bought.
+     */
+    public Collection<Investment> all() {
+        return new AbstractCollection<Investment>() {
+            @Override
+            public Iterator<Investment> iterator() {
+                return new Iterator<Investment>() {
+                    private int next = skipEmpty(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < end;
+                    }
+
+                    @Override
+                    public Investment next() {
+                        if (next >= end) {
+                            throw new NoSuchElementException();
+                        }
+                        Investment investment = position(next);
+                        next = skipEmpty(next + 1);
+                        return investment;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * @return The first slot from the given one on that holds a position, or the end of the used slots if none does.
+     */
+    private int skipEmpty(int slot) {
+        while (slot < end && symbolId(slot) < 0) {
+            slot++;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,314 @@
+package quoc_a3.ePortfolio;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class shows investments in a JTable, one row per investment.
+ *
+ * The rows are detached copies of the investments, so the event dispatch thread never reads an
+ * investment while the portfolio worker thread is changing it. The table only asks for the cells
+ * of the rows on screen, and a sorted or filtered view should use a TableRowSorter, which orders
+ * row numbers instead of copying rows.
+ *
+ * The model either shows a fixed list, such as search results, which can grow page by page as
+ * more results arrive, or is attached to the live holdings. When attached, it listens to every
+ * change made on the portfolio worker thread and replays the changes on the event dispatch thread
+ * in batches: each batch adds and removes rows, then fires one update event per changed row, or a single event over the changed range when
+ * many rows changed at once, as happens while live prices are streaming. Each change carries a copy
+ * of the investment taken on the worker thread as it changed, which replaces the investment's row,
+ * so a row is never shown older than the last batch.
+ */
+public class HoldingsTableModel extends AbstractTableModel implements Holdings.Listener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {"Type", "Symbol", "Name", "Quantity", "Price", "Book Value", "Gain"};
+    private static final Class<?>[] COLUMN_CLASSES = {
+            String.class, String.class, String.class, Integer.class, Double.class, Double.class, Double.class
+    };
+
+    /** Above this many changed rows, a batch fires one update event over their range instead of one per row. */
+    private static final int ROW_EVENT_LIMIT = 64;
+
+    private static final int RESET = 0;
+    private static final int ADDED = 1;
+    private static final int REMOVED = 2;
+    private static final int CHANGED = 3;
+
+    /**
+     * One change to replay on the event dispatch thread.
+     */
+    private static final class Change {
+        final int kind;
+        final Investment investment;
+        final List<Investment> rows;
+
+        Change(int kind, Investment investment, List<Investment> rows) {
+            this.kind = kind;
+            this.investment = investment;
+            this.rows = rows;
+        }
+    }
+
+    /** The rows shown, only used on the event dispatch thread. */
+    private List<Investment> rows = new ArrayList<>();
+
+    /** Whether the rows are a list given to setInvestments, which must be copied before adding to it. */
+    private boolean shared;
+
+    /** Row of each symbol id, kept only while attached to live holdings. */
+    private IntIndex rowOf;
+
+    /** Changes waiting to be replayed, guarded by the lock. */
+    private final Object lock = new Object();
+    private List<Change> pending = new ArrayList<>();
+    private boolean flushQueued;
+
+    /** The holdings listened to, only used on the portfolio worker thread. */
+    private Holdings attached;
+
+    /**
+     * Shows a fixed list of investments, such as search results, and stops following live holdings.
+     * The list is shown as it is, not copied, so it must not change afterwards.
+     * Must be called on the event dispatch thread.
+     *
+     * @param investments The investments to show.
+     */
+    public void setInvestments(List<Investment> investments) {
+        rows = investments;
+        rowOf = null;
+        shared = true;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Adds investments after the fixed list shown, such as the next page of search results.
+     * Must be called on the event dispatch thread, after setInvestments.
+     *
+     * @param investments The investments to add.
+     */
+    public void addInvestments(List<Investment> investments) {
+        if (investments.isEmpty()) {
+            return;
+        }
+        // The list given to setInvestments is not changed, so the rows are copied the first time
+        if (shared) {
+            rows = new ArrayList<>(rows);
+            shared = false;
+        }
+        int first = rows.size();
+        rows.addAll(investments);
+        fireTableRowsInserted(first, rows.size() - 1);
+    }
+
+    /**
+     * Starts showing and following the given holdings, in place of any holdings shown before.
+     * Must be called on the portfolio worker thread that owns the holdings.
+     *
+     * @param holdings The holdings to show.
+     */
+    public void attach(Holdings holdings) {
+        if (attached != null) {
+            attached.setListener(null);
+        }
+        attached = holdings;
+        holdings.setListener(this);
+        List<Investment> copies = new ArrayList<>(holdings.size());
+        for (Investment investment : holdings.all()) {
+            copies.add(PortfolioCommand.detach(investment));
+        }
+        post(new Change(RESET, null, copies));
+    }
+
+    @Override
+    public void added(Investment investment) {
+        post(new Change(ADDED, PortfolioCommand.detach(investment), null));
+    }
+
+    @Override
+    public void removed(Investment investment) {
+        post(new Change(REMOVED, PortfolioCommand.detach(investment), null));
+    }
+
+    @Override
+    public void changed(Investment investment) {
+        post(new Change(CHANGED, PortfolioCommand.detach(investment), null));
+    }
+
+    /**
+     * @param row The row number in the model.
+     * @return The investment shown in the row.
+     */
+    public Investment getInvestment(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Investment investment = rows.get(row);
+        switch (column) {
+            case 0:
+                return investment.getType();
+            case 1:
+                return investment.getSymbol();
+            case 2:
+                return investment.getName();
+            case 3:
+                return investment.getQuantity();
+            case 4:
+                return investment.getPrice();
+            case 5:
+                return investment.getBookValue();
+            default:
+                return investment.calculateGain();
+        }
+    }
+
+    /**
+     * Queues a change and, if none is queued yet, asks the event dispatch thread to replay the queue.
+     */
+    private void post(Change change) {
+        synchronized (lock) {
+            pending.add(change);
+            if (flushQueued) {
+                return;
+            }
+            flushQueued = true;
+        }
+        SwingUtilities.invokeLater(this::flush);
+    }
+
+    /**
+     * Replays every queued change on the event dispatch thread.
+     */
+    private void flush() {
+        List<Change> changes;
+        synchronized (lock) {
+            changes = pending;
+            pending = new ArrayList<>();
+            flushQueued = false;
+        }
+
+        // Rows are only appended, so the rows added since the last removal are inserted in one event
+        int insertedFrom = -1;
+        List<Investment> changed = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.kind == RESET) {
+                rows = change.rows;
+                shared = false;
+                rowOf = new IntIndex();
+                for (int i = 0; i < rows.size(); i++) {
+                    rowOf.put(rows.get(i).getSymbolId(), i);
+                }
+                insertedFrom = -1;
+                changed.clear();
+                fireTableDataChanged();
+            } else if (rowOf == null) {
+                // Showing a fixed list; changes to the live holdings are not shown
+                continue;
+            } else if (change.kind == ADDED) {
+                if (insertedFrom < 0) {
+                    insertedFrom = rows.size();
+                }
+                rowOf.put(change.investment.getSymbolId(), rows.size());
+                rows.add(change.investment);
+            } else if (change.kind == REMOVED) {
+                if (insertedFrom >= 0) {
+                    fireTableRowsInserted(insertedFrom, rows.size() - 1);
+                    insertedFrom = -1;
+                }
+                removeRow(change.investment);
+            } else {
+                // The newer copy replaces the row now, but its update event is fired with the others
+                int row = rowOf.get(change.investment.getSymbolId());
+                if (row >= 0) {
+                    rows.set(row, change.investment);
+                    changed.add(change.investment);
+                }
+            }
+        }
+        if (insertedFrom >= 0) {
+            fireTableRowsInserted(insertedFrom, rows.size() - 1);
+        }
+        fireChanged(changed);
+    }
+
+    /**
+     * Removes an investment's row by moving the last row into its place, so no other row moves.
+     */
+    private void removeRow(Investment investment) {
+        int row = rowOf.get(investment.getSymbolId());
+        if (row < 0) {
+            return;
+        }
+        rowOf.remove(investment.getSymbolId());
+        int last = rows.size() - 1;
+        Investment moved = rows.remove(last);
+        fireTableRowsDeleted(last, last);
+        if (row != last) {
+            rows.set(row, moved);
+            rowOf.put(moved.getSymbolId(), row);
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * Fires the update events for the rows changed in a batch.
+     */
+    private void fireChanged(List<Investment> changed) {
+        if (changed.isEmpty() || rowOf == null) {
+            return;
+        }
+        int[] changedRows = new int[changed.size()];
+        int count = 0;
+        for (Investment investment : changed) {
+            int row = rowOf.get(investment.getSymbolId());
+            if (row >= 0) {
+                changedRows[count++] = row;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(changedRows, 0, count);
+        if (count > ROW_EVENT_LIMIT) {
+            fireTableRowsUpdated(changedRows[0], changedRows[count - 1]);
+            return;
+        }
+
+        // One event per run of neighbouring rows; a row changed several times is updated once
+        int runStart = changedRows[0];
+        for (int i = 1; i <= count; i++) {
+            if (i == count || changedRows[i] > changedRows[i - 1] + 1) {
+                fireTableRowsUpdated(runStart, changedRows[i - 1]);
+                if (i < count) {
+                    runStart = changedRows[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package quoc_a3.ePortfolio;
+
+import java.util.Arrays;
+
+/**
+ * This class maps int keys to int values in an open-addressing hash table held in one int array, so a
+ * lookup allocates nothing, boxes nothing, and finds a key and its value side by side in the same cache
+ * line. The table is never more than half full, and removing a key shifts the keys after it back into
+ * place instead of leaving a marker, so lookups stay short however many keys come and go. Keys must
+ * not be negative.
+ */
+final class IntIndex {
+
+    /** Marks an empty slot. */
+    private static final int EMPTY = -1;
+
+    /** Each slot is a key at an even index followed by its value. */
+    private int[] entries;
+    private int bits;
+    private int size;
+
+    IntIndex() {
+        bits = 4;
+        entries = new int[2 << bits];
+        Arrays.fill(entries, EMPTY);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return The value stored for the key, or -1 if the key is not stored.
+     */
+    int get(int key) {
+        int mask = entries.length - 1;
+        for (int index = index(key); entries[index] != EMPTY; index = (index + 2) & mask) {
+            if (entries[index] == key) {
+                return entries[index + 1];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a value for a key, replacing the value stored before.
+     *
+     * @param key The key, which must not be negative.
+     * @param value The value.
+     */
+    void put(int key, int value) {
+        if (4 * (size + 1) > entries.length) {
+            resize();
+        }
+        int mask = entries.length - 1;
+        int index = index(key);
+        while (entries[index] != EMPTY && entries[index] != key) {
+            index = (index + 2) & mask;
+        }
+        if (entries[index] == EMPTY) {
+            entries[index] = key;
+            size++;
+        }
+        entries[index + 1] = value;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key to remove.
+     * @return The value that was stored for the key, or -1 if the key was not stored.
+     */
+    int remove(int key) {
+        int mask = entries.length - 1;
+        int index = index(key);
+        while (entries[index] != key) {
+            if (entries[index] == EMPTY) {
+                return -1;
+            }
+            index = (index + 2) & mask;
+        }
+        int value = entries[index + 1];
+
+        // Move back each following key whose probe would otherwise have to pass the emptied slot
+        int next = index;
+        while (entries[next = (next + 2) & mask] != EMPTY) {
+            int home = index(entries[next]);
+            boolean reachable = next > index ? home > index && home <= next : home > index || home <= next;
+            if (!reachable) {
+                entries[index] = entries[next];
+                entries[index + 1] = entries[next + 1];
+                index = next;
+            }
+        }
+        entries[index] = EMPTY;
+        size--;
+        return value;
+    }
+
+    /**
+     * @return The number of keys stored.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the index of the first slot to probe for a key. Keys such as symbol ids are often
+     * consecutive, so the key is multiplied by a large odd constant and the top bits used, which
+     * spreads consecutive keys apart.
+     */
+    private int index(int key) {
+        return ((key * 0x9E3779B9) >>> (32 - bits)) << 1;
+    }
+
+    private void resize() {
+        int[] old = entries;
+        bits++;
+        entries = new int[2 << bits];
+        Arrays.fill(entries, EMPTY);
+        size = 0;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != EMPTY) {
+                put(old[i], old[i + 1]);
+            }
+        }
+    }
+}
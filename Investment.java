@@ -1,28 +1,80 @@
 package quoc_a3.ePortfolio;
 
+/**
+ * This class is one position of the portfolio: its type, symbol, name, quantity, price, and book value.
+ * The symbol is kept as its id in the {@link SymbolTable} and the type as an {@link InvestmentType}, so
+ * positions of the same symbol share one String and comparing symbols or types is an int comparison.
+ */
 public class Investment {
-    private String type;
-    private String symbol;
+    private InvestmentType type;
+    private int symbolId;
     private String name;
     private int quantity;
-    private double price;
-    private double bookValue;
 
+    /** Price per unit and amount paid, both as exact {@link Money} units. */
+    private long price;
+    private long bookValue;
+
+    /** The holdings this investment is indexed in, notified when its price, quantity, or book value changes. */
+    private Holdings holdings;
+
+    /**
+     * @throws IllegalArgumentException If the type is not "stock" or "mutualfund".
+     */
     public Investment(String type, String symbol, String name, int quantity, double price, double bookValue) {
+        this(InvestmentType.of(type), symbol, name, quantity, price, bookValue);
+    }
+
+    public Investment(InvestmentType type, String symbol, String name, int quantity, double price, double bookValue) {
+        this(type, SymbolTable.id(symbol), name, quantity, Money.of(price), Money.of(bookValue));
+    }
+
+    /**
+     * Creates an investment of a symbol that already has an id, with its amounts in {@link Money} units.
+     */
+    Investment(InvestmentType type, int symbolId, String name, int quantity, long price, long bookValue) {
         this.type = type;
-        this.symbol = symbol;
+        this.symbolId = symbolId;
         this.name = name;
         this.quantity = quantity;
         this.price = price;
         this.bookValue = bookValue;
     }
 
+    /**
+     * Creates a {@link Stock} or a {@link MutualFund}, depending on the type.
+     */
+    public static Investment of(InvestmentType type, String symbol, String name, int quantity, double price, double bookValue) {
+        switch (type) {
+            case STOCK:
+                return new Stock(symbol, name, quantity, price, bookValue);
+            case MUTUAL_FUND:
+                return new MutualFund(symbol, name, quantity, price, bookValue);
+            default:
+                throw new IllegalArgumentException("Unknown investment type: " + type);
+        }
+    }
+
     public String getType() {
+        return getInvestmentType().getName();
+    }
+
+    public InvestmentType getInvestmentType() {
         return type;
     }
 
+    /**
+     * @return The symbol as it was spelled the first time the application saw it.
+     */
     public String getSymbol() {
-        return symbol;
+        return SymbolTable.symbol(getSymbolId());
+    }
+
+    /**
+     * @return The symbol's id in the {@link SymbolTable}.
+     */
+    public int getSymbolId() {
+        return symbolId;
     }
 
     public String getName() {
@@ -34,38 +86,119 @@ public class Investment {
     }
 
     public double getPrice() {
-        return price;
+        return Money.toDouble(getPriceUnits());
     }
 
     public double getBookValue() {
+        return Money.toDouble(getBookValueUnits());
+    }
+
+    /**
+     * @return The price per unit in {@link Money} units.
+     */
+    public long getPriceUnits() {
+        return price;
+    }
+
+    /**
+     * @return The amount paid in {@link Money} units.
+     */
+    public long getBookValueUnits() {
         return bookValue;
     }
 
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        update(quantity, getPriceUnits(), getBookValueUnits());
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        setPriceUnits(Money.of(price));
+    }
+
+    /**
+     * @param price The new price per unit in {@link Money} units.
+     */
+    public void setPriceUnits(long price) {
+        update(getQuantity(), price, getBookValueUnits());
+    }
+
+    /**
+     * Links this investment to the holdings that index it, or unlinks it when given null.
+     *
+     * @param holdings The holdings to notify of changes.
+     */
+    void setHoldings(Holdings holdings) {
+        this.holdings = holdings;
     }
 
     public void setBookValue(double bookValue) {
+        setBookValueUnits(Money.of(bookValue));
+    }
+
+    /**
+     * @param bookValue The new amount paid in {@link Money} units.
+     */
+    public void setBookValueUnits(long bookValue) {
+        update(getQuantity(), getPriceUnits(), bookValue);
+    }
+
+    /**
+     * Changes the quantity, price, and book value together. When the investment is held, the holdings
+     * first check that the new values fit, so a change they can not take leaves the investment as it was,
+     * and then update their indexes and totals once for the whole change.
+     *
+     * @param quantity The new quantity.
+     * @param price The new price per unit in {@link Money} units.
+     * @param bookValue The new amount paid in {@link Money} units.
+     * @throws ArithmeticException If the market value, or the holdings' totals, would not fit in a long.
+     */
+    void update(int quantity, long price, long bookValue) {
+        if (holdings != null) {
+            holdings.checkChange(this, quantity, price, bookValue);
+        }
+        int oldQuantity = getQuantity();
+        long oldPrice = getPriceUnits();
+        long oldBookValue = getBookValueUnits();
+        assign(quantity, price, bookValue);
+        if (holdings != null) {
+            holdings.positionChanged(this, oldQuantity, oldPrice, oldBookValue);
+        }
+    }
+
+    /**
+     * Stores new values without checking them or telling the holdings; views that keep their values
+     * elsewhere store them there instead.
+     *
+     * @param quantity The new quantity.
+     * @param price The new price per unit in {@link Money} units.
+     * @param bookValue The new amount paid in {@link Money} units.
+     */
+    void assign(int quantity, long price, long bookValue) {
+        this.quantity = quantity;
+        this.price = price;
         this.bookValue = bookValue;
     }
 
     @Override
     public String toString() {
         return "Investment{" +
-                "type='" + type + '\'' +
-                ", symbol='" + symbol + '\'' +
-                ", name='" + name + '\'' +
-                ", quantity=" + quantity +
-                ", price=" + price +
-                ", bookValue=" + bookValue +
+                "type='" + getType() + '\'' +
+                ", symbol='" + getSymbol() + '\'' +
+                ", name='" + getName() + '\'' +
+                ", quantity=" + getQuantity() +
+                ", price=" + getPrice() +
+                ", bookValue=" + getBookValue() +
                 '}';
     }
 
     public double calculateGain() {
-        return (price * quantity) - bookValue;
+        return Money.toDouble(calculateGainUnits());
+    }
+
+    /**
+     * @return The exact market value minus the book value, in {@link Money} units.
+     */
+    public long calculateGainUnits() {
+        return Money.times(getPriceUnits(), getQuantity()) - getBookValueUnits();
     }
 }
@@ -0,0 +1,45 @@
+package quoc_a3.ePortfolio;
+
+/**
+ * The kinds of investment the portfolio can hold. Each investment keeps its type as one of these
+ * constants rather than as a String, so checking or indexing by type is a reference comparison or an
+ * array index, and the type's name is only needed at the edges of the program.
+ */
+public enum InvestmentType {
+    STOCK("stock"),
+    MUTUAL_FUND("mutualfund");
+
+    private final String name;
+
+    InvestmentType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The name used for the type in data files, journals, and the user interface.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Finds the type with a name.
+     *
+     * @param name The name of the type, either "stock" or "mutualfund".
+     * @return The matching type.
+     * @throws IllegalArgumentException If no type has the name.
+     */
+    public static InvestmentType of(String name) {
+        if (STOCK.name.equals(name)) {
+            return STOCK;
+        } else if (MUTUAL_FUND.name.equals(name)) {
+            return MUTUAL_FUND;
+        }
+        throw new IllegalArgumentException("Unknown investment type: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
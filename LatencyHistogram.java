@@ -0,0 +1,145 @@
+package quoc_a3.ePortfolio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records latencies in nanoseconds into a fixed set of buckets, the way HdrHistogram does,
+ * so any percentile can be read back to within {@value #PRECISION_PERCENT}% of the true value.
+ *
+ * Values below 128 ns each have their own bucket. Above that, every power of two is split into 64
+ * equal buckets, so the bucket width grows with the value and 3 KB of counters cover 0 ns to one hour.
+ * The bucket of a value is found with a few shifts, and recording is one atomic increment per counter,
+ * so any number of threads can record at once without locks and without allocating.
+ */
+public class LatencyHistogram {
+
+    /** The largest error, as a percentage of the value, of a percentile read from the histogram. */
+    public static final double PRECISION_PERCENT = 1.6;
+
+    /** Values above this are recorded as this value. */
+    public static final long MAX_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    /** Every power of two is split into 2^(SUB_BUCKET_BITS - 1) buckets. */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long largest = max.get();
+        while (value > largest && !max.compareAndSet(largest, value)) {
+            largest = max.get();
+        }
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Copies the counters so percentiles can be read from them. Latencies recorded while the copy is
+     * taken may be left out of some of its figures.
+     *
+     * @return A copy of the histogram as it is now.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.get(), total.get(), max.get());
+    }
+
+    /**
+     * The counters of a histogram at one moment.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return The number of latencies recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The mean latency in nanoseconds, or 0 if none were recorded.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * @return The largest latency recorded, in nanoseconds.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile The percentile, from 0 to 100.
+         * @return The latency, in nanoseconds, that the given percentage of the recorded latencies do
+         *         not exceed, or 0 if none were recorded.
+         */
+        public long getValueAtPercentile(double percentile) {
+            long recorded = 0;
+            for (long bucketCount : counts) {
+                recorded += bucketCount;
+            }
+            long target = Math.max(1, (long) Math.ceil(recorded * Math.min(percentile, 100) / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Finds the bucket of a value: the value itself below 128, and otherwise 64 buckets for each power of two.
+     */
+    static int index(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return (bucket << (SUB_BUCKET_BITS - 1)) + (int) (value >>> bucket);
+    }
+
+    /**
+     * @return The largest value that falls in a bucket.
+     */
+    static long highestValue(int index) {
+        int half = 1 << (SUB_BUCKET_BITS - 1);
+        int bucket = index < 2 * half ? 0 : (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long lowest = (long) (index - (bucket << (SUB_BUCKET_BITS - 1))) << bucket;
+        return lowest + (1L << bucket) - 1;
+    }
+}
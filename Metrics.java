@@ -0,0 +1,186 @@
+package quoc_a3.ePortfolio;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * This class collects the running application's metrics: a {@link Timer} per command, query, menu
+ * choice, and other timed step, and gauges of the portfolio's size and the heap. The report shows how
+ * many times each step ran, how many failed, and the percentiles of how long it took, so a regression
+ * shows up as a step whose p99 or max grows.
+ *
+ * Timers are created the first time a step is timed and kept for the life of the application. Recording
+ * into an existing timer takes no locks and allocates nothing, so timing does not slow down what it times.
+ */
+public class Metrics {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Timers by name, each shared by every class timed under that name. */
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /** Timers of commands and queries by their class, so finding one does not build its name. */
+    private final ConcurrentHashMap<Class<?>, Timer> byType = new ConcurrentHashMap<>();
+
+    private final long started = System.nanoTime();
+    private volatile IntSupplier positions = () -> 0;
+
+    /**
+     * Finds the timer with a name, creating it the first time.
+     *
+     * @param name The name of the timed step.
+     * @return The step's timer.
+     */
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Finds the timer of a command or query class, named after the class. Lambdas and anonymous
+     * classes share one timer, since their class names change from one run to the next.
+     *
+     * @param type The class of the command or query.
+     * @return The class's timer.
+     */
+    public Timer timer(Class<?> type) {
+        Timer timer = byType.get(type);
+        if (timer == null) {
+            String name = type.isHidden() || type.isAnonymousClass() ? "Other" : type.getSimpleName();
+            timer = byType.computeIfAbsent(type, key -> timer(name));
+        }
+        return timer;
+    }
+
+    /**
+     * Sets the gauge read for the number of positions held.
+     *
+     * @param positions Returns the number of positions; called on whichever thread builds the report.
+     */
+    public void setPositions(IntSupplier positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Builds a text report of the gauges and of every timer, sorted by name. Times are in microseconds.
+     *
+     * @return The report.
+     */
+    public String report() {
+        StringBuilder text = new StringBuilder();
+        Duration uptime = Duration.ofNanos(System.nanoTime() - started);
+        text.append(String.format("Metrics at %s, up %d:%02d:%02d%n%n", LocalDateTime.now().format(TIME_FORMAT),
+                uptime.toHours(), uptime.toMinutesPart(), uptime.toSecondsPart()));
+
+        // Gauges
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        text.append(String.format("Positions held: %,d%n", positions.getAsInt()));
+        text.append(String.format("Heap: %,d MB used, %,d MB committed, %s max%n", heap.getUsed() >> 20,
+                heap.getCommitted() >> 20, heap.getMax() < 0 ? "no" : String.format("%,d MB", heap.getMax() >> 20)));
+        text.append(String.format("Threads: %d live%n%n", ManagementFactory.getThreadMXBean().getThreadCount()));
+
+        // Timers
+        List<Timer> sorted = new ArrayList<>(timers.values());
+        sorted.sort(Comparator.comparing(Timer::getName));
+        text.append(String.format("%-24s %10s %7s %10s %10s %10s %10s %10s %10s%n", "Step (us)", "count", "failed",
+                "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Timer timer : sorted) {
+            LatencyHistogram.Snapshot times = timer.histogram.snapshot();
+            text.append(String.format("%-24s %,10d %,7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", timer.name,
+                    times.getCount(), timer.failures.get(), times.getMean() / 1000,
+                    times.getValueAtPercentile(50) / 1000.0, times.getValueAtPercentile(90) / 1000.0,
+                    times.getValueAtPercentile(99) / 1000.0, times.getValueAtPercentile(99.9) / 1000.0,
+                    times.getMax() / 1000.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the report to a file, replacing it only once the whole report has been written.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file can not be written.
+     */
+    public void dump(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, report().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Counts the runs and failures of one timed step and records how long each run took.
+     */
+    public static class Timer {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The name of the timed step.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Records one run of the step.
+         *
+         * @param nanos How long the run took, in nanoseconds.
+         * @param failed Whether the run failed.
+         */
+        public void record(long nanos, boolean failed) {
+            histogram.record(nanos);
+            if (failed) {
+                failures.incrementAndGet();
+            }
+        }
+
+        /**
+         * Records one run of the step that started at the given time and ended now.
+         *
+         * @param startNanos The System.nanoTime() when the run started.
+         */
+        public void recordSince(long startNanos) {
+            histogram.record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return The number of runs recorded.
+         */
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        /**
+         * @return The number of runs that failed.
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * @return A copy of the run times recorded so far.
+         */
+        public LatencyHistogram.Snapshot getTimes() {
+            return histogram.snapshot();
+        }
+    }
+}
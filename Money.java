@@ -0,0 +1,103 @@
+package quoc_a3.ePortfolio;
+
+import java.math.BigInteger;
+
+/**
+ * This class does exact money arithmetic on amounts stored as a long count of ten-thousandths of a
+ * dollar, so no money object is ever allocated and sums never drift the way repeated double
+ * arithmetic does. Adding and subtracting amounts is plain long arithmetic; the methods here convert
+ * amounts to and from doubles at the edges of the program and multiply or divide them exactly.
+ *
+ * Four decimal places hold any price that is quoted in fractions of a cent, and amounts up to about
+ * 900 trillion dollars fit in a long. An arithmetic result that would not fit throws an
+ * ArithmeticException instead of silently wrapping around.
+ */
+public final class Money {
+
+    /** Number of decimal places kept. */
+    public static final int DECIMALS = 4;
+
+    /** Number of units in one dollar. */
+    public static final long SCALE = 10_000;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount entered by the user or read from a file, rounding to the nearest unit.
+     * Every amount with at most four decimal places converts exactly.
+     *
+     * @param amount The amount in dollars.
+     * @return The amount in units.
+     * @throws ArithmeticException If the amount is not a number or does not fit in a long count of units.
+     */
+    public static long of(double amount) {
+        double units = amount * SCALE;
+        // Math.round would silently saturate at the ends of the long range, and turn NaN into 0
+        if (!(units >= Long.MIN_VALUE && units < Long.MAX_VALUE)) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        return Math.round(units);
+    }
+
+    /**
+     * Converts an amount for display or for code that works in doubles.
+     *
+     * @param units The amount in units.
+     * @return The nearest double to the amount in dollars.
+     */
+    public static double toDouble(long units) {
+        return (double) units / SCALE;
+    }
+
+    /**
+     * Multiplies a price by a quantity.
+     *
+     * @param units The price per unit in units.
+     * @param quantity The number of units.
+     * @return The exact total in units.
+     * @throws ArithmeticException If the total does not fit in a long.
+     */
+    public static long times(long units, long quantity) {
+        return Math.multiplyExact(units, quantity);
+    }
+
+    /**
+     * Takes a share of an amount, such as the cost of part of a lot, rounded to the nearest unit with
+     * halves rounded away from zero. The product is only computed in 128 bits when it does not fit in a long.
+     *
+     * @param units The amount in units.
+     * @param numerator The share's numerator.
+     * @param denominator The share's denominator; must be positive.
+     * @return units * numerator / denominator, rounded.
+     */
+    public static long share(long units, long numerator, long denominator) {
+        long high = Math.multiplyHigh(units, numerator);
+        long low = units * numerator;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return divide(low, denominator);
+        }
+        BigInteger[] division = BigInteger.valueOf(units).multiply(BigInteger.valueOf(numerator))
+                .divideAndRemainder(BigInteger.valueOf(denominator));
+        long remainder = division[1].abs().longValue();
+        BigInteger quotient = remainder >= denominator - remainder
+                ? division[0].add(BigInteger.valueOf(high < 0 ? -1 : 1)) : division[0];
+        return quotient.longValueExact();
+    }
+
+    /**
+     * Divides an amount, rounding to the nearest unit with halves rounded away from zero.
+     *
+     * @param units The amount in units.
+     * @param denominator The divisor; must be positive.
+     * @return The rounded quotient in units.
+     */
+    public static long divide(long units, long denominator) {
+        long quotient = units / denominator;
+        long remainder = units % denominator;
+        if (Math.abs(remainder) >= denominator - Math.abs(remainder)) {
+            quotient += Long.signum(units);
+        }
+        return quotient;
+    }
+}
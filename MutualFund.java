@@ -2,6 +2,6 @@ package quoc_a3.ePortfolio;
 
 public class MutualFund extends Investment {
     public MutualFund(String symbol, String name, int quantity, double price, double bookValue) {
-        super("mutualfund", symbol, name, quantity, price, bookValue);
+        super(InvestmentType.MUTUAL_FUND, symbol, name, quantity, price, bookValue);
     }
 }
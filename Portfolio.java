@@ -1,9 +1,28 @@
 package quoc_a3.ePortfolio;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * This class represents a simple ePortfolio application that allows the user to manage and track investments.
@@ -11,11 +30,41 @@ import java.util.ArrayList;
  */
 public class Portfolio {
 
-    /** List to store all investments. */
-    private static ArrayList<Investment> investments = new ArrayList<>();
+    /** Runs every command against the investments on a single worker thread, off the event dispatch thread. */
+    private static final PortfolioExecutor investments = new PortfolioExecutor();
+
+    /** Journal recording every change to the investments, opened and closed on the worker thread. */
+    private static volatile TransactionJournal journal;
+
+    /** History of every price the investments have had, opened and closed on the worker thread. */
+    private static volatile PriceHistory history;
+
+    /** Latest live price of each symbol, published by the simulated market feed. */
+    private static final PriceFeed priceFeed = new PriceFeed();
+    private static SyntheticFeed syntheticFeed;
+    private static QuoteCoalescer coalescer;
     private static JFrame frame;
+
+    /** Message area of the panel on screen. */
     private static JTextArea textArea;
 
+    /** Shows one cached panel at a time; each panel is built the first time its command is chosen. */
+    private static final CardLayout cards = new CardLayout();
+    private static final Map<String, JPanel> panels = new HashMap<>();
+    private static JPanel content;
+
+    /** How long typing in the search field must pause before the symbol is searched for. */
+    private static final int TYPE_AHEAD_DELAY_MILLIS = 150;
+
+    /** Rows of the holdings browser, following the live holdings. */
+    private static final HoldingsTableModel holdingsModel = new HoldingsTableModel();
+
+    /** Alert rules checked on the worker thread; fired alerts are delivered on the event dispatch thread. */
+    private static final PriceAlerts alerts = new PriceAlerts(Portfolio::alerted, SwingUtilities::invokeLater);
+
+    /** Log of the alerts fired, created by the first alert or by the Alerts panel, whichever comes first. */
+    private static JTextArea alertLog;
+
     /**
      * The entry point for the ePortfolio application.
      * Initializes the GUI and loads investment data from a file provided as a command-line argument.
@@ -37,6 +86,197 @@ public class Portfolio {
             JOptionPane.showMessageDialog(null, "Please provide a filename as a command line argument.");
             System.exit(0);
         }
+
+        // Load the investments in the background once the GUI is showing
+        String filename = args[0];
+        SwingUtilities.invokeLater(() -> loadInvestments(filename));
+    }
+
+    /**
+     * Loads the portfolio on a background thread, so the window stays responsive while large files
+     * are read. The latest snapshot is loaded if one exists, otherwise the data file is; then only the
+     * journal records written after it are replayed. The loading progress is shown in the frame's title,
+     * and the Commands menu is disabled until the portfolio has been handed to the worker thread, which
+     * reopens the journal before running any command.
+     *
+     * @param filename The name of the portfolio data file.
+     */
+    private static void loadInvestments(String filename) {
+        Path file = Paths.get(filename);
+        JMenu commandsMenu = frame.getJMenuBar().getMenu(0);
+
+        SwingWorker<Holdings, Void> loader = new SwingWorker<Holdings, Void>() {
+            private final AtomicLong loaded = new AtomicLong();
+            private final AtomicLong skipped = new AtomicLong();
+            private TransactionJournal.Recovery recovery;
+
+            @Override
+            protected Holdings doInBackground() throws Exception {
+                // The holdings are built off the event dispatch thread and only handed over once complete
+                Holdings holdings = new Holdings();
+                PortfolioLoader.Listener listener = new PortfolioLoader.Listener() {
+                    @Override
+                    public void loaded(long line, Investment investment) {
+                        try {
+                            holdings.add(investment);
+                            loaded.incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            skipped(line, investment.getSymbol() + ": " + e.getMessage());
+                        }
+                    }
+
+                    @Override
+                    public void skipped(long line, String reason) {
+                        skipped.incrementAndGet();
+                        System.err.println(filename + ": skipped record" + (line > 0 ? " at line " + line : "")
+                                + ": " + reason);
+                    }
+
+                    @Override
+                    public void progress(long bytesRead, long totalBytes) {
+                        setProgress(totalBytes == 0 ? 100 : (int) (bytesRead * 100 / totalBytes));
+                    }
+                };
+
+                long sequence = 0;
+                if (TransactionJournal.hasSnapshot(file)) {
+                    sequence = TransactionJournal.readSnapshot(file, holdings, listener);
+                } else {
+                    PortfolioLoader.load(file, listener);
+                }
+                recovery = TransactionJournal.replay(file, holdings, sequence);
+                return holdings;
+            }
+
+            @Override
+            protected void done() {
+                frame.setTitle("ePortfolio");
+                Holdings holdings;
+                try {
+                    holdings = get();
+                } catch (Exception e) {
+                    textArea.append("\n\nError: Could not load " + filename + ": "
+                            + (e.getCause() != null ? e.getCause() : e));
+                    commandsMenu.setEnabled(true);
+                    return;
+                }
+                textArea.append("\n\nLoaded " + loaded.get() + " investment records from " + filename
+                        + (skipped.get() > 0 ? " (" + skipped.get() + " skipped)" : "")
+                        + (recovery.replayed > 0 ? " and replayed " + recovery.replayed + " journaled changes." : "."));
+
+                // Hand the holdings to the worker thread, which opens the journal before running any command
+                investments.replaceHoldings(holdings);
+                submit(current -> {
+                    holdingsModel.attach(current);
+                    current.setAlerts(alerts);
+                    try {
+                        journal = TransactionJournal.open(file, current, recovery);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Could not open the journal: " + e.getMessage(), e);
+                    }
+                    try {
+                        history = PriceHistory.open(file);
+                        current.setHistory(history);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Could not open the price history: " + e.getMessage(), e);
+                    }
+                    return null;
+                }, ignored -> { }, () -> textArea);
+
+                // Commands submitted from now on run after the journal is open
+                commandsMenu.setEnabled(true);
+            }
+        };
+
+        // Show the loading progress in the frame's title
+        commandsMenu.setEnabled(false);
+        frame.setTitle("ePortfolio - Loading " + filename);
+        loader.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName()) && !loader.isDone()) {
+                frame.setTitle("ePortfolio - Loading " + filename + " (" + event.getNewValue() + "%)");
+            }
+        });
+        loader.execute();
+    }
+
+    /**
+     * Saves the portfolio and exits the application. A final snapshot is taken so the next start
+     * does not need to replay the journal, and every pending journal record is forced to disk along
+     * with the recorded price history.
+     */
+    private static void quit() {
+        stopLivePrices();
+        try {
+            // Wait for every queued command, then save on the worker thread that owns the investments
+            investments.submit(holdings -> {
+                if (journal != null) {
+                    try {
+                        journal.snapshot();
+                        journal.close();
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException(e.getMessage(), e);
+                    }
+                }
+                if (history != null) {
+                    history.close();
+                }
+                return null;
+            }).join();
+        } catch (CompletionException e) {
+            JOptionPane.showMessageDialog(frame, "Error: Could not save the portfolio: " + e.getCause().getMessage());
+        }
+        investments.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Runs a command on the portfolio worker thread and handles its result back on the event dispatch thread.
+     * If the command fails, its message is shown as an error in the message area.
+     *
+     * @param command The command to run.
+     * @param onSuccess Receives the command's result on the event dispatch thread.
+     * @param messages Supplies the text area to show an error in, read once the command has finished.
+     * @param <T> The type of the command's result.
+     * @return The command's result, which can be cancelled to drop the command if it has not started yet.
+     */
+    private static <T> CompletableFuture<T> submit(PortfolioCommand<T> command, Consumer<T> onSuccess,
+                                                   Supplier<JTextArea> messages) {
+        CompletableFuture<T> result = investments.submit(command);
+        handle(result, onSuccess, messages);
+        return result;
+    }
+
+    /**
+     * Runs a query on a reader thread against the latest snapshot of the portfolio, without waiting for
+     * queued commands, and handles its result back on the event dispatch thread. If the query fails, its
+     * message is shown as an error in the message area.
+     *
+     * @param query The query to run.
+     * @param onSuccess Receives the query's result on the event dispatch thread.
+     * @param messages Supplies the text area to show an error in, read once the query has finished.
+     * @param <T> The type of the query's result.
+     */
+    private static <T> void read(PortfolioQuery<T> query, Consumer<T> onSuccess, Supplier<JTextArea> messages) {
+        handle(investments.read(query), onSuccess, messages);
+    }
+
+    /**
+     * Hands a result to onSuccess on the event dispatch thread, or shows the error in the message area.
+     * A cancelled result was not wanted any more, so nothing is shown for it.
+     */
+    private static <T> void handle(CompletableFuture<T> result, Consumer<T> onSuccess, Supplier<JTextArea> messages) {
+        result.whenCompleteAsync((value, error) -> {
+            if (result.isCancelled()) {
+                return;
+            }
+            if (error == null) {
+                onSuccess.accept(value);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                messages.get().setText("Error: " + cause.getMessage());
+            }
+        }, SwingUtilities::invokeLater);
     }
 
     /**
@@ -44,10 +284,31 @@ public class Portfolio {
      * Sets up the main frame, menu bar, and text area for displaying messages.
      */
     private static void initializeGUI() {
+        // Time every event the event dispatch thread handles, including input and repaints
+        Metrics.Timer dispatch = investments.getMetrics().timer("EDT event dispatch");
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EventQueue() {
+            @Override
+            protected void dispatchEvent(AWTEvent event) {
+                long started = System.nanoTime();
+                try {
+                    super.dispatchEvent(event);
+                } finally {
+                    dispatch.recordSince(started);
+                }
+            }
+        });
+
         // Create the main application frame
         frame = new JFrame("ePortfolio");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(600, 400);
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                // Closing the window saves the portfolio the same way as Quit
+                quit();
+            }
+        });
+        frame.setSize(800, 500);
 
         // Create the menu bar with different commands for the user
         JMenuBar menuBar = new JMenuBar();
@@ -55,7 +316,7 @@ public class Portfolio {
         menuBar.add(commandsMenu);
 
         // Define available commands
-        String[] commands = {"Buy", "Sell", "Update", "GetGain", "Search", "Quit"};
+        String[] commands = {"Buy", "Sell", "Update", "GetGain", "Analytics", "Search", "Holdings", "Price History", "Import/Export", "Live Prices", "Alerts", "Diagnostics", "Quit"};
         for (String command : commands) {
             JMenuItem menuItem = new JMenuItem(command);
             commandsMenu.add(menuItem);
@@ -76,34 +337,91 @@ public class Portfolio {
                 + "- Sell: Sell an existing investment.\n"
                 + "- Update: Update investment prices.\n"
                 + "- GetGain: View your total gains.\n"
+                + "- Analytics: View the top gainers, losers, and exposures.\n"
                 + "- Search: Search for investments.\n"
+                + "- Holdings: Browse, sort, and filter every investment.\n"
+                + "- Price History: View every price an investment has had.\n"
+                + "- Import/Export: Add investments from a CSV file, or save them all to one.\n"
+                + "- Live Prices: Stream simulated market prices.\n"
+                + "- Alerts: Be alerted when a price or gain crosses a threshold.\n"
+                + "- Diagnostics: View how long each command takes, and save the figures to a file.\n"
                 + "- Quit: Exit the application.");
 
-        // Add the text area to the frame inside a scroll pane
-        frame.add(new JScrollPane(textArea), BorderLayout.CENTER);
+        // Add the text area inside a scroll pane as the first panel
+        content = new JPanel(cards);
+        JPanel welcomePanel = new JPanel(new BorderLayout());
+        welcomePanel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+        welcomePanel.putClientProperty(JTextArea.class, textArea);
+        panels.put("Welcome", welcomePanel);
+        content.add(welcomePanel, "Welcome");
+        frame.add(content, BorderLayout.CENTER);
 
         // Make the frame visible
         frame.setVisible(true);
     }
 
+    /**
+     * Shows a command's panel, building it the first time the command is chosen. Later choices show
+     * the same panel again, with the fields and messages as the user left them.
+     *
+     * @param name The name of the command.
+     * @param factory Builds the panel; the panel's message area is stored as its JTextArea client property.
+     * @return The panel shown.
+     */
+    private static JPanel showPanel(String name, Supplier<JPanel> factory) {
+        JPanel panel = panels.get(name);
+        if (panel == null) {
+            panel = factory.get();
+            panels.put(name, panel);
+            content.add(panel, name);
+        }
+        textArea = (JTextArea) panel.getClientProperty(JTextArea.class);
+        cards.show(content, name);
+        return panel;
+    }
+
+    /**
+     * Creates the non-editable message area shown at the bottom of a panel.
+     *
+     * @param panel The panel that owns the message area.
+     * @param rows The number of rows to show.
+     * @param title The title of the area's border.
+     * @return The message area.
+     */
+    private static JTextArea createMessageArea(JPanel panel, int rows, String title) {
+        JTextArea messages = new JTextArea(rows, 50);
+        messages.setEditable(false);
+        messages.setBorder(BorderFactory.createTitledBorder(title));
+        panel.putClientProperty(JTextArea.class, messages);
+        return messages;
+    }
+
     /**
      * This method provides the functionality to buy a new investment and add it to the portfolio.
      * It allows the user to specify the type (stock or mutual fund), symbol, name, quantity, and price
      * of the investment. The method validates the input, creates a new `Investment` object, and adds it
-     * to the `investments` list. It also updates the `textArea` with appropriate success or error messages.
+     * to the `investments` holdings, merging it into the existing position if the symbol is already held.
+     * It also updates the message area with appropriate success or error messages.
      */
     private static void buy() {
+        showPanel("Buy", Portfolio::createBuyPanel);
+    }
+
+    /**
+     * Builds the panel shown by buy().
+     *
+     * @return The buy panel.
+     */
+    private static JPanel createBuyPanel() {
         // Create the main panel for the buy operation
         JPanel buyPanel = new JPanel(new FlowLayout());
-        frame.getContentPane().removeAll();
-        frame.getContentPane().add(buyPanel);
 
         // Input panel for collecting investment details
         JPanel inputPanel = new JPanel(new FlowLayout());
         buyPanel.add(inputPanel);
 
         // ComboBox for selecting the investment type (stock or mutualfund)
-        JComboBox<String> typeComboBox = new JComboBox<>(new String[]{"stock", "mutualfund"});
+        JComboBox<InvestmentType> typeComboBox = new JComboBox<>(InvestmentType.values());
         inputPanel.add(new JLabel("Type:"));
         inputPanel.add(typeComboBox);
 
@@ -131,21 +449,24 @@ public class Portfolio {
         JPanel buttonsPanel = new JPanel(new FlowLayout());
         buyPanel.add(buttonsPanel, BorderLayout.SOUTH);
 
-        // Reset button to clear all input fields and textArea
+        // Set up the text area for displaying messages
+        JTextArea messages = createMessageArea(buyPanel, 5, "Messages");
+
+        // Reset button to clear all input fields and messages
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
             symbolField.setText("");
             nameField.setText("");
             quantityField.setText("");
             priceField.setText("");
-            textArea.setText("");
+            messages.setText("");
         });
         buttonsPanel.add(resetButton);
 
         // Buy button to add a new investment to the portfolio
         JButton buyButton = new JButton("Buy");
         buyButton.addActionListener(e -> {
-            String type = (String) typeComboBox.getSelectedItem();
+            InvestmentType type = (InvestmentType) typeComboBox.getSelectedItem();
             String symbol = symbolField.getText().trim();
             String name = nameField.getText().trim();
             String quantityText = quantityField.getText().trim();
@@ -153,7 +474,7 @@ public class Portfolio {
 
             // Check if any field is empty
             if (symbol.isEmpty() || name.isEmpty() || quantityText.isEmpty() || priceText.isEmpty()) {
-                textArea.setText("Error: All fields must be filled out.");
+                messages.setText("Error: All fields must be filled out.");
                 return;
             }
 
@@ -162,45 +483,46 @@ public class Portfolio {
                 int quantity = Integer.parseInt(quantityText);
                 double price = Double.parseDouble(priceText);
 
-                // Create a new investment and add it to the list
-                Investment newInvestment = new Investment(type, symbol, name, quantity, price, price * quantity);
-                investments.add(newInvestment);
-
-                // Display success message
-                textArea.setText("Successfully added " + type + " investment:\n"
-                        + "Symbol: " + symbol + "\n"
-                        + "Name: " + name + "\n"
-                        + "Quantity: " + quantity + "\n"
-                        + "Price: " + price);
+                // Buy the investment, merging it into the position if the symbol is already held
+                submit(new PortfolioCommand.Buy(type, symbol, name, quantity, price), position -> {
+                    // Display success message
+                    messages.setText("Successfully added " + type + " investment:\n"
+                            + "Symbol: " + symbol + "\n"
+                            + "Name: " + position.getName() + "\n"
+                            + "Quantity: " + quantity + "\n"
+                            + "Price: " + price
+                            + (position.getQuantity() != quantity ? "\nTotal quantity held: " + position.getQuantity() : ""));
+                }, () -> messages);
             } catch (NumberFormatException ex) {
                 // Handle invalid input for quantity or price
-                textArea.setText("Error: Quantity and Price must be valid numbers.");
+                messages.setText("Error: Quantity and Price must be valid numbers.");
             }
         });
         buttonsPanel.add(buyButton);
 
-        // Set up the text area for displaying messages
-        textArea = new JTextArea(5, 50);
-        textArea.setEditable(false);
-        textArea.setBorder(BorderFactory.createTitledBorder("Messages"));
-        buyPanel.add(new JScrollPane(textArea), BorderLayout.SOUTH);
-
-        // Refresh the frame to display the changes
-        frame.revalidate();
-        frame.repaint();
+        buyPanel.add(new JScrollPane(messages), BorderLayout.SOUTH);
+        return buyPanel;
     }
 
     /**
      * This method provides the functionality to sell a specified quantity of an existing investment from the portfolio.
-     * It allows the user to enter the symbol and quantity of the investment they want to sell. The method validates 
-     * the input, finds the investment in the `investments` list, and updates or removes the investment accordingly. 
-     * The `textArea` is updated with success or error messages.
+     * It allows the user to enter the symbol and quantity of the investment they want to sell. The method validates
+     * the input, looks up the investment in the `investments` index, and updates or removes the investment accordingly.
+     * Every sale is recorded in the transaction journal.
+     * The message area is updated with success or error messages.
      */
     private static void sell() {
+        showPanel("Sell", Portfolio::createSellPanel);
+    }
+
+    /**
+     * Builds the panel shown by sell().
+     *
+     * @return The sell panel.
+     */
+    private static JPanel createSellPanel() {
         // Create the main panel for the sell operation
         JPanel sellPanel = new JPanel(new FlowLayout());
-        frame.getContentPane().removeAll();
-        frame.getContentPane().add(sellPanel);
 
         // Input panel for collecting investment details
         JPanel inputPanel = new JPanel(new FlowLayout());
@@ -216,16 +538,24 @@ public class Portfolio {
         inputPanel.add(new JLabel("Quantity to sell:"));
         inputPanel.add(quantityField);
 
+        // ComboBox for choosing which purchase lots the sold units come from
+        JComboBox<String> methodComboBox = new JComboBox<>(new String[]{"FIFO", "Average cost"});
+        inputPanel.add(new JLabel("Cost basis:"));
+        inputPanel.add(methodComboBox);
+
         // Panel for buttons (Reset and Sell)
         JPanel buttonsPanel = new JPanel(new FlowLayout());
         sellPanel.add(buttonsPanel, BorderLayout.SOUTH);
 
-        // Reset button to clear input fields and textArea
+        // Set up the text area for displaying messages
+        JTextArea messages = createMessageArea(sellPanel, 5, "Messages");
+
+        // Reset button to clear input fields and messages
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
             symbolField.setText("");
             quantityField.setText("");
-            textArea.setText("");
+            messages.setText("");
         });
         buttonsPanel.add(resetButton);
 
@@ -237,73 +567,49 @@ public class Portfolio {
 
             // Check if any field is empty
             if (symbol.isEmpty() || quantityText.isEmpty()) {
-                textArea.setText("Error: All fields must be filled out.");
+                messages.setText("Error: All fields must be filled out.");
                 return;
             }
 
             try {
                 // Parse the quantity to sell
                 int quantity = Integer.parseInt(quantityText);
-                boolean sold = false;
-
-                // Search for the investment in the list
-                for (Investment investment : investments) {
-                    if (investment.getSymbol().equalsIgnoreCase(symbol)) {
-                        // Check if the investment has enough quantity to sell
-                        if (investment.getQuantity() >= quantity) {
-                            investment.setQuantity(investment.getQuantity() - quantity);
-                            sold = true;
-
-                            // Remove the investment if the quantity is 0
-                            if (investment.getQuantity() == 0) {
-                                investments.remove(investment);
-                            }
-
-                            // Display success message
-                            textArea.setText("Successfully sold " + quantity + " of " + symbol + ".");
-                            break;
-                        } else {
-                            // Display error if not enough quantity to sell
-                            textArea.setText("Error: Not enough quantity to sell.");
-                            return;
-                        }
-                    }
-                }
 
-                // If investment was not found
-                if (!sold) {
-                    textArea.setText("Error: Investment not found.");
-                }
+                // Sell from the position, removing it once its quantity reaches 0
+                TaxLots.Method method = methodComboBox.getSelectedIndex() == 0 ? TaxLots.Method.FIFO : TaxLots.Method.AVERAGE;
+                submit(new PortfolioCommand.Sell(symbol, quantity, method),
+                        sold -> messages.setText("Successfully sold " + quantity + " of " + symbol + "."),
+                        () -> messages);
             } catch (NumberFormatException ex) {
                 // Handle invalid input for quantity
-                textArea.setText("Error: Quantity must be a valid number.");
+                messages.setText("Error: Quantity must be a valid number.");
             }
         });
         buttonsPanel.add(sellButton);
 
-        // Set up the text area for displaying messages
-        textArea = new JTextArea(5, 50);
-        textArea.setEditable(false);
-        textArea.setBorder(BorderFactory.createTitledBorder("Messages"));
-        sellPanel.add(new JScrollPane(textArea), BorderLayout.SOUTH);
-
-        // Refresh the frame to display the changes
-        frame.revalidate();
-        frame.repaint();
+        sellPanel.add(new JScrollPane(messages), BorderLayout.SOUTH);
+        return sellPanel;
     }
 
 
     /**
      * This method provides the functionality to update the price of an existing investment in the portfolio.
      * It allows the user to enter the symbol of the investment and the new price they want to set.
-     * The method validates the input, searches for the investment in the `investments` list, and updates its price.
-     * A success or error message is displayed in the `textArea` based on the result.
+     * The method validates the input, looks up the investment in the `investments` index, and updates its price.
+     * A success or error message is displayed in the message area based on the result.
      */
     private static void update() {
+        showPanel("Update", Portfolio::createUpdatePanel);
+    }
+
+    /**
+     * Builds the panel shown by update().
+     *
+     * @return The update panel.
+     */
+    private static JPanel createUpdatePanel() {
         // Create the main panel for the update operation
         JPanel updatePanel = new JPanel(new FlowLayout());
-        frame.getContentPane().removeAll();
-        frame.getContentPane().add(updatePanel);
 
         // Input panel for collecting investment symbol and new price
         JPanel inputPanel = new JPanel(new FlowLayout());
@@ -323,12 +629,15 @@ public class Portfolio {
         JPanel buttonsPanel = new JPanel(new FlowLayout());
         updatePanel.add(buttonsPanel, BorderLayout.SOUTH);
 
-        // Reset button to clear input fields and textArea
+        // Set up the text area for displaying messages
+        JTextArea messages = createMessageArea(updatePanel, 5, "Messages");
+
+        // Reset button to clear input fields and messages
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
             symbolField.setText("");
             priceField.setText("");
-            textArea.setText("");
+            messages.setText("");
         });
         buttonsPanel.add(resetButton);
 
@@ -340,125 +649,891 @@ public class Portfolio {
 
             // Check if any of the fields are empty
             if (symbol.isEmpty() || priceText.isEmpty()) {
-                textArea.setText("Error: All fields must be filled out.");
+                messages.setText("Error: All fields must be filled out.");
                 return;
             }
 
             try {
                 // Parse the new price
                 double newPrice = Double.parseDouble(priceText);
-                boolean updated = false;
-
-                // Search for the investment and update its price
-                for (Investment investment : investments) {
-                    if (investment.getSymbol().equalsIgnoreCase(symbol)) {
-                        investment.setPrice(newPrice);
-                        textArea.setText("Successfully updated price for " + symbol + " to " + newPrice);
-                        updated = true;
-                        break;
-                    }
-                }
 
-                // If the investment was not found, display an error message
-                if (!updated) {
-                    textArea.setText("Error: Investment not found.");
-                }
+                // Look up the investment and update its price
+                submit(new PortfolioCommand.Update(symbol, newPrice),
+                        updated -> messages.setText("Successfully updated price for " + symbol + " to " + newPrice),
+                        () -> messages);
             } catch (NumberFormatException ex) {
                 // Handle invalid price input
-                textArea.setText("Error: Price must be a valid number.");
+                messages.setText("Error: Price must be a valid number.");
             }
         });
         buttonsPanel.add(updateButton);
 
-        // Set up the text area for displaying messages
-        textArea = new JTextArea(5, 50);
-        textArea.setEditable(false);
-        textArea.setBorder(BorderFactory.createTitledBorder("Messages"));
-        updatePanel.add(new JScrollPane(textArea), BorderLayout.SOUTH);
-
-        // Refresh the frame to display the changes
-        frame.revalidate();
-        frame.repaint();
+        updatePanel.add(new JScrollPane(messages), BorderLayout.SOUTH);
+        return updatePanel;
     }
 
 
+    /**
+     * This method displays the total gain of the portfolio, along with the gain of the stocks and of the
+     * mutual funds, the gain realized by sales, and the total market and book values. The values come
+     * from running totals that are kept up to date on every buy, sell, and price update, so no investment
+     * needs to be revisited.
+     */
     private static void getGain() {
-        //Haven't Finished
+        JPanel gainPanel = showPanel("GetGain", () -> {
+            // Create the main panel for the gain report
+            JPanel panel = new JPanel(new FlowLayout());
+            panel.add(new JScrollPane(createMessageArea(panel, 10, "Total Gain")));
+            return panel;
+        });
+        JTextArea gainArea = (JTextArea) gainPanel.getClientProperty(JTextArea.class);
+        gainArea.setText("Calculating...");
+
+        // Read the running totals of the latest snapshot
+        read(new PortfolioQuery.GetGain(), totals -> gainArea.setText(String.format("Total gain: %.2f%n%n"
+                        + "Stocks gain: %.2f%n"
+                        + "Mutual funds gain: %.2f%n%n"
+                        + "Realized gain: %.2f (stocks %.2f, mutual funds %.2f)%n%n"
+                        + "Market value: %.2f%n"
+                        + "Book value: %.2f%n"
+                        + "Investments held: %d",
+                totals.getGain(), totals.getGain(InvestmentType.STOCK), totals.getGain(InvestmentType.MUTUAL_FUND),
+                totals.getRealizedGain(), totals.getRealizedGain(InvestmentType.STOCK), totals.getRealizedGain(InvestmentType.MUTUAL_FUND),
+                totals.getMarketValue(), totals.getBookValue(), totals.getCount())), () -> gainArea);
+    }
+
+    /**
+     * This method recomputes the portfolio analytics from every investment and displays them: the
+     * gain of each type, the biggest gainers and losers, the largest positions with their share of
+     * the market value, and the exposure to each type. Large portfolios are analyzed in parallel.
+     */
+    private static void analytics() {
+        showPanel("Analytics", Portfolio::createAnalyticsPanel);
     }
 
     /**
-     * This method creates a search interface that allows the user to search for an investment
-     * by its symbol. It includes input fields for the symbol and displays search results
-     * in a non-editable text area.
+     * Builds the panel shown by analytics().
+     *
+     * @return The analytics panel.
+     */
+    private static JPanel createAnalyticsPanel() {
+        // Create the main panel for the analytics
+        JPanel analyticsPanel = new JPanel(new BorderLayout());
+
+        // Input panel for choosing how many positions to list
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        analyticsPanel.add(inputPanel, BorderLayout.NORTH);
+        JComboBox<Integer> topComboBox = new JComboBox<>(new Integer[]{5, 10, 25});
+        inputPanel.add(new JLabel("Positions to list:"));
+        inputPanel.add(topComboBox);
+        JButton analyzeButton = new JButton("Analyze");
+        inputPanel.add(analyzeButton);
+
+        // Text area for displaying the report
+        JTextArea reportArea = createMessageArea(analyticsPanel, 16, "Analytics");
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        analyticsPanel.add(new JScrollPane(reportArea), BorderLayout.CENTER);
+
+        // Analyze button to recompute the analytics from the latest snapshot, without holding up trading
+        analyzeButton.addActionListener(e -> {
+            int top = (Integer) topComboBox.getSelectedItem();
+            long started = System.nanoTime();
+            reportArea.setText("Analyzing...");
+            read(new PortfolioQuery.Analyze(top), report -> {
+                StringBuilder text = new StringBuilder();
+                text.append(String.format("Analyzed %,d investments in %d ms%n%n", report.getCount(),
+                        (System.nanoTime() - started) / 1_000_000));
+                text.append(String.format("Total gain: %.2f (stocks %.2f, mutual funds %.2f)%n",
+                        report.getGain(), report.getGain(InvestmentType.STOCK), report.getGain(InvestmentType.MUTUAL_FUND)));
+                text.append(String.format("Exposure: stocks %.1f%%, mutual funds %.1f%%%n",
+                        report.getExposure(InvestmentType.STOCK), report.getExposure(InvestmentType.MUTUAL_FUND)));
+                text.append(String.format("Concentration (Herfindahl index): %.4f%n", report.getConcentration()));
+                appendPositions(text, "Top gainers", report.getTopGainers(), report);
+                appendPositions(text, "Top losers", report.getTopLosers(), report);
+                appendPositions(text, "Largest positions", report.getLargestPositions(), report);
+                reportArea.setText(text.toString());
+                reportArea.setCaretPosition(0);
+            }, () -> reportArea);
+        });
+        return analyticsPanel;
+    }
+
+    /**
+     * Appends one list of positions to an analytics report, with each position's gain and share of the market value.
+     */
+    private static void appendPositions(StringBuilder text, String title, List<Investment> positions,
+                                        PortfolioAnalytics.Report report) {
+        text.append(String.format("%n%s:%n", title));
+        if (positions.isEmpty()) {
+            text.append("  None\n");
+        }
+        for (Investment investment : positions) {
+            text.append(String.format("  %-10s %-30.30s gain %14.2f  %6.2f%% of market value%n",
+                    investment.getSymbol(), investment.getName(), investment.calculateGain(),
+                    report.getExposure(investment)));
+        }
+    }
+
+    /**
+     * This method creates a search interface that allows the user to search for investments
+     * by symbol, by keywords in their name, and by a price range. Every field is optional. The
+     * symbol is searched as it is typed: symbols that start with it come first, then symbols a
+     * typing mistake or two away from it. The matches are read a page at a time, so the first ones
+     * show at once however many there are, and the next page is read as the table is scrolled down.
      */
     private static void search() {
+        showPanel("Search", Portfolio::createSearchPanel);
+    }
+
+    /**
+     * Builds the panel shown by search().
+     *
+     * @return The search panel.
+     */
+    private static JPanel createSearchPanel() {
         // Create the main panel for search functionality
-        JPanel searchPanel = new JPanel(new FlowLayout());
-        frame.getContentPane().removeAll();
-        frame.getContentPane().add(searchPanel);
+        JPanel searchPanel = new JPanel(new BorderLayout());
+        JPanel criteriaPanel = new JPanel(new FlowLayout());
+        searchPanel.add(criteriaPanel, BorderLayout.NORTH);
 
-        // Input panel for entering the symbol to search for
+        // Input panel for entering the search criteria
         JPanel inputPanel = new JPanel(new FlowLayout());
-        searchPanel.add(inputPanel);
+        criteriaPanel.add(inputPanel);
 
         // Text field for entering the symbol to search for
-        JTextField searchField = new JTextField(15);
-        inputPanel.add(new JLabel("Search Symbol:"));
+        JTextField searchField = new JTextField(10);
+        inputPanel.add(new JLabel("Symbol:"));
         inputPanel.add(searchField);
 
+        // Text field for entering the keywords to find in investment names
+        JTextField keywordsField = new JTextField(15);
+        inputPanel.add(new JLabel("Name keywords:"));
+        inputPanel.add(keywordsField);
+
+        // Text fields for entering the price range
+        JTextField lowPriceField = new JTextField(6);
+        inputPanel.add(new JLabel("Low price:"));
+        inputPanel.add(lowPriceField);
+        JTextField highPriceField = new JTextField(6);
+        inputPanel.add(new JLabel("High price:"));
+        inputPanel.add(highPriceField);
+
         // Panel for buttons (Reset and Search)
         JPanel buttonsPanel = new JPanel(new FlowLayout());
-        searchPanel.add(buttonsPanel, BorderLayout.SOUTH);
+        criteriaPanel.add(buttonsPanel);
+
+        // Table for displaying the search results, which can be sorted by clicking a column
+        HoldingsTableModel resultModel = new HoldingsTableModel();
+        JTable resultTable = new JTable(resultModel);
+        resultTable.setAutoCreateRowSorter(true);
+        JScrollPane resultScroll = new JScrollPane(resultTable);
+        searchPanel.add(resultScroll, BorderLayout.CENTER);
+
+        // Text area for displaying the number of results or an error
+        JTextArea resultArea = createMessageArea(searchPanel, 2, "Messages");
+        searchPanel.add(new JScrollPane(resultArea), BorderLayout.SOUTH);
+
+        // Reads the pages of the results as the table is scrolled
+        SearchPager pager = new SearchPager(resultModel, resultScroll, resultArea);
+        Supplier<PortfolioSearch> criteria = () -> readSearch(searchField, keywordsField, lowPriceField,
+                highPriceField, resultArea);
+
+        // Build the symbol trie now, so the first search does not wait for it
+        submit(holdings -> holdings.getSymbols().size(), size -> { }, () -> resultArea);
+
+        // Search once typing pauses, so a burst of keystrokes reads one page instead of one per key
+        Timer typeAhead = new Timer(TYPE_AHEAD_DELAY_MILLIS, e -> {
+            PortfolioSearch search = criteria.get();
+            if (search != null) {
+                pager.start(search);
+            }
+        });
+        typeAhead.setRepeats(false);
+
+        // Search as the symbol is typed, clearing the results once it is empty again
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                typed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                typed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                typed();
+            }
 
-        // Reset button to clear the input field and result area
+            private void typed() {
+                if (searchField.getText().trim().isEmpty()) {
+                    typeAhead.stop();
+                    pager.clear();
+                    return;
+                }
+                typeAhead.restart();
+            }
+        });
+
+        // Reset button to clear the input fields and results
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
+            typeAhead.stop();
             searchField.setText("");
-            textArea.setText("");
+            keywordsField.setText("");
+            lowPriceField.setText("");
+            highPriceField.setText("");
+            pager.clear();
         });
         buttonsPanel.add(resetButton);
 
-        // Text area for displaying search results
-        JTextArea resultArea = new JTextArea(5, 50);
-        resultArea.setEditable(false);
-        resultArea.setBorder(BorderFactory.createTitledBorder("Messages"));
-        JScrollPane scrollPane = new JScrollPane(resultArea);
-        searchPanel.add(scrollPane, BorderLayout.CENTER);
-
         // Search button to perform the search
         JButton searchButton = new JButton("Search");
         searchButton.addActionListener(e -> {
-            String symbol = searchField.getText().trim();
-            if (symbol.isEmpty()) {
-                resultArea.setText("Error: Please enter a symbol to search.");
+            typeAhead.stop();
+            PortfolioSearch search = criteria.get();
+            if (search != null) {
+                pager.start(search);
+            }
+        });
+        buttonsPanel.add(searchButton);
+        return searchPanel;
+    }
+
+    /**
+     * Reads the search criteria from the search panel's fields.
+     *
+     * @return The search, or null if a price is not valid, in which case the error is shown.
+     */
+    private static PortfolioSearch readSearch(JTextField symbolField, JTextField keywordsField,
+                                              JTextField lowPriceField, JTextField highPriceField, JTextArea resultArea) {
+        String lowText = lowPriceField.getText().trim();
+        String highText = highPriceField.getText().trim();
+
+        double low;
+        double high;
+        try {
+            // Missing bounds leave that end of the price range open
+            low = lowText.isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(lowText);
+            high = highText.isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(highText);
+        } catch (NumberFormatException ex) {
+            resultArea.setText("Error: Low and High price must be valid numbers.");
+            return null;
+        }
+        if (low > high) {
+            resultArea.setText("Error: Low price must not be greater than High price.");
+            return null;
+        }
+        return new PortfolioSearch(symbolField.getText().trim(), keywordsField.getText().trim(), low, high);
+    }
+
+    /**
+     * Shows the results of a search in a table a page at a time, reading the next page on the worker
+     * thread whenever the table is scrolled near its end. Only used on the event dispatch thread.
+     */
+    private static final class SearchPager {
+        private final HoldingsTableModel model;
+        private final JScrollPane scroll;
+        private final JTextArea messages;
+
+        /** The search shown and where its next page starts, or null once every page has been read. */
+        private PortfolioSearch search;
+        private PortfolioSearch.Cursor next;
+        private boolean loading;
+        private int similar;
+
+        /** Counts the searches started, so pages of an earlier search that arrive late are dropped. */
+        private int generation;
+
+        /** The page being read, cancelled when another search starts so it is dropped if it has not run yet. */
+        private CompletableFuture<?> reading;
+
+        private SearchPager(HoldingsTableModel model, JScrollPane scroll, JTextArea messages) {
+            this.model = model;
+            this.scroll = scroll;
+            this.messages = messages;
+            scroll.getVerticalScrollBar().getModel().addChangeListener(e -> loadIfNeeded());
+        }
+
+        /**
+         * Shows the first page of a search in place of the results shown before.
+         */
+        private void start(PortfolioSearch search) {
+            cancel();
+            this.search = search;
+            next = null;
+            similar = 0;
+            load();
+        }
+
+        /**
+         * Empties the results, dropping any page still being read.
+         */
+        private void clear() {
+            cancel();
+            search = null;
+            next = null;
+            model.setInvestments(new ArrayList<>());
+            messages.setText("");
+        }
+
+        /**
+         * Drops the page being read, if any: it is not run if it is still queued behind other commands,
+         * and its result is ignored if it already ran.
+         */
+        private void cancel() {
+            generation++;
+            loading = false;
+            if (reading != null) {
+                reading.cancel(false);
+                reading = null;
+            }
+        }
+
+        /**
+         * Reads the next page of the search on the worker thread and adds it to the table.
+         */
+        private void load() {
+            loading = true;
+            int started = generation;
+            boolean first = next == null;
+            reading = submit(new PortfolioCommand.SearchPage(search, next, PortfolioSearch.PAGE_SIZE), page -> {
+                if (started != generation) {
+                    return;
+                }
+                loading = false;
+                reading = null;
+                if (first) {
+                    model.setInvestments(page.getMatches());
+                } else {
+                    model.addInvestments(page.getMatches());
+                }
+                next = page.getNext();
+                similar += page.getSimilar();
+                showCount();
+
+                // A page that does not fill the table reads the next one straight away
+                SwingUtilities.invokeLater(this::loadIfNeeded);
+            }, () -> messages);
+        }
+
+        /**
+         * Reads the next page if there is one and the table is scrolled to within a screenful of its end.
+         */
+        private void loadIfNeeded() {
+            if (search == null || next == null || loading) {
+                return;
+            }
+            BoundedRangeModel bar = scroll.getVerticalScrollBar().getModel();
+            if (bar.getValue() + 2 * bar.getExtent() >= bar.getMaximum()) {
+                load();
+            }
+        }
+
+        private void showCount() {
+            int count = model.getRowCount();
+            if (count == 0 && next == null) {
+                messages.setText("No investments match the search.");
                 return;
             }
+            StringBuilder text = new StringBuilder(next == null ? "Found " : "Showing ").append(count)
+                    .append(count == 1 ? " investment" : " investments");
+            if (similar > 0) {
+                text.append(", ").append(similar).append(" with symbols similar to ").append(search.getSymbol());
+            }
+            messages.setText(text.append(next == null ? "." : "; scroll down for more.").toString());
+        }
+    }
 
-            // StringBuilder to accumulate search results
-            StringBuilder resultText = new StringBuilder("Search Results for: " + symbol + "\n");
-            boolean found = false;
+    /**
+     * This method shows every investment in a table that follows the portfolio as it changes.
+     * The table can be sorted by clicking a column header and filtered by text in the symbol or
+     * name; both only reorder row numbers, so no investment is copied, and only the rows on screen
+     * are drawn.
+     */
+    private static void holdings() {
+        showPanel("Holdings", Portfolio::createHoldingsPanel);
+    }
+
+    /**
+     * Builds the panel shown by holdings().
+     *
+     * @return The holdings browser panel.
+     */
+    private static JPanel createHoldingsPanel() {
+        JPanel holdingsPanel = new JPanel(new BorderLayout());
 
-            // Loop through the investments and search for the given symbol
-            for (Investment investment : investments) {
-                if (investment.getSymbol().equalsIgnoreCase(symbol)) {
-                    resultText.append(investment.toString()).append("\n");
-                    found = true;
+        // Input panel for entering the filter text
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        holdingsPanel.add(inputPanel, BorderLayout.NORTH);
+        JTextField filterField = new JTextField(20);
+        inputPanel.add(new JLabel("Symbol or name contains:"));
+        inputPanel.add(filterField);
+        JButton filterButton = new JButton("Filter");
+        inputPanel.add(filterButton);
+        JButton clearButton = new JButton("Clear");
+        inputPanel.add(clearButton);
+
+        // Table over the live holdings, sorted and filtered through the row sorter
+        JTable holdingsTable = new JTable(holdingsModel);
+        TableRowSorter<HoldingsTableModel> sorter = new TableRowSorter<>(holdingsModel);
+        holdingsTable.setRowSorter(sorter);
+        holdingsPanel.add(new JScrollPane(holdingsTable), BorderLayout.CENTER);
+
+        // Text area for displaying the number of rows shown
+        JTextArea messages = createMessageArea(holdingsPanel, 1, "Messages");
+        holdingsPanel.add(messages, BorderLayout.SOUTH);
+
+        // Filter the rows by the text in the symbol or name, ignoring letter case
+        ActionListener filter = e -> {
+            String text = filterField.getText().trim().toLowerCase(Locale.ROOT);
+            sorter.setRowFilter(text.isEmpty() ? null : new RowFilter<HoldingsTableModel, Integer>() {
+                @Override
+                public boolean include(Entry<? extends HoldingsTableModel, ? extends Integer> entry) {
+                    Investment investment = entry.getModel().getInvestment(entry.getIdentifier());
+                    return investment.getSymbol().toLowerCase(Locale.ROOT).contains(text)
+                            || investment.getName().toLowerCase(Locale.ROOT).contains(text);
                 }
+            });
+            messages.setText("Showing " + holdingsTable.getRowCount() + " of " + holdingsModel.getRowCount()
+                    + " investments.");
+        };
+        filterField.addActionListener(filter);
+        filterButton.addActionListener(filter);
+        clearButton.addActionListener(e -> {
+            filterField.setText("");
+            filter.actionPerformed(e);
+        });
+        return holdingsPanel;
+    }
+
+    /**
+     * This method shows the prices recorded for a symbol over a chosen period, oldest first, with the
+     * lowest and highest price in the period. Every price a position takes is recorded, whether it
+     * came from a purchase, an update, or a live quote; only the compressed chunks that overlap the
+     * period are read.
+     */
+    private static void priceHistory() {
+        showPanel("Price History", Portfolio::createPriceHistoryPanel);
+    }
+
+    /**
+     * Builds the panel shown by priceHistory().
+     *
+     * @return The price history panel.
+     */
+    private static JPanel createPriceHistoryPanel() {
+        JPanel historyPanel = new JPanel(new BorderLayout());
+
+        // Input panel for choosing the symbol and the period
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        historyPanel.add(inputPanel, BorderLayout.NORTH);
+        JTextField symbolField = new JTextField(10);
+        inputPanel.add(new JLabel("Symbol:"));
+        inputPanel.add(symbolField);
+        String[] periods = {"Last hour", "Last day", "Last week", "All"};
+        long[] periodMillis = {3_600_000L, 86_400_000L, 7 * 86_400_000L, Long.MAX_VALUE};
+        JComboBox<String> periodComboBox = new JComboBox<>(periods);
+        inputPanel.add(periodComboBox);
+        JButton showButton = new JButton("Show");
+        inputPanel.add(showButton);
+
+        // Text area for displaying the prices
+        JTextArea pricesArea = createMessageArea(historyPanel, 16, "Prices");
+        pricesArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        historyPanel.add(new JScrollPane(pricesArea), BorderLayout.CENTER);
+
+        // Show button to read the prices on the worker thread
+        ActionListener show = e -> {
+            String symbol = symbolField.getText().trim();
+            if (symbol.isEmpty()) {
+                pricesArea.setText("Error: Symbol is required.");
+                return;
             }
+            long to = System.currentTimeMillis();
+            long period = periodMillis[periodComboBox.getSelectedIndex()];
+            long from = period == Long.MAX_VALUE ? Long.MIN_VALUE : to - period;
+            pricesArea.setText("Reading...");
+            submit(new PortfolioCommand.History(symbol, from, to), ticks -> {
+                if (ticks.size() == 0) {
+                    pricesArea.setText("No prices recorded for " + symbol + " in this period.");
+                    return;
+                }
+                double low = Double.MAX_VALUE;
+                double high = -Double.MAX_VALUE;
+                for (int i = 0; i < ticks.size(); i++) {
+                    low = Math.min(low, ticks.getPrice(i));
+                    high = Math.max(high, ticks.getPrice(i));
+                }
 
-            // If no investment was found, append the appropriate message
-            if (!found) {
-                resultText.append("No investment found with the symbol: ").append(symbol);
+                // List at most the newest prices, since a period can hold millions of them
+                int first = Math.max(0, ticks.size() - 1000);
+                DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+                StringBuilder text = new StringBuilder(String.format("%,d prices recorded for %s: low %.2f, high %.2f%n",
+                        ticks.size(), symbol, low, high));
+                if (first > 0) {
+                    text.append(String.format("Showing the newest %,d.%n", ticks.size() - first));
+                }
+                text.append('\n');
+                for (int i = first; i < ticks.size(); i++) {
+                    LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ticks.getTimestamp(i)),
+                            ZoneId.systemDefault());
+                    text.append(String.format("  %s  %12.4f%n", format.format(time), ticks.getPrice(i)));
+                }
+                pricesArea.setText(text.toString());
+                pricesArea.setCaretPosition(0);
+            }, () -> pricesArea);
+        };
+        symbolField.addActionListener(show);
+        showButton.addActionListener(show);
+        return historyPanel;
+    }
+
+    /**
+     * This method creates an interface for importing investments from a CSV file and exporting every
+     * investment to one. An import parses the file in parallel, checks each row the same way the Buy
+     * form does, and then adds the valid rows, merging rows for a symbol already held. An export writes
+     * a consistent snapshot of the portfolio while trading continues.
+     */
+    private static void importExport() {
+        showPanel("Import/Export", Portfolio::createImportExportPanel);
+    }
+
+    /**
+     * Builds the panel shown by importExport().
+     *
+     * @return The import and export panel.
+     */
+    private static JPanel createImportExportPanel() {
+        JPanel filePanel = new JPanel(new BorderLayout());
+
+        // Input panel for entering the CSV file
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        filePanel.add(inputPanel, BorderLayout.NORTH);
+        JTextField fileField = new JTextField(30);
+        inputPanel.add(new JLabel("CSV file:"));
+        inputPanel.add(fileField);
+        JButton importButton = new JButton("Import");
+        inputPanel.add(importButton);
+        JButton exportButton = new JButton("Export");
+        inputPanel.add(exportButton);
+
+        // Text area for displaying the results
+        JTextArea messages = createMessageArea(filePanel, 12, "Messages");
+        messages.setText("Columns: " + PortfolioCsv.HEADER + "\nThe bookValue column is optional.");
+        filePanel.add(new JScrollPane(messages), BorderLayout.CENTER);
+
+        // Import button to parse the file in the background, then add the rows on the worker thread
+        importButton.addActionListener(e -> {
+            String filename = fileField.getText().trim();
+            if (filename.isEmpty()) {
+                messages.setText("Error: Enter the file to import.");
+                return;
             }
+            Path file = Paths.get(filename);
+            long started = System.nanoTime();
+            messages.setText("Importing " + filename + "...");
+            CompletableFuture<PortfolioCsv.Import> rows = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return PortfolioCsv.read(file);
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Could not import " + filename + ": " + ex.getMessage(), ex);
+                }
+            });
+            handle(rows.thenCompose(parsed -> investments.submit(new PortfolioCommand.Import(parsed))), result -> {
+                StringBuilder text = new StringBuilder(String.format("Imported %,d rows from %s in %d ms; %,d skipped.%n",
+                        result.getAddedCount(), filename, (System.nanoTime() - started) / 1_000_000, result.getSkippedCount()));
+                for (String error : result.getErrors()) {
+                    text.append("\n").append(error);
+                }
+                messages.setText(text.toString());
+                messages.setCaretPosition(0);
+            }, () -> messages);
+        });
 
-            // Display the search results in the result area
-            resultArea.setText(resultText.toString());
+        // Export button to write the latest snapshot on a reader thread
+        exportButton.addActionListener(e -> {
+            String filename = fileField.getText().trim();
+            if (filename.isEmpty()) {
+                messages.setText("Error: Enter the file to export to.");
+                return;
+            }
+            long started = System.nanoTime();
+            messages.setText("Exporting to " + filename + "...");
+            read(new PortfolioQuery.Export(Paths.get(filename)), written -> messages.setText(String.format(
+                    "Exported %,d investments to %s in %d ms.", written, filename,
+                    (System.nanoTime() - started) / 1_000_000)), () -> messages);
         });
-        buttonsPanel.add(searchButton);
+        return filePanel;
+    }
+
+    /**
+     * This method creates an interface for streaming simulated market prices into the portfolio.
+     * Prices are published by several feed threads, and the latest price of each symbol is applied
+     * once per refresh window in a single batch. The counters and gains are redrawn once per batch,
+     * along with how many prices were dropped because a newer price arrived in the same window.
+     */
+    private static void livePrices() {
+        showPanel("Live Prices", Portfolio::createLivePricesPanel);
+    }
 
-        // Refresh the frame to display the updated search panel
-        frame.revalidate();
-        frame.repaint();
+    /**
+     * Builds the panel shown by livePrices().
+     *
+     * @return The live prices panel.
+     */
+    private static JPanel createLivePricesPanel() {
+        // Create the main panel for the live prices
+        JPanel livePanel = new JPanel(new FlowLayout());
+
+        // Input panel for choosing the refresh window
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        livePanel.add(inputPanel);
+        JComboBox<String> windowComboBox = new JComboBox<>(new String[]{"16 ms", "100 ms", "500 ms"});
+        inputPanel.add(new JLabel("Refresh every:"));
+        inputPanel.add(windowComboBox);
+
+        // Panel for buttons (Start and Stop)
+        JPanel buttonsPanel = new JPanel(new FlowLayout());
+        livePanel.add(buttonsPanel, BorderLayout.SOUTH);
+
+        // Text area for displaying the batch counters
+        JTextArea liveArea = createMessageArea(livePanel, 8, "Live Prices");
+        liveArea.setText("Press Start to stream simulated prices.");
+        livePanel.add(new JScrollPane(liveArea), BorderLayout.CENTER);
+
+        // Start button to stream prices for every held investment
+        JButton startButton = new JButton("Start");
+        startButton.addActionListener(e -> {
+            stopLivePrices();
+            long window = Long.parseLong(((String) windowComboBox.getSelectedItem()).split(" ")[0]);
+            read(new PortfolioQuery.Positions(), held -> {
+                if (held.isEmpty()) {
+                    liveArea.setText("Error: Buy an investment before streaming prices.");
+                    return;
+                }
+
+                // Start each symbol's random walk from its current price
+                List<String> symbols = new ArrayList<>();
+                double[] prices = new double[held.size()];
+                for (int i = 0; i < held.size(); i++) {
+                    symbols.add(held.get(i).getSymbol());
+                    prices[i] = Math.max(held.get(i).getPrice(), 0.01);
+                }
+                int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+                syntheticFeed = new SyntheticFeed(priceFeed, symbols, prices, threads);
+                coalescer = new QuoteCoalescer(priceFeed, investments, window);
+
+                // Redraw once per batch, however many prices the batch applied
+                coalescer.start(batch -> SwingUtilities.invokeLater(() -> liveArea.setText(String.format(
+                        "Refresh window: %d ms%n"
+                                + "Prices received: %,d%n"
+                                + "Prices dropped by coalescing: %,d%n"
+                                + "Investments updated in last batch: %,d%n%n"
+                                + "Total gain: %.2f%n"
+                                + "Market value: %.2f",
+                        window, batch.received, batch.coalesced, batch.applied,
+                        batch.totals.getGain(), batch.totals.getMarketValue()))));
+                syntheticFeed.start();
+            }, () -> liveArea);
+        });
+        buttonsPanel.add(startButton);
+
+        // Stop button to stop streaming prices
+        JButton stopButton = new JButton("Stop");
+        stopButton.addActionListener(e -> {
+            stopLivePrices();
+            liveArea.append("\n\nStopped.");
+        });
+        buttonsPanel.add(stopButton);
+        return livePanel;
+    }
+
+    /**
+     * Stops the simulated market feed and the batching of its prices, if they are running.
+     */
+    private static void stopLivePrices() {
+        if (syntheticFeed != null) {
+            syntheticFeed.stop();
+            syntheticFeed = null;
+        }
+        if (coalescer != null) {
+            coalescer.stop();
+            coalescer = null;
+        }
+    }
+
+    /**
+     * This method manages the alert rules, each of which fires when a symbol's price or gain percent
+     * crosses its threshold, and lists the alerts fired so far. Rules are checked on the worker thread as
+     * prices change, including live quotes, looking only at the thresholds each change crossed.
+     */
+    private static void alerts() {
+        showPanel("Alerts", Portfolio::createAlertsPanel);
+    }
+
+    /**
+     * Builds the panel shown by alerts(). Rules are only added and removed through this panel, so its
+     * list of rules is kept up to date by the panel itself.
+     *
+     * @return The alerts panel.
+     */
+    private static JPanel createAlertsPanel() {
+        JPanel alertsPanel = new JPanel(new BorderLayout());
+
+        // Input panel for the new rule's symbol, condition, and threshold
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        alertsPanel.add(inputPanel, BorderLayout.NORTH);
+        JTextField symbolField = new JTextField(8);
+        inputPanel.add(new JLabel("Symbol:"));
+        inputPanel.add(symbolField);
+        JComboBox<PriceAlerts.Condition> conditionComboBox = new JComboBox<>(PriceAlerts.Condition.values());
+        inputPanel.add(conditionComboBox);
+        JTextField thresholdField = new JTextField(8);
+        inputPanel.add(thresholdField);
+        JButton addButton = new JButton("Add");
+        inputPanel.add(addButton);
+        JButton removeButton = new JButton("Remove");
+        inputPanel.add(removeButton);
+
+        // The rules beside the log of the alerts fired
+        DefaultListModel<PriceAlerts.Rule> rules = new DefaultListModel<>();
+        JList<PriceAlerts.Rule> rulesList = new JList<>(rules);
+        JScrollPane rulesPane = new JScrollPane(rulesList);
+        rulesPane.setBorder(BorderFactory.createTitledBorder("Rules"));
+        JScrollPane logPane = new JScrollPane(alertLog());
+        logPane.setBorder(BorderFactory.createTitledBorder("Alerts fired"));
+        JPanel listsPanel = new JPanel(new GridLayout(1, 2));
+        listsPanel.add(rulesPane);
+        listsPanel.add(logPane);
+        alertsPanel.add(listsPanel, BorderLayout.CENTER);
+
+        // Text area for displaying messages
+        JTextArea messages = createMessageArea(alertsPanel, 2, "Messages");
+        alertsPanel.add(new JScrollPane(messages), BorderLayout.SOUTH);
+
+        // Add button to add a rule, checked from the symbol's current price and gain
+        ActionListener add = e -> {
+            String symbol = symbolField.getText().trim();
+            String thresholdText = thresholdField.getText().trim();
+            if (symbol.isEmpty() || thresholdText.isEmpty()) {
+                messages.setText("Error: Symbol and threshold are required.");
+                return;
+            }
+            try {
+                double threshold = Double.parseDouble(thresholdText);
+                submit(new PortfolioCommand.AddAlert(symbol, (PriceAlerts.Condition) conditionComboBox.getSelectedItem(),
+                        threshold), rule -> {
+                    rules.addElement(rule);
+                    messages.setText("Added alert " + rule + ".");
+                }, () -> messages);
+            } catch (NumberFormatException ex) {
+                messages.setText("Error: Threshold must be a valid number.");
+            }
+        };
+        thresholdField.addActionListener(add);
+        addButton.addActionListener(add);
+
+        // Remove button to remove the selected rules
+        removeButton.addActionListener(e -> {
+            List<PriceAlerts.Rule> selected = rulesList.getSelectedValuesList();
+            if (selected.isEmpty()) {
+                messages.setText("Error: Select the rules to remove.");
+                return;
+            }
+            for (PriceAlerts.Rule rule : selected) {
+                submit(new PortfolioCommand.RemoveAlert(rule.getId()), removed -> {
+                    rules.removeElement(rule);
+                    messages.setText("Removed alert " + rule + ".");
+                }, () -> messages);
+            }
+        });
+        return alertsPanel;
+    }
+
+    /**
+     * @return The log of the alerts fired, creating it the first time. Only called on the event dispatch thread.
+     */
+    private static JTextArea alertLog() {
+        if (alertLog == null) {
+            alertLog = new JTextArea(12, 30);
+            alertLog.setEditable(false);
+        }
+        return alertLog;
+    }
+
+    /**
+     * Adds a fired alert to the log, with the time it fired, and sounds the system beep. Only called on
+     * the event dispatch thread.
+     *
+     * @param alert The alert that fired.
+     */
+    private static void alerted(PriceAlerts.Alert alert) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(alert.getTime()), ZoneId.systemDefault());
+        alertLog().append(DateTimeFormatter.ofPattern("HH:mm:ss").format(time) + "  " + alert + "\n");
+        Toolkit.getDefaultToolkit().beep();
+    }
+
+    /**
+     * This method shows the application's metrics: how many times each command, query, and menu choice
+     * ran and how long it took, how long the event dispatch thread spends on each event, the number of
+     * investments held, and the heap in use. The figures can be refreshed and saved to a file.
+     */
+    private static void diagnostics() {
+        JPanel diagnosticsPanel = showPanel("Diagnostics", Portfolio::createDiagnosticsPanel);
+        ((JButton) diagnosticsPanel.getClientProperty(JButton.class)).doClick();
+    }
+
+    /**
+     * Builds the panel shown by diagnostics(). Its Refresh button is stored as its JButton client property.
+     *
+     * @return The diagnostics panel.
+     */
+    private static JPanel createDiagnosticsPanel() {
+        JPanel diagnosticsPanel = new JPanel(new BorderLayout());
+        Metrics metrics = investments.getMetrics();
+
+        // Input panel for the file to save the metrics to
+        JPanel inputPanel = new JPanel(new FlowLayout());
+        diagnosticsPanel.add(inputPanel, BorderLayout.NORTH);
+        JButton refreshButton = new JButton("Refresh");
+        inputPanel.add(refreshButton);
+        JTextField fileField = new JTextField("metrics.txt", 20);
+        inputPanel.add(new JLabel("File:"));
+        inputPanel.add(fileField);
+        JButton dumpButton = new JButton("Save to File");
+        inputPanel.add(dumpButton);
+        diagnosticsPanel.putClientProperty(JButton.class, refreshButton);
+
+        // Text area for displaying the metrics, in a fixed-width font so the columns line up
+        JTextArea metricsArea = createMessageArea(diagnosticsPanel, 16, "Metrics");
+        metricsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        diagnosticsPanel.add(new JScrollPane(metricsArea), BorderLayout.CENTER);
+
+        // Refresh button to build the report off the event dispatch thread
+        refreshButton.addActionListener(e -> handle(CompletableFuture.supplyAsync(metrics::report), report -> {
+            metricsArea.setText(report);
+            metricsArea.setCaretPosition(0);
+        }, () -> metricsArea));
+
+        // Save button to write the report to the file in the background
+        dumpButton.addActionListener(e -> {
+            String filename = fileField.getText().trim();
+            if (filename.isEmpty()) {
+                metricsArea.setText("Error: Enter the file to save the metrics to.");
+                return;
+            }
+            handle(CompletableFuture.runAsync(() -> {
+                try {
+                    metrics.dump(Paths.get(filename));
+                } catch (IOException ex) {
+                    throw new IllegalArgumentException("Could not save to " + filename + ": " + ex.getMessage(), ex);
+                }
+            }), done -> metricsArea.append("\nSaved to " + filename + "."), () -> metricsArea);
+        });
+        return diagnosticsPanel;
     }
 
     /**
@@ -468,6 +1543,7 @@ public class Portfolio {
      */
     static class MenuActionListener implements ActionListener {
         private final String command;
+        private final Metrics.Timer timer;
 
         /**
          * Constructor for the MenuActionListener. It accepts a command that represents 
@@ -477,37 +1553,65 @@ public class Portfolio {
          */
         public MenuActionListener(String command) {
             this.command = command;
+            this.timer = investments.getMetrics().timer("Menu " + command);
         }
 
         /**
          * This method is called when a menu item is selected. Based on the command,
-         * it triggers the corresponding action (e.g., Buy, Sell, Update, etc.).
+         * it triggers the corresponding action (e.g., Buy, Sell, Update, etc.), and records how long it took.
          * 
          * @param e The ActionEvent triggered by the menu item selection.
          */
         @Override
         public void actionPerformed(ActionEvent e) {
-            switch (command) {
-                case "Buy":
-                    buy();
-                    break;
-                case "Sell":
-                    sell();
-                    break;
-                case "Update":
-                    update();
-                    break;
-                case "GetGain":
-                    getGain();
-                    break;
-                case "Search":
-                    search();
-                    break;
-                case "Quit":
-                    System.exit(0);
-                    break;
-                default:
-                    break;
+            // Time how long the event dispatch thread spends on the choice
+            long started = System.nanoTime();
+            try {
+                switch (command) {
+                    case "Buy":
+                        buy();
+                        break;
+                    case "Sell":
+                        sell();
+                        break;
+                    case "Update":
+                        update();
+                        break;
+                    case "GetGain":
+                        getGain();
+                        break;
+                    case "Analytics":
+                        analytics();
+                        break;
+                    case "Search":
+                        search();
+                        break;
+                    case "Holdings":
+                        holdings();
+                        break;
+                    case "Price History":
+                        priceHistory();
+                        break;
+                    case "Import/Export":
+                        importExport();
+                        break;
+                    case "Live Prices":
+                        livePrices();
+                        break;
+                    case "Alerts":
+                        alerts();
+                        break;
+                    case "Diagnostics":
+                        diagnostics();
+                        break;
+                    case "Quit":
+                        quit();
+                        break;
+                    default:
+                        break;
+                }
+            } finally {
+                timer.recordSince(started);
             }
         }
     }
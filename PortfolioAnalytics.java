@@ -0,0 +1,387 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class recomputes portfolio analytics from every position: the total and per-type gain, the
+ * biggest gainers and losers, and how concentrated the portfolio is in its largest positions and in
+ * each investment type.
+ *
+ * Large portfolios are split into parts that are analyzed in parallel on a fork/join pool: halves of
+ * an array, or subtrees of a snapshot's {@link SymbolMap}, so a snapshot is never copied into an array
+ * first. Each part fills its own partial result, with the sums in exact {@link Money} units and the top
+ * positions in small bounded heaps, so threads never share a counter; the partial results are then
+ * merged pairwise as the parts join. The sums are checked, so an overflow throws an ArithmeticException
+ * instead of reporting a wrapped-around total. Portfolios below {@value #SEQUENTIAL_THRESHOLD} positions are
+ * analyzed on the calling thread, where splitting would cost more than it saves.
+ */
+public class PortfolioAnalytics {
+
+    /** Below this many positions, analytics run on the calling thread. */
+    public static final int SEQUENTIAL_THRESHOLD = 50_000;
+
+    /** Number of positions each fork/join task analyzes without splitting further. */
+    private static final int LEAF_SIZE = 16_384;
+
+    private static final int STOCK = InvestmentType.STOCK.ordinal();
+    private static final int MUTUAL_FUND = InvestmentType.MUTUAL_FUND.ordinal();
+
+    /**
+     * The analytics computed from every position. The positions listed are detached copies.
+     */
+    public static class Report {
+        private final long[] marketValue;
+        private final long[] bookValue;
+        private final int count;
+        private final double concentration;
+        private final List<Investment> topGainers;
+        private final List<Investment> topLosers;
+        private final List<Investment> largestPositions;
+
+        private Report(Partial partial) {
+            this.marketValue = partial.marketValue;
+            this.bookValue = partial.bookValue;
+            this.count = partial.count;
+            long total = Math.addExact(marketValue[STOCK], marketValue[MUTUAL_FUND]);
+            this.concentration = total == 0 ? 0 : partial.sumOfSquares / ((double) total * total);
+            this.topGainers = partial.gainers.investments();
+            this.topLosers = partial.losers.investments();
+            this.largestPositions = partial.largest.investments();
+        }
+
+        /**
+         * @return The number of positions analyzed.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The total market value of every position.
+         */
+        public double getMarketValue() {
+            return Money.toDouble(marketValue[STOCK] + marketValue[MUTUAL_FUND]);
+        }
+
+        /**
+         * @return The total book value of every position.
+         */
+        public double getBookValue() {
+            return Money.toDouble(bookValue[STOCK] + bookValue[MUTUAL_FUND]);
+        }
+
+        /**
+         * @return The total unrealized gain of every position.
+         */
+        public double getGain() {
+            return Money.toDouble(marketValue[STOCK] + marketValue[MUTUAL_FUND] - bookValue[STOCK] - bookValue[MUTUAL_FUND]);
+        }
+
+        /**
+         * @param type The investment type.
+         * @return The total unrealized gain of the positions of that type.
+         */
+        public double getGain(InvestmentType type) {
+            int index = type.ordinal();
+            return Money.toDouble(marketValue[index] - bookValue[index]);
+        }
+
+        /**
+         * @param type The investment type.
+         * @return The percentage of the market value held in that type.
+         */
+        public double getExposure(InvestmentType type) {
+            return percentOfMarketValue(marketValue[type.ordinal()]);
+        }
+
+        /**
+         * @param investment A position of the portfolio.
+         * @return The percentage of the market value held in the position.
+         */
+        public double getExposure(Investment investment) {
+            return percentOfMarketValue(Money.times(investment.getPriceUnits(), investment.getQuantity()));
+        }
+
+        /**
+         * The Herfindahl index of the positions' market values: the sum of the squares of each
+         * position's share. It is 1 when everything is in one position and 1 / n when n positions
+         * are equally weighted.
+         *
+         * @return The concentration, between 0 and 1.
+         */
+        public double getConcentration() {
+            return concentration;
+        }
+
+        /**
+         * @return The positions with the largest gains, largest first; only positions with a gain are listed.
+         */
+        public List<Investment> getTopGainers() {
+            return topGainers;
+        }
+
+        /**
+         * @return The positions with the largest losses, largest loss first; only positions with a loss are listed.
+         */
+        public List<Investment> getTopLosers() {
+            return topLosers;
+        }
+
+        /**
+         * @return The positions with the largest market values, largest first.
+         */
+        public List<Investment> getLargestPositions() {
+            return largestPositions;
+        }
+
+        private double percentOfMarketValue(long units) {
+            long total = Math.addExact(marketValue[STOCK], marketValue[MUTUAL_FUND]);
+            return total == 0 ? 0 : 100.0 * units / total;
+        }
+    }
+
+    private PortfolioAnalytics() {
+    }
+
+    /**
+     * Analyzes the positions, in parallel on the common fork/join pool when there are enough of them.
+     * The positions must not change until the analysis returns.
+     *
+     * @param positions The positions to analyze.
+     * @param top The number of gainers, losers, and largest positions to list.
+     * @return The analytics.
+     */
+    public static Report analyze(Collection<Investment> positions, int top) {
+        return analyze(positions.toArray(new Investment[0]), top);
+    }
+
+    /**
+     * Analyzes the positions of a snapshot, in parallel on the common fork/join pool when there are
+     * enough of them. A snapshot never changes, so it can be analyzed while the portfolio changes.
+     *
+     * @param snapshot The snapshot to analyze.
+     * @param top The number of gainers, losers, and largest positions to list.
+     * @return The analytics.
+     */
+    public static Report analyze(PortfolioSnapshot snapshot, int top) {
+        return analyze(snapshot, top, snapshot.size() < SEQUENTIAL_THRESHOLD ? null : ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyzes the positions of a snapshot on the given pool, or on the calling thread if the pool is
+     * null. The tasks split the snapshot's trie between them and read the positions where they are.
+     *
+     * @param snapshot The snapshot to analyze.
+     * @param top The number of gainers, losers, and largest positions to list.
+     * @param pool The pool to analyze on, or null to analyze on the calling thread.
+     * @return The analytics.
+     */
+    public static Report analyze(PortfolioSnapshot snapshot, int top, ForkJoinPool pool) {
+        return analyze(snapshot.spliterator(), top, pool);
+    }
+
+    private static Report analyze(Investment[] positions, int top) {
+        return analyze(positions, top, positions.length < SEQUENTIAL_THRESHOLD ? null : ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyzes the positions on the given pool, or on the calling thread if the pool is null.
+     * The positions must not change until the analysis returns.
+     *
+     * @param positions The positions to analyze.
+     * @param top The number of gainers, losers, and largest positions to list.
+     * @param pool The pool to analyze on, or null to analyze on the calling thread.
+     * @return The analytics.
+     */
+    public static Report analyze(Investment[] positions, int top, ForkJoinPool pool) {
+        return analyze(Arrays.spliterator(positions), top, pool);
+    }
+
+    private static Report analyze(Spliterator<Investment> positions, int top, ForkJoinPool pool) {
+        Partial partial;
+        if (pool == null) {
+            partial = new Partial(top);
+            positions.forEachRemaining(partial::add);
+        } else {
+            partial = pool.invoke(new AnalyzeTask(positions, top));
+        }
+        return new Report(partial);
+    }
+
+    /**
+     * Analyzes a part of the positions, splitting it in two until the parts are small enough.
+     */
+    private static class AnalyzeTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Spliterator<Investment> positions;
+        private final int top;
+
+        AnalyzeTask(Spliterator<Investment> positions, int top) {
+            this.positions = positions;
+            this.top = top;
+        }
+
+        @Override
+        protected Partial compute() {
+            Spliterator<Investment> prefix;
+            if (positions.estimateSize() > LEAF_SIZE && (prefix = positions.trySplit()) != null) {
+                AnalyzeTask left = new AnalyzeTask(prefix, top);
+                left.fork();
+                Partial right = new AnalyzeTask(positions, top).compute();
+                return left.join().merge(right);
+            }
+            Partial partial = new Partial(top);
+            positions.forEachRemaining(partial::add);
+            return partial;
+        }
+    }
+
+    /**
+     * The analytics of one part of the positions, filled by one thread.
+     */
+    private static class Partial {
+        final long[] marketValue = new long[2];
+        final long[] bookValue = new long[2];
+        int count;
+        double sumOfSquares;
+        final TopPositions gainers;
+        final TopPositions losers;
+        final TopPositions largest;
+
+        Partial(int top) {
+            gainers = new TopPositions(top);
+            losers = new TopPositions(top);
+            largest = new TopPositions(top);
+        }
+
+        void add(Investment investment) {
+            int type = investment.getInvestmentType().ordinal();
+            long value = Money.times(investment.getPriceUnits(), investment.getQuantity());
+            long gain = Math.subtractExact(value, investment.getBookValueUnits());
+            marketValue[type] = Math.addExact(marketValue[type], value);
+            bookValue[type] = Math.addExact(bookValue[type], investment.getBookValueUnits());
+            sumOfSquares += (double) value * value;
+            if (gain > 0) {
+                gainers.offer(gain, investment);
+            } else if (gain < 0) {
+                losers.offer(-gain, investment);
+            }
+            largest.offer(value, investment);
+            count++;
+        }
+
+        Partial merge(Partial other) {
+            for (int type = 0; type < 2; type++) {
+                marketValue[type] = Math.addExact(marketValue[type], other.marketValue[type]);
+                bookValue[type] = Math.addExact(bookValue[type], other.bookValue[type]);
+            }
+            count += other.count;
+            sumOfSquares += other.sumOfSquares;
+            gainers.merge(other.gainers);
+            losers.merge(other.losers);
+            largest.merge(other.largest);
+            return this;
+        }
+    }
+
+    /**
+     * The positions with the largest keys seen, kept in a bounded min-heap of primitive keys and
+     * positions, so offering a position that does not make the list allocates nothing.
+     */
+    private static class TopPositions {
+        private final long[] keys;
+        private final Investment[] positions;
+        private int size;
+
+        TopPositions(int capacity) {
+            keys = new long[Math.max(capacity, 0)];
+            positions = new Investment[keys.length];
+        }
+
+        void offer(long key, Investment position) {
+            if (size < keys.length) {
+                keys[size] = key;
+                positions[size] = position;
+                siftUp(size++);
+            } else if (size > 0 && key > keys[0]) {
+                keys[0] = key;
+                positions[0] = position;
+                siftDown(0);
+            }
+        }
+
+        void merge(TopPositions other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.keys[i], other.positions[i]);
+            }
+        }
+
+        /**
+         * @return Detached copies of the positions, largest key first.
+         */
+        List<Investment> investments() {
+            Investment[] sorted = new Investment[size];
+            while (size > 0) {
+                // Removing the smallest key each time fills the list from the end
+                sorted[size - 1] = positions[0];
+                size--;
+                keys[0] = keys[size];
+                positions[0] = positions[size];
+                positions[size] = null;
+                siftDown(0);
+            }
+            List<Investment> investments = new ArrayList<>(sorted.length);
+            for (Investment position : sorted) {
+                investments.add(PortfolioCommand.detach(position));
+            }
+            return Collections.unmodifiableList(investments);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= keys[i]) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && keys[left] < keys[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && keys[right] < keys[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            Investment position = positions[a];
+            positions[a] = positions[b];
+            positions[b] = position;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package quoc_a3.ePortfolio;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class runs the ePortfolio application without a window, for scripted processing on servers.
+ * It loads a portfolio the same way the GUI does, runs the commands of a script against it one line
+ * at a time, and writes one result line per command to standard output as soon as it has run. The
+ * changes are journaled and saved the same way as when the GUI quits, unless --dry-run is given.
+ *
+ * Nothing here refers to Swing or AWT, so their classes are never loaded and the JVM starts quickly.
+ * The commands run on the main thread through the same {@link PortfolioCommand} classes as the GUI.
+ *
+ * Each script line is a command followed by its fields, separated by commas; a field may be quoted
+ * with double quotes to hold a comma. Blank lines and lines starting with # are skipped.
+ * <pre>
+ * buy,stock,AAPL,Apple Inc.,500,142.23
+ * sell,AAPL,100[,fifo|average]
+ * update,AAPL,150.10
+ * search,[symbol],[keywords],[low price],[high price]
+ * getgain
+ * </pre>
+ */
+public final class PortfolioBatch {
+
+    /** Exit status when every command ran. */
+    private static final int OK = 0;
+
+    /** Exit status when at least one command failed. */
+    private static final int FAILED = 1;
+
+    /** Exit status when the arguments were wrong or the portfolio could not be loaded or saved. */
+    private static final int ERROR = 2;
+
+    private static final String USAGE = "Usage: java -cp eportfolio.jar quoc_a3.ePortfolio.PortfolioBatch"
+            + " [--dry-run] data_filename script_filename|-";
+
+    private final Holdings holdings;
+    private final Writer out;
+    private int failures;
+
+    private PortfolioBatch(Holdings holdings, Writer out) {
+        this.holdings = holdings;
+        this.out = out;
+    }
+
+    /**
+     * The entry point for batch mode.
+     *
+     * @param args An optional --dry-run flag, the portfolio data file, and the script file, or - to
+     *             read the script from standard input.
+     */
+    public static void main(String[] args) {
+        boolean dryRun = args.length == 3 && args[0].equals("--dry-run");
+        if (args.length != (dryRun ? 3 : 2)) {
+            System.err.println(USAGE);
+            System.exit(ERROR);
+        }
+        Path file = Paths.get(args[dryRun ? 1 : 0]);
+        String script = args[dryRun ? 2 : 1];
+
+        // Standard output is buffered here and flushed after each command, rather than after each line
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out),
+                StandardCharsets.UTF_8), 1 << 16);
+        int status;
+        try {
+            status = run(file, script, dryRun, out);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = ERROR;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Loads the portfolio, runs every command of the script, and saves the portfolio.
+     *
+     * @return The exit status.
+     */
+    private static int run(Path file, String script, boolean dryRun, Writer out) throws IOException {
+        // Load the latest snapshot if one exists, otherwise the data file, then replay the journal
+        Holdings holdings = new Holdings();
+        PortfolioLoader.Listener listener = new PortfolioLoader.Listener() {
+            @Override
+            public void loaded(long line, Investment investment) {
+                try {
+                    holdings.add(investment);
+                } catch (IllegalArgumentException e) {
+                    skipped(line, investment.getSymbol() + ": " + e.getMessage());
+                }
+            }
+
+            @Override
+            public void skipped(long line, String reason) {
+                System.err.println(file + ": skipped record" + (line > 0 ? " at line " + line : "") + ": " + reason);
+            }
+
+            @Override
+            public void progress(long bytesRead, long totalBytes) {
+            }
+        };
+        long sequence = 0;
+        if (TransactionJournal.hasSnapshot(file)) {
+            sequence = TransactionJournal.readSnapshot(file, holdings, listener);
+        } else {
+            PortfolioLoader.load(file, listener);
+        }
+        TransactionJournal.Recovery recovery = TransactionJournal.replay(file, holdings, sequence);
+        if (dryRun) {
+            return new PortfolioBatch(holdings, out).runScript(script);
+        }
+
+        // Journal every change, as the GUI does, so a crash part way through the script loses nothing
+        TransactionJournal journal = TransactionJournal.open(file, holdings, recovery);
+        PriceHistory history = PriceHistory.open(file);
+        holdings.setHistory(history);
+        try {
+            return new PortfolioBatch(holdings, out).runScript(script);
+        } finally {
+            // Save a final snapshot so the next start does not need to replay the journal
+            journal.snapshot();
+            journal.close();
+            history.close();
+        }
+    }
+
+    /**
+     * Runs every command of a script, writing each result as soon as the command has run.
+     *
+     * @return The exit status.
+     */
+    private int runScript(String script) throws IOException {
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    execute(split(line));
+                } catch (NumberFormatException e) {
+                    fail(lineNumber, "Quantity and price must be valid numbers.");
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    fail(lineNumber, e.getMessage());
+                }
+                out.flush();
+            }
+        }
+        return failures == 0 ? OK : FAILED;
+    }
+
+    /**
+     * Runs one command against the holdings and writes its result.
+     *
+     * @param fields The command's name followed by its fields.
+     */
+    private void execute(List<String> fields) throws IOException {
+        String name = fields.get(0).toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "buy": {
+                expect(fields, 6, 6, "buy,type,symbol,name,quantity,price");
+                InvestmentType type;
+                try {
+                    type = InvestmentType.of(fields.get(1).toLowerCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Type must be stock or mutualfund.");
+                }
+                if (fields.get(2).isEmpty() || fields.get(3).isEmpty()) {
+                    throw new IllegalArgumentException("All fields must be filled out.");
+                }
+                Investment position = new PortfolioCommand.Buy(type, fields.get(2), fields.get(3),
+                        Integer.parseInt(fields.get(4)), Double.parseDouble(fields.get(5))).execute(holdings);
+                out.write("bought ");
+                writePosition(position);
+                break;
+            }
+            case "sell": {
+                expect(fields, 3, 4, "sell,symbol,quantity[,fifo|average]");
+                TaxLots.Method method = TaxLots.Method.FIFO;
+                if (fields.size() == 4) {
+                    try {
+                        method = TaxLots.Method.valueOf(fields.get(3).toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Method must be fifo or average.");
+                    }
+                }
+                Investment position = new PortfolioCommand.Sell(fields.get(1), Integer.parseInt(fields.get(2)),
+                        method).execute(holdings);
+                out.write("sold ");
+                out.write(fields.get(2));
+                out.write(' ');
+                writePosition(position);
+                break;
+            }
+            case "update": {
+                expect(fields, 3, 3, "update,symbol,price");
+                Investment position = new PortfolioCommand.Update(fields.get(1), Double.parseDouble(fields.get(2)))
+                        .execute(holdings);
+                out.write("updated ");
+                writePosition(position);
+                break;
+            }
+            case "search": {
+                expect(fields, 1, 5, "search,[symbol],[keywords],[low price],[high price]");
+                double low = field(fields, 3).isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(field(fields, 3));
+                double high = field(fields, 4).isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(field(fields, 4));
+                if (low > high) {
+                    throw new IllegalArgumentException("Low price must not be greater than High price.");
+                }
+                List<Investment> matches = new PortfolioCommand.Search(field(fields, 1), field(fields, 2), low, high)
+                        .execute(holdings);
+                out.write("found ");
+                out.write(Integer.toString(matches.size()));
+                out.write('\n');
+                for (Investment match : matches) {
+                    out.write("  ");
+                    writePosition(match);
+                }
+                break;
+            }
+            case "getgain": {
+                expect(fields, 1, 1, "getgain");
+                GainTotals totals = holdings.getTotals();
+                out.write("gain total=");
+                writeAmount(totals.getGainUnits());
+                out.write(" stocks=");
+                writeAmount(totals.getGainUnits(InvestmentType.STOCK));
+                out.write(" mutualfunds=");
+                writeAmount(totals.getGainUnits(InvestmentType.MUTUAL_FUND));
+                out.write(" realized=");
+                writeAmount(totals.getRealizedGainUnits());
+                out.write(" marketValue=");
+                writeAmount(Money.of(totals.getMarketValue()));
+                out.write(" bookValue=");
+                writeAmount(Money.of(totals.getBookValue()));
+                out.write(" held=");
+                out.write(Integer.toString(totals.getCount()));
+                out.write('\n');
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command: " + fields.get(0));
+        }
+    }
+
+    /**
+     * Writes a failed command's line number and message, and counts the failure.
+     */
+    private void fail(long lineNumber, String message) throws IOException {
+        failures++;
+        out.write("error at line ");
+        out.write(Long.toString(lineNumber));
+        out.write(": ");
+        out.write(message);
+        out.write('\n');
+    }
+
+    /**
+     * Checks that a command has between min and max fields, counting its name.
+     */
+    private static void expect(List<String> fields, int min, int max, String usage) {
+        if (fields.size() < min || fields.size() > max) {
+            throw new IllegalArgumentException("Expected " + usage);
+        }
+    }
+
+    /**
+     * @return The field at an index, or an empty string if the line has fewer fields.
+     */
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : "";
+    }
+
+    /**
+     * Writes a position on one line. Results are written piece by piece rather than built with
+     * String.format or string concatenation, which take tens of milliseconds to set up the first time.
+     */
+    private void writePosition(Investment investment) throws IOException {
+        out.write(investment.getType());
+        out.write(' ');
+        out.write(investment.getSymbol());
+        out.write(" \"");
+        out.write(investment.getName());
+        out.write("\" quantity=");
+        out.write(Integer.toString(investment.getQuantity()));
+        out.write(" price=");
+        writeAmount(investment.getPriceUnits());
+        out.write(" bookValue=");
+        writeAmount(investment.getBookValueUnits());
+        out.write('\n');
+    }
+
+    /**
+     * Writes an amount in {@link Money} units with two decimal places, rounding half cents away from zero.
+     */
+    private void writeAmount(long units) throws IOException {
+        long cents = (Math.abs(units) + 50) / 100;
+        if (units < 0 && cents != 0) {
+            out.write('-');
+        }
+        out.write(Long.toString(cents / 100));
+        out.write(cents % 100 < 10 ? ".0" : ".");
+        out.write(Long.toString(cents % 100));
+    }
+
+    /**
+     * Splits a script line into trimmed fields separated by commas. A field in double quotes may hold
+     * commas, and two double quotes inside it stand for one.
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.toString().trim().isEmpty()) {
+                field.setLength(0);
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field.");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
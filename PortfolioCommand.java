@@ -0,0 +1,262 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A request to read or change the portfolio. Commands are immutable, so they can be created on the
+ * event dispatch thread and executed by the {@link PortfolioExecutor} on its worker thread. Results
+ * are detached copies of the investments, so they can be read safely after the worker moves on.
+ *
+ * @param <T> The type of the command's result.
+ */
+public interface PortfolioCommand<T> {
+
+    /**
+     * Runs the command against the holdings. This is only ever called on the portfolio worker thread.
+     *
+     * @param holdings The portfolio's holdings.
+     * @return The result of the command.
+     * @throws IllegalArgumentException If the command can not be carried out, with a message for the user.
+     */
+    T execute(Holdings holdings);
+
+    /**
+     * Copies an investment, so that the copy can be read on another thread.
+     *
+     * @param investment The investment to copy.
+     * @return A copy that is not linked to any holdings.
+     */
+    static Investment detach(Investment investment) {
+        return new Investment(investment.getInvestmentType(), investment.getSymbolId(), investment.getName(),
+                investment.getQuantity(), investment.getPriceUnits(), investment.getBookValueUnits());
+    }
+
+    /**
+     * Buys an investment, merging it into the position if the symbol is already held.
+     */
+    final class Buy implements PortfolioCommand<Investment> {
+        private final InvestmentType type;
+        private final String symbol;
+        private final String name;
+        private final int quantity;
+        private final double price;
+
+        public Buy(InvestmentType type, String symbol, String name, int quantity, double price) {
+            this.type = type;
+            this.symbol = symbol;
+            this.name = name;
+            this.quantity = quantity;
+            this.price = price;
+        }
+
+        @Override
+        public Investment execute(Holdings holdings) {
+            return detach(holdings.buy(type, symbol, name, quantity, price));
+        }
+    }
+
+    /**
+     * Sells part or all of a position, choosing the units sold from its lots by the given method.
+     */
+    final class Sell implements PortfolioCommand<Investment> {
+        private final String symbol;
+        private final int quantity;
+        private final TaxLots.Method method;
+
+        public Sell(String symbol, int quantity) {
+            this(symbol, quantity, TaxLots.Method.FIFO);
+        }
+
+        public Sell(String symbol, int quantity, TaxLots.Method method) {
+            this.symbol = symbol;
+            this.quantity = quantity;
+            this.method = method;
+        }
+
+        @Override
+        public Investment execute(Holdings holdings) {
+            return detach(holdings.sell(symbol, quantity, method));
+        }
+    }
+
+    /**
+     * Updates the price of a position.
+     */
+    final class Update implements PortfolioCommand<Investment> {
+        private final String symbol;
+        private final double price;
+
+        public Update(String symbol, double price) {
+            this.symbol = symbol;
+            this.price = price;
+        }
+
+        @Override
+        public Investment execute(Holdings holdings) {
+            return detach(holdings.updatePrice(symbol, price));
+        }
+    }
+
+    /**
+     * Finds the positions matching a symbol, name keywords, and a price range. An empty symbol or
+     * keyword string matches every position.
+     */
+    final class Search implements PortfolioCommand<List<Investment>> {
+        private final String symbol;
+        private final String keywords;
+        private final double low;
+        private final double high;
+
+        public Search(String symbol, String keywords, double low, double high) {
+            this.symbol = symbol;
+            this.keywords = keywords;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public List<Investment> execute(Holdings holdings) {
+            List<Investment> results = new ArrayList<>();
+            if (!symbol.isEmpty()) {
+                // A symbol identifies at most one position, so check it against the other criteria directly
+                Investment investment = holdings.find(symbol);
+                if (investment != null && investment.getPrice() >= low && investment.getPrice() <= high
+                        && SearchIndex.nameMatches(investment.getName(), keywords)) {
+                    results.add(detach(investment));
+                }
+            } else {
+                // Otherwise use the keyword and price indexes
+                for (Investment investment : holdings.search(keywords, low, high)) {
+                    results.add(detach(investment));
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Reads the next page of a search.
+     */
+    final class SearchPage implements PortfolioCommand<PortfolioSearch.Page> {
+        private final PortfolioSearch search;
+        private final PortfolioSearch.Cursor after;
+        private final int limit;
+
+        public SearchPage(PortfolioSearch search, PortfolioSearch.Cursor after, int limit) {
+            this.search = search;
+            this.after = after;
+            this.limit = limit;
+        }
+
+        @Override
+        public PortfolioSearch.Page execute(Holdings holdings) {
+            return search.page(holdings, after, limit);
+        }
+    }
+
+    /**
+     * Copies the latest live prices from a price feed into the held investments, as one batch.
+     */
+    final class ApplyQuotes implements PortfolioCommand<QuoteCoalescer.Batch> {
+        private final PriceFeed feed;
+
+        public ApplyQuotes(PriceFeed feed) {
+            this.feed = feed;
+        }
+
+        @Override
+        public QuoteCoalescer.Batch execute(Holdings holdings) {
+            int applied = feed.applyTo(holdings);
+            return new QuoteCoalescer.Batch(applied, feed.getPublished(), feed.getCoalesced(), holdings.getTotals().copy());
+        }
+    }
+
+    /**
+     * Adds the rows of an imported CSV file to the holdings.
+     */
+    final class Import implements PortfolioCommand<PortfolioCsv.Import> {
+        private final PortfolioCsv.Import rows;
+
+        public Import(PortfolioCsv.Import rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public PortfolioCsv.Import execute(Holdings holdings) {
+            return rows.applyTo(holdings);
+        }
+    }
+
+    /**
+     * Adds an alert rule for a symbol.
+     */
+    final class AddAlert implements PortfolioCommand<PriceAlerts.Rule> {
+        private final String symbol;
+        private final PriceAlerts.Condition condition;
+        private final double threshold;
+
+        public AddAlert(String symbol, PriceAlerts.Condition condition, double threshold) {
+            this.symbol = symbol;
+            this.condition = condition;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public PriceAlerts.Rule execute(Holdings holdings) {
+            return alerts(holdings).add(symbol, condition, threshold);
+        }
+    }
+
+    /**
+     * Removes an alert rule, answering whether it existed.
+     */
+    final class RemoveAlert implements PortfolioCommand<Boolean> {
+        private final long id;
+
+        public RemoveAlert(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public Boolean execute(Holdings holdings) {
+            return alerts(holdings).remove(id);
+        }
+    }
+
+    /**
+     * @return The alerts checked against the holdings.
+     * @throws IllegalArgumentException If no alerts are checked.
+     */
+    private static PriceAlerts alerts(Holdings holdings) {
+        PriceAlerts alerts = holdings.getAlerts();
+        if (alerts == null) {
+            throw new IllegalArgumentException("Alerts are not being checked.");
+        }
+        return alerts;
+    }
+
+    /**
+     * Reads the prices recorded for a symbol within a time range.
+     */
+    final class History implements PortfolioCommand<PriceHistory.Ticks> {
+        private final String symbol;
+        private final long from;
+        private final long to;
+
+        public History(String symbol, long from, long to) {
+            this.symbol = symbol;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public PriceHistory.Ticks execute(Holdings holdings) {
+            PriceHistory history = holdings.getHistory();
+            if (history == null) {
+                throw new IllegalArgumentException("Price history is not being recorded.");
+            }
+            return history.query(symbol, from, to);
+        }
+    }
+}
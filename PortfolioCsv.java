@@ -0,0 +1,748 @@
+package quoc_a3.ePortfolio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class imports and exports portfolios as CSV files, one investment per line:
+ * <pre>
+ * type,symbol,name,quantity,price,bookValue
+ * stock,AAPL,Apple Inc.,500,142.23,67405.85
+ * mutualfund,VFIAX,"Vanguard 500 Index Fund, Admiral",12,412.5,
+ * </pre>
+ * The header may list the columns in any order and may include columns that are ignored. Without a
+ * header the columns are read in the order above. The bookValue column is optional and defaults to
+ * price * quantity. Fields that contain commas or quotes are quoted, with quotes inside doubled; a
+ * field can not contain a line break.
+ *
+ * Large files are imported in parallel. The file is split into ranges of about {@value #RANGE_SIZE}
+ * bytes, and each range is memory-mapped and parsed on a fork/join pool. A range owns the lines that
+ * start inside it, so no line is parsed twice or cut in half. Quantities and amounts are parsed
+ * straight from the mapped bytes into exact {@link Money} units, so only the symbol and name of each
+ * row become Strings. Rows are then added to the holdings in file order, on the thread that owns them,
+ * where rows for the same symbol merge into one position as its purchase lots.
+ *
+ * Exports are written from a {@link PortfolioSnapshot} through a small buffer, so the output is never
+ * held in memory and trading continues while a large portfolio is written.
+ */
+public final class PortfolioCsv {
+
+    /** The header written by exports, and the column order assumed for files without a header. */
+    public static final String HEADER = "type,symbol,name,quantity,price,bookValue";
+
+    /** Number of bytes parsed by each import task. */
+    private static final long RANGE_SIZE = 8L << 20;
+
+    /** The longest line that can be imported. */
+    private static final int MAX_LINE = 1 << 20;
+
+    /** Number of error messages kept for the user; the rest are only counted. */
+    private static final int MAX_ERRORS = 100;
+
+    // Columns an import understands
+    private static final int TYPE = 0;
+    private static final int SYMBOL = 1;
+    private static final int NAME = 2;
+    private static final int QUANTITY = 3;
+    private static final int PRICE = 4;
+    private static final int BOOK_VALUE = 5;
+    private static final int IGNORED = -1;
+    private static final String[] COLUMNS = {"type", "symbol", "name", "quantity", "price", "bookValue"};
+
+    /** Returned by the number parsers for anything that is not a valid number. */
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private PortfolioCsv() {
+    }
+
+    /**
+     * The rows read from a CSV file, ready to be added to the holdings.
+     */
+    public static class Import {
+        private final List<Range> ranges;
+        private final List<String> errors = new ArrayList<>();
+        private long rowCount;
+        private long skippedCount;
+        private long addedCount;
+
+        private Import(List<Range> ranges, long firstLine) {
+            this.ranges = ranges;
+            long line = firstLine;
+            for (Range range : ranges) {
+                rowCount += range.rows.size();
+                for (int i = 0; i < range.errorLines.size(); i++) {
+                    error("Line " + (line + range.errorLines.get(i)) + ": " + range.errorReasons.get(i));
+                }
+                skippedCount += range.errorCount - range.errorLines.size();
+                line += range.lines;
+            }
+        }
+
+        /**
+         * Adds every valid row to the holdings, in file order. Rows for a symbol already held merge
+         * into its position; a row whose symbol is held as the other type is skipped. The prices of
+         * imported rows are not recorded in the price history, since they are not quotes seen at the
+         * time of the import. If the holdings have a journal, a snapshot is taken afterwards instead of
+         * journaling every row. Only called on the thread that changes the holdings.
+         *
+         * @param holdings The holdings to add the rows to.
+         * @return This import, with the number of rows added.
+         */
+        public Import applyTo(Holdings holdings) {
+            PriceHistory history = holdings.getHistory();
+            holdings.setHistory(null);
+            try {
+                for (Range range : ranges) {
+                    for (Investment investment : range.rows) {
+                        try {
+                            holdings.add(investment);
+                            addedCount++;
+                        } catch (IllegalArgumentException e) {
+                            error(investment.getSymbol() + ": " + e.getMessage());
+                        }
+                    }
+                    range.rows.clear();
+                }
+            } finally {
+                holdings.setHistory(history);
+            }
+            holdings.checkpoint();
+            return this;
+        }
+
+        /**
+         * @return The number of valid rows read.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return The number of rows added to the holdings by applyTo.
+         */
+        public long getAddedCount() {
+            return addedCount;
+        }
+
+        /**
+         * @return The number of rows skipped because they were invalid or could not be added.
+         */
+        public long getSkippedCount() {
+            return skippedCount;
+        }
+
+        /**
+         * @return Why the first skipped rows were skipped.
+         */
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        private void error(String message) {
+            skippedCount++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(message);
+            }
+        }
+    }
+
+    /**
+     * Reads a CSV file in parallel on the common fork/join pool. The holdings are not changed until
+     * the import is applied.
+     *
+     * @param file The file to read.
+     * @return The rows read.
+     * @throws IOException If the file can not be read, has a header without the needed columns, or has a line that is too long.
+     */
+    public static Import read(Path file) throws IOException {
+        return read(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads a CSV file in parallel on the given pool.
+     *
+     * @param file The file to read.
+     * @param pool The pool that parses the ranges of the file.
+     * @return The rows read.
+     * @throws IOException If the file can not be read, has a header without the needed columns, or has a line that is too long.
+     */
+    public static Import read(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            // Read the columns from the header, if the first line is one
+            int[] columns = {TYPE, SYMBOL, NAME, QUANTITY, PRICE, BOOK_VALUE};
+            long dataStart = 0;
+            if (size > 0) {
+                MappedByteBuffer first = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_LINE));
+                int lineEnd = 0;
+                while (lineEnd < first.limit() && first.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int[] header = readHeader(first, 0, lineEnd);
+                if (header != null) {
+                    columns = header;
+                    dataStart = Math.min(size, lineEnd + 1L);
+                }
+            }
+
+            // Split the rest into ranges and parse them all in parallel
+            List<Range> ranges = new ArrayList<>();
+            for (long start = dataStart; start < size; start += RANGE_SIZE) {
+                ranges.add(new Range(start, Math.min(size, start + RANGE_SIZE), start == dataStart));
+            }
+            ParseTask task = new ParseTask(channel, size, columns, ranges, 0, ranges.size());
+            pool.invoke(task);
+            if (task.failure != null) {
+                throw task.failure;
+            }
+            return new Import(ranges, dataStart == 0 ? 1 : 2);
+        }
+    }
+
+    /**
+     * Writes every position of a snapshot to a CSV file, replacing the file only once it is complete.
+     *
+     * @param snapshot The snapshot to write.
+     * @param file The file to write.
+     * @return The number of positions written.
+     * @throws IOException If the file can not be written.
+     */
+    public static long write(PortfolioSnapshot snapshot, Path file) throws IOException {
+        Path temporary = Paths.get(file + ".tmp");
+        long[] written = new long[1];
+        try (CsvWriter out = new CsvWriter(Files.newOutputStream(temporary))) {
+            out.ascii(HEADER).newLine();
+            IOException[] failure = new IOException[1];
+            snapshot.forEach(investment -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    out.ascii(investment.getType()).comma().field(investment.getSymbol()).comma()
+                            .field(investment.getName()).comma().number(investment.getQuantity()).comma()
+                            .units(investment.getPriceUnits()).comma().units(investment.getBookValueUnits()).newLine();
+                    written[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        return written[0];
+    }
+
+    /**
+     * Reads the column names from the first line.
+     *
+     * @return The column each field holds, or null if the line is not a header.
+     * @throws IOException If the line is a header but does not name every needed column.
+     */
+    private static int[] readHeader(MappedByteBuffer buffer, int start, int end) throws IOException {
+        String[] names = new String(bytes(buffer, start, end), StandardCharsets.UTF_8).split(",", -1);
+        int[] columns = new int[names.length];
+        boolean[] found = new boolean[COLUMNS.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim().replace("\"", "");
+            columns[i] = IGNORED;
+            for (int column = 0; column < COLUMNS.length; column++) {
+                if (COLUMNS[column].equalsIgnoreCase(name)) {
+                    columns[i] = column;
+                    found[column] = true;
+                }
+            }
+        }
+        if (!found[SYMBOL]) {
+            return null;
+        }
+        for (int column = TYPE; column <= PRICE; column++) {
+            if (!found[column]) {
+                throw new IOException("The header has no " + COLUMNS[column] + " column.");
+            }
+        }
+        return columns;
+    }
+
+    private static byte[] bytes(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+
+    /**
+     * The part of the file one task parses, and what it found there.
+     */
+    private static class Range {
+        final long start;
+        final long end;
+        final boolean first;
+        final ArrayList<Investment> rows = new ArrayList<>();
+        final ArrayList<Long> errorLines = new ArrayList<>();
+        final ArrayList<String> errorReasons = new ArrayList<>();
+        long errorCount;
+        long lines;
+
+        Range(long start, long end, boolean first) {
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+    }
+
+    /**
+     * Parses a run of ranges, splitting it in half until each task has one range.
+     */
+    private static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final int[] columns;
+        private final List<Range> ranges;
+        private final int from;
+        private final int to;
+        private IOException failure;
+
+        ParseTask(FileChannel channel, long size, int[] columns, List<Range> ranges, int from, int to) {
+            this.channel = channel;
+            this.size = size;
+            this.columns = columns;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                ParseTask left = new ParseTask(channel, size, columns, ranges, from, middle);
+                ParseTask right = new ParseTask(channel, size, columns, ranges, middle, to);
+                invokeAll(left, right);
+                failure = left.failure != null ? left.failure : right.failure;
+                return;
+            }
+            if (to == from) {
+                return;
+            }
+            try {
+                new RangeParser(columns).parse(channel, size, ranges.get(from));
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of one range. Each task has its own parser, so the scratch arrays are never shared.
+     */
+    private static class RangeParser {
+        private final int[] columns;
+        private final int[] fieldStart = new int[COLUMNS.length];
+        private final int[] fieldEnd = new int[COLUMNS.length];
+        private final boolean[] fieldEscaped = new boolean[COLUMNS.length];
+        private byte[] scratch = new byte[256];
+        private String error;
+
+        RangeParser(int[] columns) {
+            this.columns = columns;
+        }
+
+        void parse(FileChannel channel, long size, Range range) throws IOException {
+            // Map one byte before the range, to tell whether the range starts on a new line, and enough
+            // after it to finish the last line that starts inside it
+            long mapStart = range.first ? range.start : range.start - 1;
+            long mapEnd = Math.min(size, range.end + MAX_LINE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int limit = buffer.limit();
+            int position = (int) (range.start - mapStart);
+            int owned = (int) (range.end - mapStart);
+
+            // A line that started in the previous range belongs to it
+            if (!range.first && buffer.get(0) != '\n') {
+                while (position < limit && buffer.get(position) != '\n') {
+                    position++;
+                }
+                position++;
+            }
+
+            while (position < owned) {
+                int lineEnd = position;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == limit && mapEnd < size) {
+                    throw new IOException("A line is longer than " + MAX_LINE + " bytes.");
+                }
+                range.lines++;
+                Investment investment = parseLine(buffer, position, lineEnd);
+                if (investment != null) {
+                    range.rows.add(investment);
+                } else if (error != null) {
+                    range.errorCount++;
+                    if (range.errorLines.size() < MAX_ERRORS) {
+                        range.errorLines.add(range.lines - 1);
+                        range.errorReasons.add(error);
+                    }
+                }
+                position = lineEnd + 1;
+            }
+        }
+
+        /**
+         * Parses one line, checking its fields the same way the Buy form does.
+         *
+         * @return The investment, or null if the line is blank or invalid; error says why it is invalid.
+         */
+        private Investment parseLine(MappedByteBuffer buffer, int start, int end) {
+            error = null;
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            if (trimStart(buffer, start, end) == end) {
+                return null;
+            }
+
+            // Find where each known column's field starts and ends
+            Arrays.fill(fieldStart, -1);
+            int position = start;
+            for (int column = 0; position <= end; column++) {
+                int role = column < columns.length ? columns[column] : IGNORED;
+                int valueStart = position;
+                int valueEnd;
+                boolean escaped = false;
+                if (position < end && buffer.get(position) == '"') {
+                    // A quoted field ends at a quote that is not doubled
+                    valueStart = ++position;
+                    while (true) {
+                        if (position >= end) {
+                            error = "A quoted field is not closed.";
+                            return null;
+                        }
+                        if (buffer.get(position) == '"') {
+                            if (position + 1 < end && buffer.get(position + 1) == '"') {
+                                escaped = true;
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        position++;
+                    }
+                    valueEnd = position++;
+                    while (position < end && buffer.get(position) != ',') {
+                        position++;
+                    }
+                } else {
+                    while (position < end && buffer.get(position) != ',') {
+                        position++;
+                    }
+                    valueEnd = position;
+                }
+                if (role != IGNORED) {
+                    fieldStart[role] = valueStart;
+                    fieldEnd[role] = valueEnd;
+                    fieldEscaped[role] = escaped;
+                }
+                position++;
+            }
+
+            // Check every field before making the investment
+            InvestmentType type = null;
+            if (fieldStart[TYPE] >= 0) {
+                int typeStart = trimStart(buffer, fieldStart[TYPE], fieldEnd[TYPE]);
+                int typeEnd = trimEnd(buffer, typeStart, fieldEnd[TYPE]);
+                for (InvestmentType candidate : InvestmentType.values()) {
+                    if (matches(buffer, typeStart, typeEnd, candidate.getName())) {
+                        type = candidate;
+                    }
+                }
+            }
+            String symbol = text(buffer, SYMBOL);
+            String name = text(buffer, NAME);
+            if (symbol.isEmpty() || name.isEmpty() || empty(buffer, QUANTITY) || empty(buffer, PRICE)) {
+                error = "All of type, symbol, name, quantity, and price must be filled out.";
+                return null;
+            }
+            if (type == null) {
+                error = "Unknown investment type.";
+                return null;
+            }
+            long quantity = parseWholeNumber(buffer, fieldStart[QUANTITY], fieldEnd[QUANTITY]);
+            if (quantity <= 0 || quantity > Integer.MAX_VALUE) {
+                error = "Quantity must be a whole number greater than 0.";
+                return null;
+            }
+            long price = parseUnits(buffer, fieldStart[PRICE], fieldEnd[PRICE]);
+            if (price == INVALID || price < 0) {
+                error = "Price must be a valid number that is not negative.";
+                return null;
+            }
+            long bookValue;
+            if (empty(buffer, BOOK_VALUE)) {
+                if (price > Long.MAX_VALUE / quantity) {
+                    error = "The book value is too large.";
+                    return null;
+                }
+                bookValue = price * quantity;
+            } else {
+                bookValue = parseUnits(buffer, fieldStart[BOOK_VALUE], fieldEnd[BOOK_VALUE]);
+                if (bookValue == INVALID) {
+                    error = "Book value must be a valid number.";
+                    return null;
+                }
+            }
+
+            Investment investment = Investment.of(type, symbol, name, (int) quantity, 0, 0);
+            investment.setPriceUnits(price);
+            investment.setBookValueUnits(bookValue);
+            return investment;
+        }
+
+        private boolean empty(MappedByteBuffer buffer, int role) {
+            return fieldStart[role] < 0 || trimStart(buffer, fieldStart[role], fieldEnd[role]) == fieldEnd[role];
+        }
+
+        /**
+         * Decodes a text field without its surrounding spaces, or returns "" if the line has no such field.
+         */
+        private String text(MappedByteBuffer buffer, int role) {
+            if (fieldStart[role] < 0) {
+                return "";
+            }
+            int start = trimStart(buffer, fieldStart[role], fieldEnd[role]);
+            int end = trimEnd(buffer, start, fieldEnd[role]);
+            int length = end - start;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            String text = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            return fieldEscaped[role] ? text.replace("\"\"", "\"") : text;
+        }
+    }
+
+    /**
+     * Parses a whole number that fits in a long.
+     *
+     * @return The number, or INVALID if the bytes are not one.
+     */
+    private static long parseWholeNumber(MappedByteBuffer buffer, int start, int end) {
+        start = trimStart(buffer, start, end);
+        end = trimEnd(buffer, start, end);
+        if (start == end || end - start > 18) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a plain decimal amount such as -142.23 into Money units without making a String or a
+     * double. Digits past the fourth decimal place round the amount to the nearest unit, as
+     * {@link Money#of(double)} does.
+     *
+     * @return The amount in units, or INVALID if the bytes are not a valid amount.
+     */
+    private static long parseUnits(MappedByteBuffer buffer, int start, int end) {
+        start = trimStart(buffer, start, end);
+        end = trimEnd(buffer, start, end);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        for (; i < end && buffer.get(i) != '.'; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || ++wholeDigits > 14) {
+                return INVALID;
+            }
+            whole = whole * 10 + digit;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            for (i++; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                if (fractionDigits < Money.DECIMALS) {
+                    fraction = fraction * 10 + digit;
+                } else if (fractionDigits == Money.DECIMALS) {
+                    roundUp = digit >= 5;
+                }
+                fractionDigits++;
+            }
+        }
+        if (wholeDigits == 0 && fractionDigits == 0) {
+            return INVALID;
+        }
+        for (int place = Math.min(fractionDigits, Money.DECIMALS); place < Money.DECIMALS; place++) {
+            fraction *= 10;
+        }
+        long units = whole * Money.SCALE + fraction + (roundUp ? 1 : 0);
+        return negative ? -units : units;
+    }
+
+    private static boolean matches(MappedByteBuffer buffer, int start, int end, String keyword) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if ((buffer.get(start + i) | 0x20) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int trimStart(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) == ' ' || buffer.get(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(MappedByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Writes CSV text through a fixed buffer, formatting numbers without making Strings.
+     */
+    private static class CsvWriter implements Closeable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[64 << 10];
+        private int length;
+
+        CsvWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        CsvWriter ascii(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                put((byte) text.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Writes a text field, quoted if it holds a comma, a quote, or surrounding spaces.
+         */
+        CsvWriter field(String text) throws IOException {
+            boolean quote = !text.isEmpty() && (text.charAt(0) == ' ' || text.charAt(text.length() - 1) == ' ');
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            byte[] bytes = (quote ? '"' + text.replace("\r", " ").replace("\n", " ").replace("\"", "\"\"") + '"' : text)
+                    .getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                put(b);
+            }
+            return this;
+        }
+
+        CsvWriter number(long value) throws IOException {
+            if (value < 0) {
+                put((byte) '-');
+                value = -value;
+            }
+            long divisor = 1;
+            while (divisor <= value / 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put((byte) ('0' + value / divisor % 10));
+            }
+            return this;
+        }
+
+        /**
+         * Writes an amount in Money units as a decimal with two to four decimal places.
+         */
+        CsvWriter units(long units) throws IOException {
+            if (units < 0) {
+                put((byte) '-');
+            }
+            long magnitude = Math.abs(units);
+            number(magnitude / Money.SCALE);
+            put((byte) '.');
+            long fraction = magnitude % Money.SCALE;
+            int places = Money.DECIMALS;
+            while (places > 2 && fraction % 10 == 0) {
+                fraction /= 10;
+                places--;
+            }
+            long divisor = 1;
+            for (int place = 1; place < places; place++) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put((byte) ('0' + fraction / divisor % 10));
+            }
+            return this;
+        }
+
+        CsvWriter comma() throws IOException {
+            put((byte) ',');
+            return this;
+        }
+
+        CsvWriter newLine() throws IOException {
+            put((byte) '\n');
+            return this;
+        }
+
+        private void put(byte b) throws IOException {
+            if (length == buffer.length) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            buffer[length++] = b;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.write(buffer, 0, length);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package quoc_a3.ePortfolio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class runs every portfolio command on a single worker thread, which is the only thread that
+ * ever changes the holdings. Callers get a CompletableFuture back instead of waiting, so the
+ * event dispatch thread never blocks on a slow command, and commands are applied one at a time in the
+ * order they were submitted. After each command the holdings publish a new snapshot if it changed them.
+ *
+ * Queries run on reader threads against the latest published {@link PortfolioSnapshot} instead, so a
+ * long report or export never delays the commands queued behind it, and always sees one consistent
+ * version of the portfolio even while commands keep changing it.
+ *
+ * Every command and query is timed into the executor's {@link Metrics}, along with how long commands
+ * wait in the worker's queue and how long publishing their snapshot takes.
+ */
+public class PortfolioExecutor {
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "portfolio-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Threads that run queries against snapshots, started as queries need them. */
+    private final ExecutorService readers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "portfolio-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The holdings, only changed on the worker thread; other threads only read their snapshot. */
+    private volatile Holdings holdings = new Holdings();
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer queueWait = metrics.timer("Worker queue wait");
+    private final Metrics.Timer publish = metrics.timer("Publish snapshot");
+
+    public PortfolioExecutor() {
+        metrics.setPositions(() -> holdings.getSnapshot().size());
+    }
+
+    /**
+     * @return The metrics of the commands and queries run so far, which other parts of the application
+     *         may add their own timers to.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queues a command to run on the worker thread.
+     *
+     * @param command The command to run.
+     * @param <T> The type of the command's result.
+     * @return A future completed with the command's result, or with the exception it threw.
+     */
+    public <T> CompletableFuture<T> submit(PortfolioCommand<T> command) {
+        Metrics.Timer timer = metrics.timer(command.getClass());
+        long submitted = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            queueWait.record(started - submitted, false);
+            boolean failed = true;
+            try {
+                T result = command.execute(holdings);
+                failed = false;
+                return result;
+            } finally {
+                long executed = System.nanoTime();
+                timer.record(executed - started, failed);
+                // Publish whatever the command changed, even if it failed part way
+                holdings.publish();
+                publish.recordSince(executed);
+            }
+        }, worker);
+    }
+
+    /**
+     * Runs a query on a reader thread against the latest published snapshot. Commands still queued
+     * or running when the query starts are not included.
+     *
+     * @param query The query to run.
+     * @param <T> The type of the query's result.
+     * @return A future completed with the query's result, or with the exception it threw.
+     */
+    public <T> CompletableFuture<T> read(PortfolioQuery<T> query) {
+        Metrics.Timer timer = metrics.timer(query.getClass());
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            boolean failed = true;
+            try {
+                T result = query.execute(holdings.getSnapshot());
+                failed = false;
+                return result;
+            } finally {
+                timer.record(System.nanoTime() - started, failed);
+            }
+        }, readers);
+    }
+
+    /**
+     * Replaces the holdings once every command submitted before this call has run. Holdings built on
+     * another thread, such as by the loader, must not be touched by that thread afterwards.
+     *
+     * @param loaded The new holdings.
+     * @return A future completed once the worker is using the new holdings.
+     */
+    public CompletableFuture<Void> replaceHoldings(Holdings loaded) {
+        return CompletableFuture.runAsync(() -> {
+            loaded.publish();
+            holdings = loaded;
+        }, worker);
+    }
+
+    /**
+     * Stops the worker thread once every queued command has run, and the reader threads once every
+     * query has run.
+     */
+    public void shutdown() {
+        worker.shutdown();
+        readers.shutdown();
+    }
+}
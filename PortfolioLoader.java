@@ -0,0 +1,414 @@
+package quoc_a3.ePortfolio;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads investments from a portfolio data file in a single streaming pass.
+ * The file is memory-mapped one window at a time and parsed straight from the mapped bytes, so
+ * no String is made per line; only the symbol and name of each record become Strings.
+ *
+ * Records are blocks of `key = "value"` lines separated by blank lines, for example:
+ * <pre>
+ * type = "stock"
+ * symbol = "AAPL"
+ * name = "Apple Inc."
+ * quantity = "500"
+ * price = "142.23"
+ * bookValue = "67405.85"
+ * </pre>
+ * The bookValue line is optional and defaults to price * quantity.
+ */
+public class PortfolioLoader {
+
+    /**
+     * Receives the results of a load as the file is parsed.
+     */
+    public interface Listener {
+        /**
+         * Called for every valid record, in file order.
+         *
+         * @param line The line number where the record starts, or 0 if it was not read from a text file.
+         * @param investment The investment read from the record.
+         */
+        void loaded(long line, Investment investment);
+
+        /**
+         * Called for every record that could not be read, or that was read but could not be added.
+         *
+         * @param line The line number where the record starts, or 0 if it was not read from a text file.
+         * @param reason Why the record was skipped.
+         */
+        void skipped(long line, String reason);
+
+        /**
+         * Called periodically as the file is read.
+         *
+         * @param bytesRead The number of bytes parsed so far.
+         * @param totalBytes The size of the file.
+         */
+        void progress(long bytesRead, long totalBytes);
+    }
+
+    /** The largest part of the file mapped at once. */
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    /** How many bytes to parse between progress reports. */
+    private static final long PROGRESS_STEP = 1L << 20;
+
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] SYMBOL = ascii("symbol");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] QUANTITY = ascii("quantity");
+    private static final byte[] PRICE = ascii("price");
+    private static final byte[] BOOK_VALUE = ascii("bookValue");
+    private static final byte[] STOCK = ascii("stock");
+    private static final byte[] MUTUAL_FUND = ascii("mutualfund");
+
+    /** Largest mantissa that converts to a double exactly. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Listener listener;
+
+    /** Scratch space for decoding symbols and names. */
+    private byte[] scratch = new byte[256];
+
+    // Fields of the record being parsed
+    private long recordLine;
+    private boolean inRecord;
+    private InvestmentType type;
+    private String symbol;
+    private String name;
+    private long quantity;
+    private double price;
+    private double bookValue;
+    private boolean hasQuantity;
+    private boolean hasPrice;
+    private boolean hasBookValue;
+    private String error;
+
+    private PortfolioLoader(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reads every record of a portfolio data file. A missing file is treated as an empty portfolio.
+     *
+     * @param file The file to read.
+     * @param listener Receives the investments, skipped records, and progress.
+     * @return The number of investments loaded.
+     * @throws IOException If the file can not be read, or contains a line longer than the mapping window.
+     */
+    public static long load(Path file, Listener listener) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        return new PortfolioLoader(listener).read(file);
+    }
+
+    /**
+     * Maps the file window by window and parses every complete line in each window.
+     * A line cut off by the end of a window is parsed again from the start of the next window.
+     */
+    private long read(Path file) throws IOException {
+        long loaded = 0;
+        long lineNumber = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            long nextProgress = 0;
+
+            while (windowStart < size) {
+                long windowLength = Math.min(WINDOW_SIZE, size - windowStart);
+                boolean lastWindow = windowStart + windowLength == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+                int limit = buffer.limit();
+                int lineStart = 0;
+
+                while (lineStart < limit) {
+                    // Find the end of the line
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    if (lineEnd == limit && !lastWindow) {
+                        break;
+                    }
+
+                    lineNumber++;
+                    if (parseLine(buffer, lineStart, lineEnd, lineNumber)) {
+                        loaded++;
+                    }
+                    lineStart = lineEnd + 1;
+
+                    if (windowStart + lineStart >= nextProgress) {
+                        listener.progress(windowStart + lineStart, size);
+                        nextProgress = windowStart + lineStart + PROGRESS_STEP;
+                    }
+                }
+
+                if (lineStart == 0 && !lastWindow) {
+                    throw new IOException("Line " + (lineNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes.");
+                }
+                windowStart += Math.min(lineStart, limit);
+            }
+
+            // The last record does not need a blank line after it
+            if (finishRecord()) {
+                loaded++;
+            }
+            listener.progress(size, size);
+        }
+        return loaded;
+    }
+
+    /**
+     * Parses one line of the file.
+     *
+     * @return True if the line ended a valid record.
+     */
+    private boolean parseLine(MappedByteBuffer buffer, int start, int end, long lineNumber) {
+        start = skipSpaces(buffer, start, end);
+        end = trimEnd(buffer, start, end);
+
+        // A blank line ends the current record
+        if (start == end) {
+            return finishRecord();
+        }
+
+        // A type line always begins a new record, even without a blank line before it
+        boolean finished = false;
+        int keyEnd = start;
+        while (keyEnd < end && buffer.get(keyEnd) != '=' && buffer.get(keyEnd) != ' ' && buffer.get(keyEnd) != '\t') {
+            keyEnd++;
+        }
+        if (matches(buffer, start, keyEnd, TYPE) && inRecord) {
+            finished = finishRecord();
+        }
+        if (!inRecord) {
+            startRecord(lineNumber);
+        }
+
+        // Find the value after the '=' and strip its quotes
+        int equals = keyEnd;
+        while (equals < end && buffer.get(equals) != '=') {
+            equals++;
+        }
+        if (equals == end) {
+            error = "Line " + lineNumber + " is not of the form key = \"value\".";
+            return finished;
+        }
+        int valueStart = skipSpaces(buffer, equals + 1, end);
+        int valueEnd = end;
+        if (valueEnd - valueStart >= 2 && buffer.get(valueStart) == '"' && buffer.get(valueEnd - 1) == '"') {
+            valueStart++;
+            valueEnd--;
+        }
+
+        if (matches(buffer, start, keyEnd, TYPE)) {
+            if (matches(buffer, valueStart, valueEnd, STOCK)) {
+                type = InvestmentType.STOCK;
+            } else if (matches(buffer, valueStart, valueEnd, MUTUAL_FUND)) {
+                type = InvestmentType.MUTUAL_FUND;
+            } else {
+                error = "Line " + lineNumber + " has an unknown type.";
+            }
+        } else if (matches(buffer, start, keyEnd, SYMBOL)) {
+            symbol = decode(buffer, valueStart, valueEnd);
+        } else if (matches(buffer, start, keyEnd, NAME)) {
+            name = decode(buffer, valueStart, valueEnd);
+        } else if (matches(buffer, start, keyEnd, QUANTITY)) {
+            long value = parseWholeNumber(buffer, valueStart, valueEnd);
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                error = "Line " + lineNumber + " has an invalid quantity.";
+            } else {
+                quantity = value;
+                hasQuantity = true;
+            }
+        } else if (matches(buffer, start, keyEnd, PRICE)) {
+            price = parseDecimal(buffer, valueStart, valueEnd);
+            hasPrice = !Double.isNaN(price);
+            if (!hasPrice) {
+                error = "Line " + lineNumber + " has an invalid price.";
+            }
+        } else if (matches(buffer, start, keyEnd, BOOK_VALUE)) {
+            bookValue = parseDecimal(buffer, valueStart, valueEnd);
+            hasBookValue = !Double.isNaN(bookValue);
+            if (!hasBookValue) {
+                error = "Line " + lineNumber + " has an invalid book value.";
+            }
+        }
+        return finished;
+    }
+
+    private void startRecord(long lineNumber) {
+        inRecord = true;
+        recordLine = lineNumber;
+        type = null;
+        symbol = null;
+        name = null;
+        hasQuantity = false;
+        hasPrice = false;
+        hasBookValue = false;
+        error = null;
+    }
+
+    /**
+     * Builds an investment from the fields read since the record started.
+     *
+     * @return True if the record was valid and passed to the listener.
+     */
+    private boolean finishRecord() {
+        if (!inRecord) {
+            return false;
+        }
+        inRecord = false;
+
+        if (error == null && (type == null || symbol == null || symbol.isEmpty() || name == null || name.isEmpty()
+                || !hasQuantity || !hasPrice)) {
+            error = "Record is missing one of type, symbol, name, quantity, or price.";
+        }
+        if (error != null) {
+            listener.skipped(recordLine, error);
+            return false;
+        }
+
+        int count = (int) quantity;
+        double book = hasBookValue ? bookValue : price * count;
+        Investment investment;
+        try {
+            investment = Investment.of(type, symbol, name, count, price, book);
+        } catch (ArithmeticException e) {
+            listener.skipped(recordLine, "Price or book value is too large.");
+            return false;
+        }
+        listener.loaded(recordLine, investment);
+        return true;
+    }
+
+    /**
+     * Parses a non-negative whole number.
+     *
+     * @return The number, or -1 if the bytes are not a valid number.
+     */
+    private static long parseWholeNumber(MappedByteBuffer buffer, int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a plain decimal number such as -142.23 without making a String. Numbers that can not
+     * be converted exactly this way, such as those with exponents or many digits, fall back to
+     * Double.parseDouble.
+     *
+     * @return The number, or NaN if the bytes are not a valid number.
+     */
+    private double parseDecimal(MappedByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+                    return parseSlowly(buffer, start, end);
+                }
+            } else {
+                return parseSlowly(buffer, start, end);
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double parseSlowly(MappedByteBuffer buffer, int start, int end) {
+        try {
+            return Double.parseDouble(decode(buffer, start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes from the buffer into a String.
+     */
+    private String decode(MappedByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares the bytes in the buffer with an ASCII keyword, ignoring case.
+     */
+    private static boolean matches(MappedByteBuffer buffer, int start, int end, byte[] keyword) {
+        if (end - start != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if ((buffer.get(start + i) | 0x20) != (keyword[i] | 0x20)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && (buffer.get(start) == ' ' || buffer.get(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(MappedByteBuffer buffer, int start, int end) {
+        while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\t' || buffer.get(end - 1) == '\r')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
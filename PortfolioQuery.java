@@ -0,0 +1,86 @@
+package quoc_a3.ePortfolio;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A request to read the portfolio without changing it. Queries are run by the {@link PortfolioExecutor}
+ * on a reader thread against an immutable {@link PortfolioSnapshot}, so they never wait for commands
+ * and commands never wait for them. The positions in a snapshot are already detached copies, so
+ * results can hold them directly.
+ *
+ * @param <T> The type of the query's result.
+ */
+public interface PortfolioQuery<T> {
+
+    /**
+     * Runs the query against a snapshot. This may be called on any thread.
+     *
+     * @param snapshot The version of the portfolio to read.
+     * @return The result of the query.
+     * @throws IllegalArgumentException If the query can not be answered, with a message for the user.
+     */
+    T execute(PortfolioSnapshot snapshot);
+
+    /**
+     * Reads the portfolio's gain totals.
+     */
+    final class GetGain implements PortfolioQuery<GainTotals> {
+        @Override
+        public GainTotals execute(PortfolioSnapshot snapshot) {
+            return snapshot.getTotals();
+        }
+    }
+
+    /**
+     * Recomputes the portfolio analytics from every position.
+     */
+    final class Analyze implements PortfolioQuery<PortfolioAnalytics.Report> {
+        private final int top;
+
+        public Analyze(int top) {
+            this.top = top;
+        }
+
+        @Override
+        public PortfolioAnalytics.Report execute(PortfolioSnapshot snapshot) {
+            return PortfolioAnalytics.analyze(snapshot, top);
+        }
+    }
+
+    /**
+     * Lists every position, sorted by symbol.
+     */
+    final class Positions implements PortfolioQuery<List<Investment>> {
+        @Override
+        public List<Investment> execute(PortfolioSnapshot snapshot) {
+            List<Investment> positions = new ArrayList<>(snapshot.size());
+            snapshot.forEach(positions::add);
+            positions.sort(Comparator.comparing(Investment::getSymbol));
+            return positions;
+        }
+    }
+
+    /**
+     * Writes every position to a CSV file.
+     */
+    final class Export implements PortfolioQuery<Long> {
+        private final Path file;
+
+        public Export(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public Long execute(PortfolioSnapshot snapshot) {
+            try {
+                return PortfolioCsv.write(snapshot, file);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not export to " + file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
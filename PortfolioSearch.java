@@ -0,0 +1,221 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class is a search of the portfolio that is read one page at a time, so the first matches can be
+ * shown as soon as they are found however many investments match. Each page is read on the worker
+ * thread by a {@link PortfolioCommand.SearchPage} command, which walks the indexes lazily from where the
+ * last page stopped and detaches only the investments of that page.
+ *
+ * With a symbol, the search is a type-ahead search: first every symbol that starts with it, then every
+ * other symbol within one or two typing mistakes of it, each in symbol order, read from the holdings'
+ * {@link SymbolTrie}. Without a symbol, the keywords are matched in symbol id order through the keyword
+ * index, or, without keywords either, the price range is read from the price index in price order. The
+ * name keywords and the price range always narrow the matches.
+ *
+ * Pages are read against the portfolio as it is when each page is read, so an investment that changes
+ * between two pages may be shown twice or not at all.
+ */
+public final class PortfolioSearch {
+
+    /** Number of matches in a page, about a screenful or two. */
+    public static final int PAGE_SIZE = 100;
+
+    /** Most investments looked at for one page, so a page with few matches still comes back quickly. */
+    private static final int SCAN_LIMIT = 10_000;
+
+    /** Where a page's matches come from, in the order they are read. */
+    private static final int PREFIX = 0;
+    private static final int SIMILAR = 1;
+    private static final int KEYWORDS = 2;
+    private static final int PRICES = 3;
+
+    private final String symbol;
+    private final String keywords;
+    private final String[] words;
+    private final double low;
+    private final double high;
+
+    /**
+     * @param symbol The start of the symbol, in any letter case; empty to search by keywords and price alone.
+     * @param keywords The words to match in the name; empty to match every name.
+     * @param low The lowest price to match, inclusive.
+     * @param high The highest price to match, inclusive.
+     */
+    public PortfolioSearch(String symbol, String keywords, double low, double high) {
+        this.symbol = Holdings.normalize(symbol);
+        this.keywords = keywords;
+        this.words = SearchIndex.tokenize(keywords);
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * @return The start of the symbol searched for, normalized; empty if the search is by keywords and price alone.
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Reads the next page of matches. Only called on the thread that changes the holdings.
+     *
+     * @param holdings The holdings to search.
+     * @param after Where the previous page stopped, or null for the first page.
+     * @param limit The most matches to return.
+     * @return The page.
+     */
+    Page page(Holdings holdings, Cursor after, int limit) {
+        Reader reader = new Reader(holdings, limit);
+        if (!symbol.isEmpty()) {
+            // Symbols that start with the query, then similar symbols that do not
+            if ((after == null || after.source == PREFIX)
+                    && !reader.read(PREFIX, holdings.getSymbols().prefix(symbol, after == null ? null : after.key))) {
+                return reader.page();
+            }
+            int maxEdits = symbol.length() <= 2 ? 0 : symbol.length() <= 5 ? 1 : 2;
+            if (maxEdits > 0) {
+                reader.read(SIMILAR, holdings.getSymbols().fuzzy(symbol, maxEdits,
+                        after != null && after.source == SIMILAR ? after.key : null));
+            }
+        } else if (words.length > 0) {
+            reader.read(KEYWORDS, holdings.getSearchIndex().keywordMatches(words, after == null ? -1 : after.symbolId));
+        } else {
+            reader.read(PRICES, holdings.getSearchIndex().priceMatches(low, high, after == null ? 0 : after.price,
+                    after == null ? -1 : after.symbolId));
+        }
+        return reader.page();
+    }
+
+    /**
+     * Collects one page of matches from the indexes, remembering where it stopped.
+     */
+    private final class Reader {
+        private final Holdings holdings;
+        private final int limit;
+        private final List<Investment> matches = new ArrayList<>();
+        private int similar;
+        private int scanned;
+
+        /** The source read last and the last investment looked at there, or -1 before any. */
+        private int source = -1;
+        private int symbolId = -1;
+        private double price;
+
+        /** Whether reading stopped before the last source ran out. */
+        private boolean stopped;
+
+        private Reader(Holdings holdings, int limit) {
+            this.holdings = holdings;
+            this.limit = limit;
+        }
+
+        /**
+         * Reads symbol ids from one source, keeping the investments that match the keywords and price.
+         *
+         * @return True if the source ran out, false if the page is full or the scan limit was reached.
+         */
+        private boolean read(int source, PrimitiveIterator.OfInt ids) {
+            this.source = source;
+            symbolId = -1;
+            while (ids.hasNext()) {
+                if (matches.size() == limit || scanned == SCAN_LIMIT) {
+                    stopped = true;
+                    return false;
+                }
+                symbolId = ids.nextInt();
+                Investment investment = holdings.find(symbolId);
+                price = investment.getPrice();
+                scanned++;
+
+                // Similar symbols exclude those that start with the query, which were read already
+                if (source == SIMILAR && SymbolTable.key(symbolId).startsWith(symbol)) {
+                    continue;
+                }
+                if (investment.getPrice() >= low && investment.getPrice() <= high
+                        && (words.length == 0 || source == KEYWORDS || SearchIndex.nameMatches(investment.getName(), keywords))) {
+                    matches.add(PortfolioCommand.detach(investment));
+                    if (source == SIMILAR) {
+                        similar++;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private Page page() {
+            if (!stopped) {
+                return new Page(matches, similar, null);
+            }
+            // A source stopped before any of it was read starts from its beginning next time
+            String key = symbolId < 0 ? null : SymbolTable.key(symbolId);
+            return new Page(matches, similar, new Cursor(source, key, symbolId, price));
+        }
+    }
+
+    /**
+     * One page of matches, and where the next page starts.
+     */
+    public static final class Page {
+        private final List<Investment> matches;
+        private final int similar;
+        private final Cursor next;
+
+        private Page(List<Investment> matches, int similar, Cursor next) {
+            this.matches = Collections.unmodifiableList(matches);
+            this.similar = similar;
+            this.next = next;
+        }
+
+        /**
+         * @return The matches of the page, as detached copies; fewer than a full page if the search
+         *         stopped early to stay quick, in which case more pages may still follow.
+         */
+        public List<Investment> getMatches() {
+            return matches;
+        }
+
+        /**
+         * @return The number of matches on the page whose symbol is similar to the symbol searched
+         *         for, rather than starting with it.
+         */
+        public int getSimilar() {
+            return similar;
+        }
+
+        /**
+         * @return True if there may be more matches after this page.
+         */
+        public boolean hasMore() {
+            return next != null;
+        }
+
+        /**
+         * @return Where the next page starts, or null if this was the last page.
+         */
+        public Cursor getNext() {
+            return next;
+        }
+    }
+
+    /**
+     * Where a search stopped: the source it was reading and the last investment it looked at there.
+     */
+    public static final class Cursor {
+        private final int source;
+        private final String key;
+        private final int symbolId;
+        private final double price;
+
+        private Cursor(int source, String key, int symbolId, double price) {
+            this.source = source;
+            this.key = key;
+            this.symbolId = symbolId;
+            this.price = price;
+        }
+    }
+}
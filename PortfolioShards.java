@@ -0,0 +1,293 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class runs the portfolios of many accounts at once, partitioned into shards that each run on
+ * their own worker thread, so commands for accounts on different shards run in parallel and throughput
+ * grows with the number of cores. Each account belongs to the one shard chosen by the hash of its name,
+ * and each shard owns the {@link Holdings} of its accounts: only the shard's thread ever changes them,
+ * so, exactly as on a {@link PortfolioExecutor}, the commands of one account run one at a time in the
+ * order they were submitted, without locks.
+ *
+ * Queries, and reports across accounts, run on reader threads against the snapshot each account last
+ * published, so they never wait for the shards. A report across accounts reads every account's latest
+ * snapshot at about the same time; each account's part is consistent, but commands of other accounts
+ * may run while the report is read.
+ */
+public class PortfolioShards {
+
+    private final Shard[] shards;
+
+    /** Threads that run queries against snapshots, started as queries need them. */
+    private final ExecutorService readers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "portfolio-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Timer queueWait = metrics.timer("Shard queue wait");
+    private final Metrics.Timer publish = metrics.timer("Publish snapshot");
+
+    /**
+     * Creates one shard per available processor.
+     */
+    public PortfolioShards() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shardCount The number of shards, each with its own worker thread.
+     * @throws IllegalArgumentException If the count is not positive.
+     */
+    public PortfolioShards(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        metrics.setPositions(() -> {
+            int positions = 0;
+            for (Shard shard : shards) {
+                for (Holdings holdings : shard.accounts.values()) {
+                    positions += holdings.getSnapshot().size();
+                }
+            }
+            return positions;
+        });
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return The metrics of the commands and queries run so far, across every shard.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queues a command to run against an account on the account's shard. An account that has not been
+     * seen before starts with empty holdings.
+     *
+     * @param account The name of the account.
+     * @param command The command to run.
+     * @param <T> The type of the command's result.
+     * @return A future completed with the command's result, or with the exception it threw.
+     * @throws IllegalArgumentException If the account name is empty.
+     */
+    public <T> CompletableFuture<T> submit(String account, PortfolioCommand<T> command) {
+        return shardOf(account).submit(account, command);
+    }
+
+    /**
+     * Runs a query on a reader thread against an account's latest published snapshot. Commands still
+     * queued or running when the query starts are not included.
+     *
+     * @param account The name of the account; an account that has not been seen reads as empty.
+     * @param query The query to run.
+     * @param <T> The type of the query's result.
+     * @return A future completed with the query's result, or with the exception it threw.
+     * @throws IllegalArgumentException If the account name is empty.
+     */
+    public <T> CompletableFuture<T> read(String account, PortfolioQuery<T> query) {
+        Shard shard = shardOf(account);
+        Metrics.Timer timer = metrics.timer(query.getClass());
+        return CompletableFuture.supplyAsync(() -> {
+            long started = System.nanoTime();
+            boolean failed = true;
+            try {
+                Holdings holdings = shard.accounts.get(account);
+                T result = query.execute(holdings == null ? PortfolioSnapshot.EMPTY : holdings.getSnapshot());
+                failed = false;
+                return result;
+            } finally {
+                timer.record(System.nanoTime() - started, failed);
+            }
+        }, readers);
+    }
+
+    /**
+     * Runs a query against every account's latest published snapshot, reading the shards in parallel.
+     *
+     * @param query The query to run.
+     * @param <T> The type of the query's result.
+     * @return A future completed with each account's result, sorted by account name, or with the first
+     *         exception the query threw.
+     */
+    public <T> CompletableFuture<SortedMap<String, T>> readAll(PortfolioQuery<T> query) {
+        Metrics.Timer timer = metrics.timer(query.getClass());
+        List<CompletableFuture<Map<String, T>>> parts = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                Map<String, T> results = new TreeMap<>();
+                for (Map.Entry<String, Holdings> account : shard.accounts.entrySet()) {
+                    long started = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        results.put(account.getKey(), query.execute(account.getValue().getSnapshot()));
+                        failed = false;
+                    } finally {
+                        timer.record(System.nanoTime() - started, failed);
+                    }
+                }
+                return results;
+            }, readers));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            SortedMap<String, T> results = new TreeMap<>();
+            for (CompletableFuture<Map<String, T>> part : parts) {
+                results.putAll(part.join());
+            }
+            return Collections.unmodifiableSortedMap(results);
+        });
+    }
+
+    /**
+     * Reads the gain totals of every account and adds them up.
+     *
+     * @return A future completed with each account's totals and the totals of all accounts together.
+     */
+    public CompletableFuture<GainReport> getGain() {
+        return readAll(new PortfolioQuery.GetGain()).thenApply(GainReport::new);
+    }
+
+    /**
+     * @return The names of every account seen so far, sorted.
+     */
+    public SortedSet<String> getAccounts() {
+        SortedSet<String> accounts = new TreeSet<>();
+        for (Shard shard : shards) {
+            accounts.addAll(shard.accounts.keySet());
+        }
+        return accounts;
+    }
+
+    /**
+     * Replaces an account's holdings once every command submitted to its shard before this call has
+     * run, such as with holdings loaded from a file. Holdings built on another thread must not be
+     * touched by that thread afterwards.
+     *
+     * @param account The name of the account.
+     * @param loaded The account's new holdings.
+     * @return A future completed once the shard is using the new holdings.
+     * @throws IllegalArgumentException If the account name is empty.
+     */
+    public CompletableFuture<Void> replaceHoldings(String account, Holdings loaded) {
+        Shard shard = shardOf(account);
+        return CompletableFuture.runAsync(() -> {
+            loaded.publish();
+            shard.accounts.put(account, loaded);
+        }, shard.worker);
+    }
+
+    /**
+     * Stops every shard's worker thread once its queued commands have run, and the reader threads once
+     * every query has run.
+     */
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.worker.shutdown();
+        }
+        readers.shutdown();
+    }
+
+    /**
+     * Finds the shard that owns an account. The name's hash is multiplied by a large odd constant so
+     * that names differing only in their last characters, such as numbered accounts, spread evenly.
+     */
+    private Shard shardOf(String account) {
+        if (account == null || account.isEmpty()) {
+            throw new IllegalArgumentException("Account must not be empty.");
+        }
+        return shards[(int) (((account.hashCode() * 0x9E3779B9) & 0xFFFFFFFFL) * shards.length >>> 32)];
+    }
+
+    /**
+     * One partition of the accounts, with the worker thread that is the only thread to change them.
+     */
+    private final class Shard {
+        private final ExecutorService worker;
+
+        /** Holdings by account name; only added to and changed on the worker, read on any thread. */
+        private final ConcurrentHashMap<String, Holdings> accounts = new ConcurrentHashMap<>();
+
+        private Shard(int index) {
+            worker = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "portfolio-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private <T> CompletableFuture<T> submit(String account, PortfolioCommand<T> command) {
+            Metrics.Timer timer = metrics.timer(command.getClass());
+            long submitted = System.nanoTime();
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                queueWait.record(started - submitted, false);
+                Holdings holdings = accounts.computeIfAbsent(account, name -> new Holdings());
+                boolean failed = true;
+                try {
+                    T result = command.execute(holdings);
+                    failed = false;
+                    return result;
+                } finally {
+                    long executed = System.nanoTime();
+                    timer.record(executed - started, failed);
+                    // Publish whatever the command changed, even if it failed part way
+                    holdings.publish();
+                    publish.recordSince(executed);
+                }
+            }, worker);
+        }
+    }
+
+    /**
+     * The gain totals of every account, and of all accounts together.
+     */
+    public static final class GainReport {
+        private final SortedMap<String, GainTotals> accounts;
+        private final GainTotals total = new GainTotals();
+
+        private GainReport(SortedMap<String, GainTotals> accounts) {
+            this.accounts = accounts;
+            for (GainTotals totals : accounts.values()) {
+                total.add(totals);
+            }
+        }
+
+        /**
+         * @return Each account's totals, sorted by account name.
+         */
+        public SortedMap<String, GainTotals> getAccounts() {
+            return accounts;
+        }
+
+        /**
+         * @return The totals of all accounts added together.
+         */
+        public GainTotals getTotal() {
+            return total;
+        }
+    }
+}
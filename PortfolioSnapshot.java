@@ -0,0 +1,76 @@
+package quoc_a3.ePortfolio;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * This class is one published version of the portfolio: every position and the gain totals as they
+ * were when a command finished. A snapshot never changes, so reports and exports can read it on any
+ * thread, for as long as they need, without locks and without holding up the commands that change
+ * the portfolio. Consecutive snapshots share the positions that did not change between them.
+ *
+ * The positions in a snapshot are copies that are not linked to any holdings. They must not be changed.
+ */
+public final class PortfolioSnapshot {
+
+    /** The snapshot of a portfolio that has not published any version yet. */
+    static final PortfolioSnapshot EMPTY = new PortfolioSnapshot(0, SymbolMap.empty(), new GainTotals());
+
+    private final long version;
+    private final SymbolMap<Investment> positions;
+    private final GainTotals totals;
+
+    PortfolioSnapshot(long version, SymbolMap<Investment> positions, GainTotals totals) {
+        this.version = version;
+        this.positions = positions;
+        this.totals = totals;
+    }
+
+    /**
+     * @return The version number, which increases with every snapshot published by the same holdings.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Finds the position held for a symbol.
+     *
+     * @param symbol The symbol to look up, in any letter case.
+     * @return The matching position, or null if the symbol was not held.
+     */
+    public Investment find(String symbol) {
+        return positions.get(Holdings.normalize(symbol));
+    }
+
+    /**
+     * @return The number of positions held.
+     */
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Passes every position to an action, in no particular order.
+     *
+     * @param action Receives each position.
+     */
+    public void forEach(Consumer<Investment> action) {
+        positions.forEach(action);
+    }
+
+    /**
+     * @return A spliterator over every position, in no particular order, that splits the positions
+     *         by subtree so several threads can read them without copying them out first.
+     */
+    public Spliterator<Investment> spliterator() {
+        return positions.spliterator();
+    }
+
+    /**
+     * @return The market value, book value, and gain totals of the positions.
+     */
+    public GainTotals getTotals() {
+        return totals;
+    }
+}
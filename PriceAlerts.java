@@ -0,0 +1,460 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * This class checks alert rules, such as "AAPL price above 150" or "VFIAX gain below -5%", against
+ * the positions as they change, and tells a listener each time a rule's condition becomes true. Rules
+ * are indexed per symbol, and each symbol's thresholds for each condition are kept sorted, so a change
+ * to a position only looks at the rules of that symbol and, by binary search, only at the thresholds
+ * crossed between its last value and its new one: O(log r) for r rules on the symbol, plus one step per
+ * rule that fires. Changes to symbols without rules cost a single int lookup.
+ *
+ * A rule fires when its value crosses the threshold: a price or gain that was below an "above"
+ * threshold reaches it, or one that was above a "below" threshold falls to it. A rule whose condition
+ * is already true when it is added does not fire until the value has crossed back and then crosses
+ * again. A position that is sold out and bought again is treated as new, so its rules that hold fire.
+ *
+ * The alerts are only changed and checked on the thread that changes the {@link Holdings}. Positions
+ * are marked as they change, and checked once each time the holdings are published, so a command that
+ * changes a position's quantity, book value, and price together is checked once, against the position
+ * as the command left it. Fired alerts are handed to the listener through an Executor, such as the
+ * event dispatch thread, so the listener never delays the commands.
+ */
+public class PriceAlerts {
+
+    /**
+     * The conditions a rule can check.
+     */
+    public enum Condition {
+        PRICE_ABOVE("price above", true),
+        PRICE_BELOW("price below", false),
+        GAIN_ABOVE("gain % above", true),
+        GAIN_BELOW("gain % below", false);
+
+        private final String label;
+        private final boolean rising;
+
+        Condition(String label, boolean rising) {
+            this.label = label;
+            this.rising = rising;
+        }
+
+        /**
+         * @return True if the rule checks the price, false if it checks the gain percent.
+         */
+        public boolean isPrice() {
+            return this == PRICE_ABOVE || this == PRICE_BELOW;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Receives every alert that fires.
+     */
+    public interface Listener {
+        /**
+         * Called on the delivery Executor when a rule fires.
+         *
+         * @param alert The alert.
+         */
+        void alerted(Alert alert);
+    }
+
+    /**
+     * An immutable alert rule, which may be read on any thread.
+     */
+    public static final class Rule {
+        private final long id;
+        private final int symbolId;
+        private final Condition condition;
+
+        /** The price in {@link Money} units, or the gain percent in hundredths of a percent. */
+        private final long threshold;
+
+        private Rule(long id, int symbolId, Condition condition, long threshold) {
+            this.id = id;
+            this.symbolId = symbolId;
+            this.condition = condition;
+            this.threshold = threshold;
+        }
+
+        /**
+         * @return The rule's id, which is unique within its alerts.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The symbol the rule checks.
+         */
+        public String getSymbol() {
+            return SymbolTable.symbol(symbolId);
+        }
+
+        /**
+         * @return The condition the rule checks.
+         */
+        public Condition getCondition() {
+            return condition;
+        }
+
+        /**
+         * @return The threshold: a price, or a gain percent.
+         */
+        public double getThreshold() {
+            return condition.isPrice() ? Money.toDouble(threshold) : threshold / 100.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %s %.2f%s", id, getSymbol(), condition, getThreshold(),
+                    condition.isPrice() ? "" : "%");
+        }
+    }
+
+    /**
+     * A rule that fired, with the value that crossed its threshold.
+     */
+    public static final class Alert {
+        private final Rule rule;
+        private final double value;
+        private final long time;
+
+        private Alert(Rule rule, double value, long time) {
+            this.rule = rule;
+            this.value = value;
+            this.time = time;
+        }
+
+        /**
+         * @return The rule that fired.
+         */
+        public Rule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return The price or gain percent that crossed the threshold.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * @return When the rule fired, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %.2f%s: now %.2f%s", rule.getSymbol(), rule.condition, rule.getThreshold(),
+                    rule.condition.isPrice() ? "" : "%", value, rule.condition.isPrice() ? "" : "%");
+        }
+    }
+
+    private final Listener listener;
+    private final Executor delivery;
+
+    /** Every rule by id, in the order the rules were added. */
+    private final Map<Long, Rule> rules = new LinkedHashMap<>();
+
+    /** Slot of each watched symbol in the watches array, by symbol id. */
+    private final IntIndex slots = new IntIndex();
+    private Watch[] watches = new Watch[16];
+    private int watchCount;
+
+    /** Watched positions changed since the last check. */
+    private final ArrayList<Watch> changed = new ArrayList<>();
+
+    /** The holdings whose positions are checked, or null before the alerts are attached to any. */
+    private Holdings holdings;
+    private long nextId = 1;
+
+    /**
+     * @param listener Receives every alert that fires.
+     * @param delivery Runs the listener; for example SwingUtilities::invokeLater.
+     */
+    public PriceAlerts(Listener listener, Executor delivery) {
+        this.listener = listener;
+        this.delivery = delivery;
+    }
+
+    /**
+     * Adds a rule. It fires the next time the symbol's price or gain crosses the threshold; the symbol
+     * does not need to be held yet.
+     *
+     * @param symbol The symbol to check, in any letter case.
+     * @param condition The condition to check.
+     * @param threshold The price, or the gain percent, to compare with.
+     * @return The new rule.
+     * @throws IllegalArgumentException If the symbol is empty or a price threshold is negative.
+     */
+    public Rule add(String symbol, Condition condition, double threshold) {
+        if (symbol.trim().isEmpty()) {
+            throw new IllegalArgumentException("Symbol is required.");
+        }
+        if (condition.isPrice() && threshold < 0) {
+            throw new IllegalArgumentException("Price must not be negative.");
+        }
+        int symbolId = SymbolTable.id(symbol);
+        long units = condition.isPrice() ? Money.of(threshold) : Math.round(threshold * 100);
+        Rule rule = new Rule(nextId++, symbolId, condition, units);
+        rules.put(rule.id, rule);
+
+        // Start watching the symbol from its current value, so only later crossings fire
+        int slot = slots.get(symbolId);
+        Watch watch;
+        if (slot < 0) {
+            if (watchCount == watches.length) {
+                watches = Arrays.copyOf(watches, watchCount * 2);
+            }
+            watch = new Watch(symbolId);
+            slots.put(symbolId, watchCount);
+            watches[watchCount++] = watch;
+            watch.observe(holdings == null ? null : holdings.find(symbolId));
+        } else {
+            watch = watches[slot];
+        }
+        watch.thresholds(condition).add(rule);
+        return rule;
+    }
+
+    /**
+     * Removes a rule.
+     *
+     * @param id The id of the rule.
+     * @return True if the rule was removed, false if there was no rule with the id.
+     */
+    public boolean remove(long id) {
+        Rule rule = rules.remove(id);
+        if (rule == null) {
+            return false;
+        }
+        watches[slots.get(rule.symbolId)].thresholds(rule.condition).remove(rule);
+        return true;
+    }
+
+    /**
+     * @return Every rule, in the order they were added.
+     */
+    public List<Rule> getRules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    /**
+     * Starts checking the positions of a holdings, taking the current value of every watched symbol
+     * as the value later changes are compared with.
+     */
+    void attach(Holdings holdings) {
+        this.holdings = holdings;
+        for (int i = 0; i < watchCount; i++) {
+            watches[i].observe(holdings == null ? null : holdings.find(watches[i].symbolId));
+        }
+        changed.clear();
+    }
+
+    /**
+     * Marks a position as changed, if its symbol has rules, so the next check looks at it.
+     *
+     * @param investment A position that was added, removed, or changed.
+     */
+    void changed(Investment investment) {
+        int slot = slots.get(investment.getSymbolId());
+        if (slot >= 0 && !watches[slot].changed) {
+            watches[slot].changed = true;
+            changed.add(watches[slot]);
+        }
+    }
+
+    /**
+     * Checks every position marked as changed since the last check, and delivers the alerts that fire.
+     */
+    void check() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<Alert> fired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Watch watch : changed) {
+            watch.changed = false;
+            watch.check(holdings.find(watch.symbolId), now, fired);
+        }
+        changed.clear();
+        for (Alert alert : fired) {
+            delivery.execute(() -> listener.alerted(alert));
+        }
+    }
+
+    /**
+     * The rules of one symbol, and the price and gain they were last checked against.
+     */
+    private static final class Watch {
+        private final int symbolId;
+
+        /** Thresholds of each condition, by the condition's ordinal, or null if it has no rules. */
+        private final Thresholds[] thresholds = new Thresholds[Condition.values().length];
+
+        /** Whether the symbol was held when last checked; if not, the values below are unknown. */
+        private boolean held;
+        private long price;
+
+        /** Whether the gain was known when last checked; it is not for a position with no book value. */
+        private boolean gainKnown;
+        private long gain;
+
+        /** Whether the position changed since the last check. */
+        private boolean changed;
+
+        private Watch(int symbolId) {
+            this.symbolId = symbolId;
+        }
+
+        private Thresholds thresholds(Condition condition) {
+            Thresholds sorted = thresholds[condition.ordinal()];
+            if (sorted == null) {
+                sorted = new Thresholds();
+                thresholds[condition.ordinal()] = sorted;
+            }
+            return sorted;
+        }
+
+        /**
+         * Takes a position's current values as the last values checked.
+         */
+        private void observe(Investment investment) {
+            held = investment != null;
+            if (held) {
+                price = investment.getPriceUnits();
+                gainKnown = investment.getBookValueUnits() > 0;
+                gain = gainKnown ? gain(investment) : 0;
+            } else {
+                gainKnown = false;
+            }
+        }
+
+        /**
+         * Fires the rules whose thresholds the position's values crossed since the last check.
+         */
+        private void check(Investment investment, long now, List<Alert> fired) {
+            if (investment == null) {
+                observe(null);
+                return;
+            }
+            long newPrice = investment.getPriceUnits();
+            double priceValue = Money.toDouble(newPrice);
+            crossed(Condition.PRICE_ABOVE, held, price, newPrice, priceValue, now, fired);
+            crossed(Condition.PRICE_BELOW, held, price, newPrice, priceValue, now, fired);
+            if (investment.getBookValueUnits() > 0) {
+                long newGain = gain(investment);
+                double gainValue = newGain / 100.0;
+                crossed(Condition.GAIN_ABOVE, gainKnown, gain, newGain, gainValue, now, fired);
+                crossed(Condition.GAIN_BELOW, gainKnown, gain, newGain, gainValue, now, fired);
+            }
+            observe(investment);
+        }
+
+        /**
+         * Fires the rules of a condition whose thresholds lie between the old value and the new one.
+         * An unknown old value fires every rule whose condition the new value meets.
+         */
+        private void crossed(Condition condition, boolean known, long from, long to, double value, long now,
+                             List<Alert> fired) {
+            Thresholds sorted = thresholds[condition.ordinal()];
+            if (sorted == null || sorted.size == 0) {
+                return;
+            }
+            if (condition.rising) {
+                // Thresholds in (from, to] were reached on the way up
+                if (known && to <= from) {
+                    return;
+                }
+                for (int i = known ? sorted.firstAbove(from) : 0; i < sorted.size && sorted.values[i] <= to; i++) {
+                    fired.add(new Alert(sorted.rules[i], value, now));
+                }
+            } else {
+                // Thresholds in [to, from) were reached on the way down
+                if (known && to >= from) {
+                    return;
+                }
+                for (int i = sorted.firstAbove(to - 1); i < sorted.size && (!known || sorted.values[i] < from); i++) {
+                    fired.add(new Alert(sorted.rules[i], value, now));
+                }
+            }
+        }
+
+        /**
+         * @return The position's unrealized gain as a percent of its book value, in hundredths of a
+         *         percent, rounded down.
+         */
+        private static long gain(Investment investment) {
+            long marketValue = Money.times(investment.getPriceUnits(), investment.getQuantity());
+            return (long) Math.floor((double) (marketValue - investment.getBookValueUnits()) * 10_000
+                    / investment.getBookValueUnits());
+        }
+    }
+
+    /**
+     * The thresholds of one symbol's rules for one condition, sorted, with each threshold's rule.
+     * Rules are added and removed far less often than values are checked, so they are kept in plain
+     * sorted arrays and shifted on each change.
+     */
+    private static final class Thresholds {
+        private long[] values = new long[4];
+        private Rule[] rules = new Rule[4];
+        private int size;
+
+        private void add(Rule rule) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                rules = Arrays.copyOf(rules, size * 2);
+            }
+            int index = firstAbove(rule.threshold);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            System.arraycopy(rules, index, rules, index + 1, size - index);
+            values[index] = rule.threshold;
+            rules[index] = rule;
+            size++;
+        }
+
+        private void remove(Rule rule) {
+            for (int index = firstAbove(rule.threshold - 1); index < size; index++) {
+                if (rules[index] == rule) {
+                    System.arraycopy(values, index + 1, values, index, size - index - 1);
+                    System.arraycopy(rules, index + 1, rules, index, size - index - 1);
+                    rules[--size] = null;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return The index of the first threshold greater than the value, or the size if there is none.
+         */
+        private int firstAbove(long value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package quoc_a3.ePortfolio;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class accepts live price quotes from any number of feed threads at once.
+ *
+ * Each symbol has its own quote cell holding the latest price in an AtomicLong, so concurrent updates
+ * never block each other, a price is never torn, and the last quote written always wins. A cell that
+ * changes is queued once until it is drained, and the portfolio worker thread drains the queue to copy
+ * the latest prices into the held investments, so investments are still only changed by one thread.
+ */
+public class PriceFeed {
+
+    /** Quote cells by normalized symbol. */
+    private final ConcurrentHashMap<String, Quote> quotes = new ConcurrentHashMap<>();
+
+    /** Cells with a price that has not been drained yet. */
+    private final ConcurrentLinkedQueue<Quote> changed = new ConcurrentLinkedQueue<>();
+
+    /** Number of quotes published. */
+    private final LongAdder published = new LongAdder();
+
+    /** Number of cells drained, that is, the number of quotes that were not replaced before a drain. */
+    private final AtomicLong drained = new AtomicLong();
+
+    /** Number of cells waiting in the queue. */
+    private final AtomicLong pending = new AtomicLong();
+
+    /**
+     * The latest price of one symbol. Feed threads that publish many quotes for the same symbol can
+     * keep the cell and publish to it directly, skipping the symbol lookup.
+     */
+    public final class Quote {
+        private final String symbol;
+        private final AtomicLong priceBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        private Quote(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Publishes a new price for the symbol. Safe to call from any thread.
+         *
+         * @param price The new price.
+         */
+        public void publish(double price) {
+            priceBits.set(Double.doubleToRawLongBits(price));
+            published.increment();
+
+            // Queue the cell once; later quotes only replace its price until it is drained
+            if (!queued.get() && queued.compareAndSet(false, true)) {
+                pending.incrementAndGet();
+                changed.add(this);
+            }
+        }
+
+        /**
+         * @return The symbol, normalized.
+         */
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * @return The latest price, or NaN if none has been published.
+         */
+        public double getPrice() {
+            return Double.longBitsToDouble(priceBits.get());
+        }
+    }
+
+    /**
+     * Receives the latest price of each symbol that changed, when the feed is drained.
+     */
+    public interface Consumer {
+        void accept(String symbol, double price);
+    }
+
+    /**
+     * Finds or creates the quote cell for a symbol.
+     *
+     * @param symbol The symbol, in any letter case.
+     * @return The symbol's quote cell.
+     */
+    public Quote quote(String symbol) {
+        String key = Holdings.normalize(symbol);
+        Quote quote = quotes.get(key);
+        return quote != null ? quote : quotes.computeIfAbsent(key, Quote::new);
+    }
+
+    /**
+     * Publishes a new price for a symbol. Safe to call from any thread.
+     *
+     * @param symbol The symbol, in any letter case.
+     * @param price The new price.
+     */
+    public void publish(String symbol, double price) {
+        quote(symbol).publish(price);
+    }
+
+    /**
+     * Hands the latest price of every symbol changed since the last drain to a consumer. A quote
+     * published while draining is either included or left queued for the next drain, never lost.
+     * A drain stops after one pass over the symbols, so busy feeds can not keep it running forever.
+     * Only one thread should drain at a time.
+     *
+     * @param consumer Receives each changed symbol and its latest price.
+     * @return The number of symbols drained.
+     */
+    public int drain(Consumer consumer) {
+        // Each cell is queued at most once at a time, so this bounds a drain even while feeds keep publishing
+        int limit = quotes.size();
+        int count = 0;
+        Quote quote;
+        while (count < limit && (quote = changed.poll()) != null) {
+            // Clear the flag before reading, so a quote published after the read queues the cell again
+            pending.decrementAndGet();
+            quote.queued.set(false);
+            consumer.accept(quote.symbol, quote.getPrice());
+            count++;
+        }
+        drained.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Copies the latest price of every changed symbol into the held investments. Prices of symbols
+     * that are not held, and prices a position can not take, being negative or too large, are dropped. Quotes are market data rather than transactions, so they are not
+     * written to the journal; the next snapshot saves the latest prices.
+     *
+     * @param holdings The holdings to update; must only be called on the thread that owns them.
+     * @return The number of investments updated.
+     */
+    public int applyTo(Holdings holdings) {
+        int[] applied = new int[1];
+        drain((symbol, price) -> {
+            Investment investment = holdings.find(symbol);
+            if (investment != null && price >= 0) {
+                try {
+                    investment.setPrice(price);
+                    applied[0]++;
+                } catch (ArithmeticException e) {
+                    // The position was left as it was
+                }
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * @return The number of quotes published so far.
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return The number of quotes drained so far; every other quote was replaced by a later one.
+     */
+    public long getDrained() {
+        return drained.get();
+    }
+
+    /**
+     * @return The number of symbols with a quote waiting to be drained.
+     */
+    public long getPending() {
+        return Math.max(pending.get(), 0);
+    }
+
+    /**
+     * @return The number of quotes replaced by a later quote for the same symbol before they were drained.
+     */
+    public long getCoalesced() {
+        return Math.max(getPublished() - getDrained() - getPending(), 0);
+    }
+}
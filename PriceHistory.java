@@ -0,0 +1,565 @@
+package quoc_a3.ePortfolio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps the price history of every symbol: each (timestamp, price) tick recorded when a
+ * position's price changes, so past prices can be charted instead of being overwritten.
+ *
+ * Ticks are compressed the way time-series databases such as Gorilla do it. Timestamps are stored as
+ * the change in the gap between ticks, which is zero or close to it when ticks arrive at a steady rate.
+ * Prices are stored as the change in exact {@link Money} units from the previous tick, which is zero
+ * for an unchanged price and small for a normal move. Both are written with a prefix code of 1 bit for
+ * zero and 9 to 69 bits for larger values, so a steady stream of small moves costs about 2 bytes per tick.
+ *
+ * Each symbol's newest ticks are compressed into an open chunk in memory. A chunk is sealed after
+ * {@value #CHUNK_TICKS} ticks and appended to a segment file, which is memory-mapped, with a header
+ * holding the symbol, the time range, and a checksum of the compressed ticks. On open the segments are
+ * scanned header by header to rebuild the index of each symbol's chunks, so a range query for one
+ * symbol only reads the chunks that overlap the range. The open chunks are sealed when the history is
+ * flushed or closed; ticks still in an open chunk are lost if the application does not quit normally.
+ *
+ * The history is not thread-safe. It is only used on the portfolio worker thread, like the holdings.
+ * For a data file named data.txt, the segments are kept in the directory data.txt.history.
+ */
+public class PriceHistory implements Closeable {
+
+    /** Number of ticks compressed into a chunk before it is sealed. */
+    public static final int CHUNK_TICKS = 1024;
+
+    /** Size of each memory-mapped segment file. */
+    public static final int SEGMENT_SIZE = 64 << 20;
+
+    /** Marks the start of a sealed chunk; it is written last, so a chunk torn by a crash is never read. */
+    private static final int CHUNK_MAGIC = 0x65504843;
+
+    /** Bytes in a chunk header before the symbol: magic, length, count, first and last time, checksum, symbol length. */
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + 4 + 2;
+
+    /**
+     * Receives the ticks found by a query, oldest first.
+     */
+    public interface Visitor {
+        /**
+         * @param timestamp The tick's time, in milliseconds since the epoch.
+         * @param price The price at that time.
+         */
+        void tick(long timestamp, double price);
+    }
+
+    /**
+     * The ticks found by a query, oldest first, copied so they can be read on another thread.
+     */
+    public static class Ticks implements Visitor {
+        private long[] timestamps = new long[16];
+        private double[] prices = new double[16];
+        private int size;
+
+        @Override
+        public void tick(long timestamp, double price) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            timestamps[size] = timestamp;
+            prices[size] = price;
+            size++;
+        }
+
+        /**
+         * @return The number of ticks.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i The tick's position, 0 for the oldest.
+         * @return The tick's time, in milliseconds since the epoch.
+         */
+        public long getTimestamp(int i) {
+            return timestamps[i];
+        }
+
+        /**
+         * @param i The tick's position, 0 for the oldest.
+         * @return The price at that time.
+         */
+        public double getPrice(int i) {
+            return prices[i];
+        }
+    }
+
+    /**
+     * Where a sealed chunk is stored and the time range it covers.
+     */
+    private static class ChunkRef {
+        final int segment;
+        final int offset;
+        final int length;
+        final int count;
+        final long firstTime;
+        final long lastTime;
+
+        ChunkRef(int segment, int offset, int length, int count, long firstTime, long lastTime) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+        }
+    }
+
+    /**
+     * The sealed chunks of one symbol, oldest first, and its open chunk.
+     */
+    private static class Series {
+        final List<ChunkRef> chunks = new ArrayList<>();
+        ChunkWriter open;
+        long lastTime = Long.MIN_VALUE;
+    }
+
+    private final Path directory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final HashMap<String, Series> series = new HashMap<>();
+
+    /** Offset in the last segment where the next chunk is written. */
+    private int writeOffset;
+
+    private long tickCount;
+    private long storedBytes;
+    private int chunkCount;
+
+    private PriceHistory(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the price history of a portfolio data file, creating it if there is none.
+     *
+     * @param dataFile The portfolio data file the history belongs to.
+     * @return The open history.
+     * @throws IOException If the segments can not be read or created.
+     */
+    public static PriceHistory open(Path dataFile) throws IOException {
+        PriceHistory history = new PriceHistory(Paths.get(dataFile + ".history"));
+        Files.createDirectories(history.directory);
+
+        // Map the existing segments in order and index their chunks
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(history.directory, "segment-*.dat")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            history.scan(history.map(file));
+        }
+        if (history.segments.isEmpty()) {
+            history.addSegment();
+        }
+        return history;
+    }
+
+    /**
+     * Records a tick. A timestamp earlier than the symbol's last tick is recorded at the last tick's
+     * time, so each symbol's ticks stay in time order even if the clock is set back.
+     *
+     * @param symbol The symbol, in any letter case.
+     * @param timestamp The tick's time, in milliseconds since the epoch.
+     * @param price The price at that time, in {@link Money} units.
+     * @throws IllegalStateException If a full chunk can not be written to a new segment.
+     */
+    public void record(String symbol, long timestamp, long price) {
+        String key = Holdings.normalize(symbol);
+        Series symbolSeries = series.computeIfAbsent(key, k -> new Series());
+        long time = Math.max(timestamp, symbolSeries.lastTime);
+        if (symbolSeries.open == null) {
+            symbolSeries.open = new ChunkWriter();
+        }
+        symbolSeries.open.append(time, price);
+        symbolSeries.lastTime = time;
+        tickCount++;
+        if (symbolSeries.open.count == CHUNK_TICKS) {
+            seal(key, symbolSeries);
+        }
+    }
+
+    /**
+     * Finds a symbol's ticks within a time range. Only the chunks that overlap the range are read.
+     *
+     * @param symbol The symbol, in any letter case.
+     * @param from The earliest time to include, in milliseconds since the epoch.
+     * @param to The latest time to include, in milliseconds since the epoch.
+     * @param visitor Receives each tick in the range, oldest first.
+     * @return The number of ticks found.
+     */
+    public int query(String symbol, long from, long to, Visitor visitor) {
+        Series symbolSeries = series.get(Holdings.normalize(symbol));
+        if (symbolSeries == null || from > to) {
+            return 0;
+        }
+
+        // Find the first sealed chunk that ends at or after the start of the range
+        List<ChunkRef> chunks = symbolSeries.chunks;
+        int low = 0;
+        int high = chunks.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunks.get(middle).lastTime < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int found = 0;
+        for (int i = low; i < chunks.size() && chunks.get(i).firstTime <= to; i++) {
+            ChunkRef chunk = chunks.get(i);
+            found += decode(new BitReader(segments.get(chunk.segment), chunk.offset), chunk.count, from, to, visitor);
+        }
+        ChunkWriter open = symbolSeries.open;
+        if (open != null && open.count > 0 && open.firstTime <= to && open.lastTime >= from) {
+            found += decode(new BitReader(ByteBuffer.wrap(open.bytes), 0), open.count, from, to, visitor);
+        }
+        return found;
+    }
+
+    /**
+     * Finds a symbol's ticks within a time range, copied so they can be read on another thread.
+     *
+     * @param symbol The symbol, in any letter case.
+     * @param from The earliest time to include, in milliseconds since the epoch.
+     * @param to The latest time to include, in milliseconds since the epoch.
+     * @return The ticks found, oldest first.
+     */
+    public Ticks query(String symbol, long from, long to) {
+        Ticks ticks = new Ticks();
+        query(symbol, from, to, ticks);
+        return ticks;
+    }
+
+    /**
+     * @return The number of ticks recorded, both sealed and still in open chunks.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return The number of bytes taken by the sealed chunks, headers included.
+     */
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return The number of sealed chunks.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * Seals every open chunk and forces the segments to disk.
+     */
+    public void flush() {
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            Series symbolSeries = entry.getValue();
+            if (symbolSeries.open != null && symbolSeries.open.count > 0) {
+                seal(entry.getKey(), symbolSeries);
+            }
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Seals every open chunk and forces the segments to disk.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Appends a symbol's open chunk to the last segment, starting a new segment if it does not fit.
+     */
+    private void seal(String key, Series symbolSeries) {
+        ChunkWriter open = symbolSeries.open;
+        byte[] symbol = key.getBytes(StandardCharsets.UTF_8);
+        int length = open.byteLength();
+        int total = HEADER_BYTES + symbol.length + length;
+        if (writeOffset + total > SEGMENT_SIZE) {
+            try {
+                addSegment();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not add a price history segment: " + e.getMessage(), e);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(open.bytes, 0, length);
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        int offset = writeOffset;
+        segment.putInt(offset + 4, length);
+        segment.putInt(offset + 8, open.count);
+        segment.putLong(offset + 12, open.firstTime);
+        segment.putLong(offset + 20, open.lastTime);
+        segment.putInt(offset + 28, (int) crc.getValue());
+        segment.putShort(offset + 32, (short) symbol.length);
+        segment.put(offset + HEADER_BYTES, symbol);
+        segment.put(offset + HEADER_BYTES + symbol.length, open.bytes, 0, length);
+        segment.putInt(offset, CHUNK_MAGIC);
+
+        symbolSeries.chunks.add(new ChunkRef(segments.size() - 1, offset + HEADER_BYTES + symbol.length, length,
+                open.count, open.firstTime, open.lastTime));
+        symbolSeries.open = null;
+        writeOffset += total;
+        storedBytes += total;
+        chunkCount++;
+    }
+
+    /**
+     * Indexes the chunks of a segment, stopping at the first one that is missing or torn.
+     */
+    private void scan(MappedByteBuffer segment) {
+        int index = segments.size() - 1;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= SEGMENT_SIZE && segment.getInt(offset) == CHUNK_MAGIC) {
+            int length = segment.getInt(offset + 4);
+            int count = segment.getInt(offset + 8);
+            int symbolLength = segment.getShort(offset + 32) & 0xFFFF;
+            int payload = offset + HEADER_BYTES + symbolLength;
+            if (length < 0 || count <= 0 || payload + (long) length > SEGMENT_SIZE) {
+                break;
+            }
+            byte[] data = new byte[length];
+            segment.get(payload, data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != segment.getInt(offset + 28)) {
+                break;
+            }
+
+            byte[] symbol = new byte[symbolLength];
+            segment.get(offset + HEADER_BYTES, symbol);
+            long firstTime = segment.getLong(offset + 12);
+            long lastTime = segment.getLong(offset + 20);
+            Series symbolSeries = series.computeIfAbsent(new String(symbol, StandardCharsets.UTF_8), k -> new Series());
+            symbolSeries.chunks.add(new ChunkRef(index, payload, length, count, firstTime, lastTime));
+            symbolSeries.lastTime = Math.max(symbolSeries.lastTime, lastTime);
+            tickCount += count;
+            storedBytes += payload + length - offset;
+            chunkCount++;
+            offset = payload + length;
+        }
+        writeOffset = offset;
+    }
+
+    private void addSegment() throws IOException {
+        map(directory.resolve(String.format("segment-%05d.dat", segments.size())));
+        writeOffset = 0;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            segments.add(segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Decodes a chunk's ticks and passes on those within the time range.
+     *
+     * @return The number of ticks passed on.
+     */
+    private static int decode(BitReader reader, int count, long from, long to, Visitor visitor) {
+        long time = reader.read(64);
+        long price = reader.read(64);
+        long delta = 0;
+        int found = 0;
+        for (int i = 0; ; ) {
+            if (time > to) {
+                break;
+            }
+            if (time >= from) {
+                visitor.tick(time, Money.toDouble(price));
+                found++;
+            }
+            if (++i == count) {
+                break;
+            }
+            delta += reader.readSigned();
+            time += delta;
+            price += reader.readSigned();
+        }
+        return found;
+    }
+
+    /**
+     * Compresses the ticks of an open chunk into a growing byte array.
+     */
+    private static class ChunkWriter {
+        byte[] bytes = new byte[32];
+        long bitLength;
+        int count;
+        long firstTime;
+        long lastTime;
+        long lastDelta;
+        long lastPrice;
+
+        void append(long time, long price) {
+            if (count == 0) {
+                // The first tick is stored whole
+                write(time, 64);
+                write(price, 64);
+                firstTime = time;
+            } else {
+                long delta = time - lastTime;
+                writeSigned(delta - lastDelta);
+                writeSigned(price - lastPrice);
+                lastDelta = delta;
+            }
+            lastTime = time;
+            lastPrice = price;
+            count++;
+        }
+
+        int byteLength() {
+            return (int) ((bitLength + 7) >>> 3);
+        }
+
+        /**
+         * Writes a signed value with a prefix code: '0' for zero, and otherwise a prefix of 2 to 5
+         * bits followed by the zigzag-encoded value in 7, 12, 20, 32, or 64 bits.
+         */
+        void writeSigned(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            if (zigzag == 0) {
+                write(0, 1);
+            } else if (zigzag >>> 7 == 0) {
+                write(0b10, 2);
+                write(zigzag, 7);
+            } else if (zigzag >>> 12 == 0) {
+                write(0b110, 3);
+                write(zigzag, 12);
+            } else if (zigzag >>> 20 == 0) {
+                write(0b1110, 4);
+                write(zigzag, 20);
+            } else if (zigzag >>> 32 == 0) {
+                write(0b11110, 5);
+                write(zigzag, 32);
+            } else {
+                write(0b11111, 5);
+                write(zigzag, 64);
+            }
+        }
+
+        /**
+         * Writes the low bits of a value, most significant first.
+         */
+        void write(long value, int bits) {
+            if (bitLength + bits > (long) bytes.length * 8) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while (bits > 0) {
+                int index = (int) (bitLength >>> 3);
+                int used = (int) (bitLength & 7);
+                int take = Math.min(8 - used, bits);
+                int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+                bytes[index] |= (byte) (chunk << (8 - used - take));
+                bitLength += take;
+                bits -= take;
+            }
+        }
+    }
+
+    /**
+     * Reads the bits of a compressed chunk from a buffer, without copying it.
+     */
+    private static class BitReader {
+        private final ByteBuffer buffer;
+        private long bitPosition;
+
+        BitReader(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.bitPosition = (long) offset * 8;
+        }
+
+        long readSigned() {
+            // The prefix is at most five bits; count its leading ones in one read
+            int prefix = Math.min(Long.numberOfLeadingZeros(~(peek() | 0x07FF_FFFF_FFFF_FFFFL)), 5);
+            if (prefix == 0) {
+                bitPosition++;
+                return 0;
+            }
+            bitPosition += prefix < 5 ? prefix + 1 : 5;
+            long zigzag;
+            switch (prefix) {
+                case 1:
+                    zigzag = read(7);
+                    break;
+                case 2:
+                    zigzag = read(12);
+                    break;
+                case 3:
+                    zigzag = read(20);
+                    break;
+                case 4:
+                    zigzag = read(32);
+                    break;
+                default:
+                    zigzag = read(64);
+                    break;
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        long read(int bits) {
+            if (bits > 56) {
+                long high = read(bits - 32);
+                return (high << 32) | read(32);
+            }
+            long value = peek() >>> (64 - bits);
+            bitPosition += bits;
+            return value;
+        }
+
+        /**
+         * @return The next 57 or more bits, starting at the most significant bit; bits past the end are zero.
+         */
+        private long peek() {
+            int index = (int) (bitPosition >>> 3);
+            long word;
+            if (index + 8 <= buffer.limit()) {
+                word = buffer.getLong(index);
+            } else {
+                word = 0;
+                for (int i = 0; i < 8; i++) {
+                    word = (word << 8) | (index + i < buffer.limit() ? buffer.get(index + i) & 0xFF : 0);
+                }
+            }
+            return word << (bitPosition & 7);
+        }
+    }
+}
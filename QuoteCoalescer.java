@@ -0,0 +1,114 @@
+package quoc_a3.ePortfolio;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * This class applies live quotes to the portfolio in batches, one batch per time window.
+ *
+ * Quotes arriving within a window only replace the latest price of their symbol in the {@link PriceFeed},
+ * so however fast they arrive, each symbol is applied at most once per window. At the end of each window
+ * the changed prices are applied to the investments in one pass on the portfolio worker thread, and the
+ * listener is told once about the whole batch, so the screen can be refreshed once per batch instead of
+ * once per quote. The next window starts when the previous batch has been applied, so a slow worker never
+ * falls behind with a queue of batches.
+ */
+public class QuoteCoalescer {
+
+    /**
+     * The result of applying one batch of quotes.
+     */
+    public static class Batch {
+        /** Number of investments whose price was updated by the batch. */
+        public final int applied;
+
+        /** Number of quotes received so far. */
+        public final long received;
+
+        /** Number of quotes so far that were replaced by a later quote before being applied. */
+        public final long coalesced;
+
+        /** Copy of the portfolio's gain totals after the batch. */
+        public final GainTotals totals;
+
+        Batch(int applied, long received, long coalesced, GainTotals totals) {
+            this.applied = applied;
+            this.received = received;
+            this.coalesced = coalesced;
+            this.totals = totals;
+        }
+    }
+
+    private final PriceFeed feed;
+    private final PortfolioExecutor executor;
+    private final long windowMillis;
+
+    /** Timer for the current run, or null while stopped; each run gets a timer of its own. */
+    private ScheduledExecutorService timer;
+
+    /**
+     * Creates a coalescer; call start() to begin applying quotes.
+     *
+     * @param feed The feed the quotes are published to.
+     * @param executor The executor that owns the portfolio.
+     * @param windowMillis The length of each window in milliseconds.
+     */
+    public QuoteCoalescer(PriceFeed feed, PortfolioExecutor executor, long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("The window must be at least 1 ms.");
+        }
+        this.feed = feed;
+        this.executor = executor;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Starts applying a batch at the end of every window.
+     *
+     * @param listener Receives each batch once it has been applied; it should hand any screen update
+     *                 to the event dispatch thread.
+     */
+    public synchronized void start(Consumer<Batch> listener) {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "quote-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule(timer, listener);
+    }
+
+    /**
+     * Stops applying batches. Quotes still waiting stay in the feed until the next start.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+    }
+
+    /**
+     * Schedules the next batch on the given run's timer, unless that run has been stopped.
+     */
+    private void schedule(ScheduledExecutorService runTimer, Consumer<Batch> listener) {
+        try {
+            runTimer.schedule(() -> {
+                // A failed batch is counted against ApplyQuotes in the executor's metrics; the next window still runs
+                executor.submit(new PortfolioCommand.ApplyQuotes(feed)).whenComplete((batch, error) -> {
+                    if (error == null) {
+                        listener.accept(batch);
+                    }
+                    schedule(runTimer, listener);
+                });
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The run was stopped while the batch was being applied
+        }
+    }
+}
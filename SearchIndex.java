@@ -0,0 +1,374 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * This class indexes investments for keyword and price range searches.
+ * Every investment is referred to by its symbol id, the words of its name are kept in an inverted index
+ * of sorted id lists, and its price is kept in a sorted price index. Queries intersect the id lists
+ * of their keywords and read the price index, so they never scan the whole portfolio. Both can also be
+ * read lazily from a given point on, so a search can be shown a page at a time.
+ */
+class SearchIndex {
+
+    /** Finds the indexed investment of a symbol id, or null if the symbol is not indexed. */
+    private final IntFunction<Investment> positions;
+
+    /** Sorted ids of the investments whose name contains each lower-case word. */
+    private final HashMap<String, PostingList> keywords = new HashMap<>();
+
+    /** Sorted ids of the investments at each price. */
+    private final TreeMap<Double, PostingList> prices = new TreeMap<>();
+
+    /**
+     * Creates an empty index.
+     *
+     * @param positions Finds the investment of a symbol id; every investment added must be found by
+     *                  it until it is removed.
+     */
+    SearchIndex(IntFunction<Investment> positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Splits text into lower-case words, dropping duplicates and punctuation.
+     *
+     * @param text The text to split, such as an investment name or a search query.
+     * @return The distinct words, in the order they appear.
+     */
+    static String[] tokenize(String text) {
+        LinkedHashSet<String> words = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Checks whether a name contains every word of a query.
+     *
+     * @param name The investment name to check.
+     * @param query The keywords to match; an empty query matches every name.
+     * @return True if every keyword is a word of the name.
+     */
+    static boolean nameMatches(String name, String query) {
+        List<String> words = Arrays.asList(tokenize(name));
+        for (String word : tokenize(query)) {
+            if (!words.contains(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an investment to the keyword and price indexes.
+     *
+     * @param investment The investment to index.
+     */
+    void add(Investment investment) {
+        int id = investment.getSymbolId();
+
+        // Symbols are mostly added in id order, so most ids are simply appended to each word's list
+        for (String word : tokenize(investment.getName())) {
+            keywords.computeIfAbsent(word, k -> new PostingList()).add(id);
+        }
+        prices.computeIfAbsent(investment.getPrice(), k -> new PostingList()).add(id);
+    }
+
+    /**
+     * Removes an investment from the keyword and price indexes.
+     *
+     * @param investment The investment to remove.
+     */
+    void remove(Investment investment) {
+        int id = investment.getSymbolId();
+        for (String word : tokenize(investment.getName())) {
+            removeId(keywords, word, id);
+        }
+        removeId(prices, investment.getPrice(), id);
+    }
+
+    /**
+     * Moves an investment to its new position in the price index.
+     *
+     * @param investment The investment whose price has changed.
+     * @param oldPrice The price the investment was indexed under.
+     */
+    void priceChanged(Investment investment, double oldPrice) {
+        int id = investment.getSymbolId();
+        if (positions.apply(id) == null || Double.compare(oldPrice, investment.getPrice()) == 0) {
+            return;
+        }
+        removeId(prices, oldPrice, id);
+        prices.computeIfAbsent(investment.getPrice(), k -> new PostingList()).add(id);
+    }
+
+    /**
+     * Finds the investments whose name contains every keyword and whose price is within a range.
+     *
+     * @param query The keywords to match; an empty query matches every name.
+     * @param low The lowest price to match, inclusive.
+     * @param high The highest price to match, inclusive.
+     * @return The matching investments, in symbol id order.
+     */
+    List<Investment> search(String query, double low, double high) {
+        String[] words = tokenize(query);
+        List<Investment> results = new ArrayList<>();
+
+        if (words.length == 0) {
+            // Without keywords the price index alone gives the matches
+            PostingList matches = new PostingList();
+            for (PostingList list : prices.subMap(low, true, high, true).values()) {
+                matches.addAll(list);
+            }
+            matches.sort();
+            for (int i = 0; i < matches.size; i++) {
+                results.add(positions.apply(matches.ids[i]));
+            }
+            return results;
+        }
+
+        // Gather the id list of each keyword, giving up early if any keyword is unknown
+        PostingList[] lists = new PostingList[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lists[i] = keywords.get(words[i]);
+            if (lists[i] == null) {
+                return results;
+            }
+        }
+
+        // Intersect starting from the shortest list so the candidate set shrinks as fast as possible
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+        int[] candidates = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = lists[i].retainAll(candidates, count);
+        }
+
+        // Check each remaining candidate against the price range
+        for (int i = 0; i < count; i++) {
+            Investment investment = positions.apply(candidates[i]);
+            if (investment.getPrice() >= low && investment.getPrice() <= high) {
+                results.add(investment);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds, lazily and in id order, the ids of the investments whose name contains every word.
+     *
+     * @param words The words to match, as split by {@link #tokenize(String)}; at least one.
+     * @param afterId The id to start after, or -1 to start at the first match.
+     * @return The ids of the matches; only valid until the index changes.
+     */
+    PrimitiveIterator.OfInt keywordMatches(String[] words, int afterId) {
+        PostingList[] lists = new PostingList[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lists[i] = keywords.get(words[i]);
+            if (lists[i] == null) {
+                return new PostingList().iterator(0);
+            }
+        }
+
+        // Walk the shortest list, checking each id against the other lists
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+        PrimitiveIterator.OfInt shortest = lists[0].iterator(lists[0].insertionPoint(afterId + 1));
+        return new PrimitiveIterator.OfInt() {
+            private int next = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (next < 0 && shortest.hasNext()) {
+                    int id = shortest.nextInt();
+                    boolean all = true;
+                    for (int i = 1; i < lists.length && all; i++) {
+                        all = Arrays.binarySearch(lists[i].ids, 0, lists[i].size, id) >= 0;
+                    }
+                    if (all) {
+                        next = id;
+                    }
+                }
+                return next >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id = next;
+                next = -1;
+                return id;
+            }
+        };
+    }
+
+    /**
+     * Finds, lazily and ordered by price and then by id, the ids of the investments priced within a range.
+     *
+     * @param low The lowest price to match, inclusive.
+     * @param high The highest price to match, inclusive.
+     * @param afterPrice The price of the match to start after; ignored if afterId is -1.
+     * @param afterId The id of the match to start after, or -1 to start at the first match.
+     * @return The ids of the matches; only valid until the index changes.
+     */
+    PrimitiveIterator.OfInt priceMatches(double low, double high, double afterPrice, int afterId) {
+        boolean resume = afterId >= 0 && afterPrice >= low;
+        if (resume && afterPrice > high) {
+            return new PostingList().iterator(0);
+        }
+        NavigableMap<Double, PostingList> range = resume ? prices.subMap(afterPrice, true, high, true)
+                : prices.subMap(low, true, high, true);
+        Iterator<Map.Entry<Double, PostingList>> entries = range.entrySet().iterator();
+        return new PrimitiveIterator.OfInt() {
+            private PrimitiveIterator.OfInt ids = new PostingList().iterator(0);
+
+            @Override
+            public boolean hasNext() {
+                while (!ids.hasNext() && entries.hasNext()) {
+                    Map.Entry<Double, PostingList> entry = entries.next();
+                    // Only the ids after the starting one are left at the price it was found at
+                    boolean first = resume && entry.getKey() == afterPrice;
+                    ids = entry.getValue().iterator(first ? entry.getValue().insertionPoint(afterId + 1) : 0);
+                }
+                return ids.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return ids.nextInt();
+            }
+        };
+    }
+
+    /**
+     * Removes an id from the list stored under a key, dropping the list once it is empty.
+     */
+    private static <K> void removeId(Map<K, PostingList> index, K key, int id) {
+        PostingList list = index.get(key);
+        if (list != null && list.remove(id) && list.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * A growable, sorted array of investment ids.
+     */
+    private static class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        /**
+         * Inserts an id in sorted order; ids larger than every other id are simply appended.
+         */
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int position = size == 0 || ids[size - 1] < id ? size : insertionPoint(id);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        /**
+         * Appends every id of another list without keeping the order; call sort() afterwards.
+         */
+        void addAll(PostingList other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, size + other.size));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        void sort() {
+            Arrays.sort(ids, 0, size);
+        }
+
+        /**
+         * Removes an id from the list.
+         *
+         * @return True if the id was in the list.
+         */
+        boolean remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Keeps only the candidates that are also in this list. Because both arrays are sorted,
+         * each lookup only searches the part of this list after the previous match.
+         *
+         * @param candidates Sorted candidate ids, filtered in place.
+         * @param count The number of candidates in use.
+         * @return The number of candidates left.
+         */
+        int retainAll(int[] candidates, int count) {
+            int kept = 0;
+            int from = 0;
+            for (int i = 0; i < count && from < size; i++) {
+                int position = Arrays.binarySearch(ids, from, size, candidates[i]);
+                if (position >= 0) {
+                    candidates[kept++] = candidates[i];
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return kept;
+        }
+
+        private int insertionPoint(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            return position < 0 ? -position - 1 : position;
+        }
+
+        /**
+         * @return The ids from a position on; only valid until the list changes.
+         */
+        PrimitiveIterator.OfInt iterator(int from) {
+            return new PrimitiveIterator.OfInt() {
+                private int position = from;
+
+                @Override
+                public boolean hasNext() {
+                    return position < size;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (position >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return ids[position++];
+                }
+            };
+        }
+    }
+}
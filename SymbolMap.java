@@ -0,0 +1,557 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * This class is an immutable map from symbols to values, stored as a hash array mapped trie.
+ *
+ * Each node of the trie covers 5 bits of a symbol's hash and holds a 32-bit bitmap of which of its
+ * 32 slots are used, followed by a packed array of only those slots, so a map of n symbols is about
+ * log32(n) nodes deep: 5 levels for 10 million symbols. Changing a map copies only the nodes on the
+ * path to the changed symbol and shares every other node with the old map, so old versions stay
+ * valid and can be read on any thread without locks while newer versions are built.
+ *
+ * A {@link Builder} applies many changes at once. Nodes it has already copied since its last build
+ * are changed in place, so a batch of changes to nearby symbols copies each node at most once.
+ *
+ * The {@link #spliterator()} splits the map along the trie, first across the slots of the root and then
+ * down into the children, so the values can be read by several threads without first being copied out.
+ *
+ * @param <V> The type of the values.
+ */
+public final class SymbolMap<V> {
+
+    private static final SymbolMap<Object> EMPTY = new SymbolMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private SymbolMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <V> The type of the values.
+     * @return The map with no symbols.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> SymbolMap<V> empty() {
+        return (SymbolMap<V>) EMPTY;
+    }
+
+    /**
+     * @param symbol The symbol to look up, exactly as it was added.
+     * @return The symbol's value, or null if the map does not hold the symbol.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String symbol) {
+        return root == null ? null : (V) root.find(0, hash(symbol), symbol);
+    }
+
+    /**
+     * @return The number of symbols in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every value in the map to an action, in no particular order.
+     *
+     * @param action Receives each value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        if (root != null) {
+            root.forEach((Consumer<Object>) action);
+        }
+    }
+
+    /**
+     * @return A spliterator over every value in the map, in no particular order, that splits by subtree.
+     */
+    public Spliterator<V> spliterator() {
+        return new NodeSpliterator<>(root == null ? new Object[0] : root.pairs(), size);
+    }
+
+    /**
+     * @param symbol The symbol to add or replace.
+     * @param value The symbol's value.
+     * @return A map with the symbol set to the value; this map is not changed.
+     */
+    public SymbolMap<V> put(String symbol, V value) {
+        return toBuilder().put(symbol, value).build();
+    }
+
+    /**
+     * @param symbol The symbol to remove.
+     * @return A map without the symbol; this map is not changed.
+     */
+    public SymbolMap<V> remove(String symbol) {
+        return toBuilder().remove(symbol).build();
+    }
+
+    /**
+     * @return A builder that starts from this map.
+     */
+    public Builder<V> toBuilder() {
+        return new Builder<>(root, size);
+    }
+
+    /**
+     * Spreads the bits of a symbol's hash, so symbols that differ only at the end still use every level.
+     */
+    private static int hash(String symbol) {
+        int h = symbol.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EB_CA6B;
+        return h ^ (h >>> 13);
+    }
+
+    /**
+     * Builds maps by applying changes one at a time. Every map built stays unchanged by later changes.
+     *
+     * @param <V> The type of the values.
+     */
+    public static final class Builder<V> {
+
+        /** Marks the nodes this builder has copied since its last build, which it may change in place. */
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /**
+         * @param symbol The symbol to add or replace.
+         * @param value The symbol's value.
+         * @return This builder.
+         */
+        public Builder<V> put(String symbol, V value) {
+            boolean[] added = new boolean[1];
+            Node node = root == null ? new BitmapNode(edit, 0, new Object[0]) : root;
+            root = node.put(edit, 0, hash(symbol), symbol, value, added);
+            if (added[0]) {
+                size++;
+            }
+            return this;
+        }
+
+        /**
+         * @param symbol The symbol to remove.
+         * @return This builder.
+         */
+        public Builder<V> remove(String symbol) {
+            if (root != null) {
+                boolean[] removed = new boolean[1];
+                root = root.remove(edit, 0, hash(symbol), symbol, removed);
+                if (removed[0]) {
+                    size--;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param symbol The symbol to look up.
+         * @return The symbol's value in the map being built, or null if it does not hold the symbol.
+         */
+        @SuppressWarnings("unchecked")
+        public V get(String symbol) {
+            return root == null ? null : (V) root.find(0, hash(symbol), symbol);
+        }
+
+        /**
+         * Returns the map built so far. The builder can keep being used; later changes copy the nodes
+         * they touch instead of changing the map returned.
+         *
+         * @return The map.
+         */
+        public SymbolMap<V> build() {
+            edit = new Object();
+            return new SymbolMap<>(root, size);
+        }
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private abstract static class Node {
+        /** The builder edit this node was copied by, which may change it in place. */
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        abstract Object find(int shift, int hash, String symbol);
+
+        abstract Node put(Object edit, int shift, int hash, String symbol, Object value, boolean[] added);
+
+        /**
+         * @return The node without the symbol, or null if it would be empty.
+         */
+        abstract Node remove(Object edit, int shift, int hash, String symbol, boolean[] removed);
+
+        abstract void forEach(Consumer<Object> action);
+
+        /**
+         * @return The node's slots as pairs: a symbol and its value, or null and a child node.
+         */
+        abstract Object[] pairs();
+    }
+
+    /**
+     * A node with up to 32 slots, each holding either a symbol and its value or a child node.
+     * The array holds a pair per used slot: the symbol, or null for a child, then the value or the child.
+     */
+    private static final class BitmapNode extends Node {
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, String symbol) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object key = array[index];
+            if (key == null) {
+                return ((Node) array[index + 1]).find(shift + 5, hash, symbol);
+            }
+            return symbol.equals(key) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, String symbol, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+
+            // A free slot takes the symbol directly
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] inserted = new Object[array.length + 2];
+                System.arraycopy(array, 0, inserted, 0, index);
+                inserted[index] = symbol;
+                inserted[index + 1] = value;
+                System.arraycopy(array, index, inserted, index + 2, array.length - index);
+                BitmapNode node = editable(edit);
+                node.bitmap |= bit;
+                node.array = inserted;
+                return node;
+            }
+
+            Object key = array[index];
+            Object current = array[index + 1];
+            if (key == null) {
+                // The slot is a child node, which takes the symbol
+                Node child = ((Node) current).put(edit, shift + 5, hash, symbol, value, added);
+                return child == current ? this : set(edit, index + 1, child);
+            }
+            if (symbol.equals(key)) {
+                return current == value ? this : set(edit, index + 1, value);
+            }
+
+            // Two symbols share the slot, so they move down into a new child
+            added[0] = true;
+            Node child = pair(edit, shift + 5, (String) key, current, hash, symbol, value);
+            BitmapNode node = editable(edit);
+            node.array[index] = null;
+            node.array[index + 1] = child;
+            return node;
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, String symbol, boolean[] removed) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object key = array[index];
+            if (key == null) {
+                Node child = (Node) array[index + 1];
+                Node remaining = child.remove(edit, shift + 5, hash, symbol, removed);
+                if (remaining == child) {
+                    return this;
+                }
+                if (remaining != null) {
+                    return set(edit, index + 1, remaining);
+                }
+            } else if (!symbol.equals(key)) {
+                return this;
+            } else {
+                removed[0] = true;
+            }
+
+            // The slot is now empty
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] smaller = new Object[array.length - 2];
+            System.arraycopy(array, 0, smaller, 0, index);
+            System.arraycopy(array, index + 2, smaller, index, array.length - index - 2);
+            BitmapNode node = editable(edit);
+            node.bitmap &= ~bit;
+            node.array = smaller;
+            return node;
+        }
+
+        @Override
+        void forEach(Consumer<Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        Object[] pairs() {
+            return array;
+        }
+
+        /**
+         * @return This node if the edit copied it, otherwise a copy owned by the edit.
+         */
+        private BitmapNode editable(Object edit) {
+            return this.edit == edit ? this : new BitmapNode(edit, bitmap, array.clone());
+        }
+
+        private BitmapNode set(Object edit, int index, Object value) {
+            BitmapNode node = editable(edit);
+            node.array[index] = value;
+            return node;
+        }
+    }
+
+    /**
+     * A node for symbols whose whole hashes are equal.
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, String symbol) {
+            int index = indexOf(symbol);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, String symbol, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Nest this node under a bitmap node that can tell the hashes apart
+                int bit = 1 << ((this.hash >>> shift) & 31);
+                return new BitmapNode(edit, bit, new Object[]{null, this}).put(edit, shift, hash, symbol, value, added);
+            }
+            int index = indexOf(symbol);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                CollisionNode node = editable(edit);
+                node.array[index + 1] = value;
+                return node;
+            }
+            added[0] = true;
+            Object[] grown = Arrays.copyOf(array, array.length + 2);
+            grown[array.length] = symbol;
+            grown[array.length + 1] = value;
+            CollisionNode node = editable(edit);
+            node.array = grown;
+            return node;
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, String symbol, boolean[] removed) {
+            int index = indexOf(symbol);
+            if (index < 0) {
+                return this;
+            }
+            removed[0] = true;
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] smaller = new Object[array.length - 2];
+            System.arraycopy(array, 0, smaller, 0, index);
+            System.arraycopy(array, index + 2, smaller, index, array.length - index - 2);
+            CollisionNode node = editable(edit);
+            node.array = smaller;
+            return node;
+        }
+
+        @Override
+        void forEach(Consumer<Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i + 1]);
+            }
+        }
+
+        @Override
+        Object[] pairs() {
+            return array;
+        }
+
+        private int indexOf(String symbol) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (symbol.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private CollisionNode editable(Object edit) {
+            return this.edit == edit ? this : new CollisionNode(edit, hash, array.clone());
+        }
+    }
+
+    /**
+     * Walks the values of a range of slots of one node, descending into the children it meets.
+     * Splitting halves the range of slots, or, when only a child is left, moves down into the child,
+     * so the parts are whole subtrees and no values are copied.
+     */
+    private static final class NodeSpliterator<V> implements Spliterator<V> {
+        /** The pairs of the node being walked, and the range of them left. */
+        private Object[] array;
+        private int index;
+        private int end;
+
+        /** The ranges of the parent nodes still to walk once the current node is done, as {array, index, end}. */
+        private final ArrayDeque<Object[]> parents = new ArrayDeque<>();
+
+        /** The number of values left, halved on each split, as the trie is about evenly filled. */
+        private long estimate;
+
+        NodeSpliterator(Object[] array, long estimate) {
+            this(array, 0, array.length, estimate);
+        }
+
+        private NodeSpliterator(Object[] array, int index, int end, long estimate) {
+            this.array = array;
+            this.index = index;
+            this.end = end;
+            this.estimate = estimate;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (true) {
+                while (index < end) {
+                    Object key = array[index];
+                    Object value = array[index + 1];
+                    index += 2;
+                    if (key != null) {
+                        action.accept((V) value);
+                        return true;
+                    }
+                    // Walk the child, then come back to the rest of this node
+                    parents.push(new Object[]{array, index, end});
+                    array = ((Node) value).pairs();
+                    index = 0;
+                    end = array.length;
+                }
+                if (parents.isEmpty()) {
+                    return false;
+                }
+                Object[] parent = parents.pop();
+                array = (Object[]) parent[0];
+                index = (Integer) parent[1];
+                end = (Integer) parent[2];
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            Consumer<Object> values = (Consumer<Object>) action;
+            while (true) {
+                for (; index < end; index += 2) {
+                    if (array[index] == null) {
+                        ((Node) array[index + 1]).forEach(values);
+                    } else {
+                        values.accept(array[index + 1]);
+                    }
+                }
+                if (parents.isEmpty()) {
+                    return;
+                }
+                Object[] parent = parents.pop();
+                array = (Object[]) parent[0];
+                index = (Integer) parent[1];
+                end = (Integer) parent[2];
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            if (!parents.isEmpty()) {
+                // Already part way down a subtree
+                return null;
+            }
+            // A single child left is split by moving down into it
+            while (end - index == 2 && array[index] == null) {
+                array = ((Node) array[index + 1]).pairs();
+                index = 0;
+                end = array.length;
+            }
+            int pairs = (end - index) / 2;
+            if (pairs < 2) {
+                return null;
+            }
+            int middle = index + 2 * (pairs / 2);
+            Spliterator<V> prefix = new NodeSpliterator<>(array, index, middle, estimate - estimate / 2);
+            index = middle;
+            estimate /= 2;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Creates the node holding two symbols that shared a slot one level up.
+     */
+    private static Node pair(Object edit, int shift, String symbol1, Object value1, int hash2, String symbol2, Object value2) {
+        int hash1 = hash(symbol1);
+        if (hash1 == hash2) {
+            return new CollisionNode(edit, hash1, new Object[]{symbol1, value1, symbol2, value2});
+        }
+        boolean[] added = new boolean[1];
+        return new BitmapNode(edit, 0, new Object[0])
+                .put(edit, shift, hash1, symbol1, value1, added)
+                .put(edit, shift, hash2, symbol2, value2, added);
+    }
+}
@@ -0,0 +1,171 @@
+package quoc_a3.ePortfolio;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class is the dictionary of every investment symbol the application has seen. The first time a
+ * symbol is seen, its {@link Holdings#normalize(String) normalized} form is given the next dense int id,
+ * starting at 0, so investments refer to their symbol by id and the holdings index positions by id in
+ * plain arrays. Comparing two symbols is then an int comparison, and each symbol's String is kept once,
+ * however many positions, lots, and snapshot copies refer to it.
+ *
+ * The table is shared by the whole application and ids are never reused, so an id means the same symbol
+ * in every holdings, snapshot, and thread. The ids are kept in an open-addressing table of ints rather
+ * than a map of boxed Integers, so a symbol costs about 16 bytes of table space. Any thread may look up
+ * symbols without locking; adding a symbol takes a short lock.
+ */
+public final class SymbolTable {
+
+    /** The table read by lookups; replaced by a larger copy as symbols are added. */
+    private static volatile Table table = new Table(1024);
+
+    /** Number of symbols added; only read and written while holding the class lock. */
+    private static int size;
+
+    private SymbolTable() {
+    }
+
+    /**
+     * Finds the id of a symbol, giving it the next id if it has not been seen before.
+     *
+     * @param symbol The symbol, in any letter case and with any surrounding whitespace.
+     * @return The symbol's id.
+     */
+    public static int id(String symbol) {
+        String key = Holdings.normalize(symbol);
+        int id = table.find(key);
+        return id >= 0 ? id : add(key, symbol.trim());
+    }
+
+    /**
+     * Finds the id of a symbol without adding it.
+     *
+     * @param symbol The symbol, in any letter case and with any surrounding whitespace.
+     * @return The symbol's id, or -1 if it has never been seen.
+     */
+    public static int find(String symbol) {
+        String key = Holdings.normalize(symbol);
+        while (true) {
+            Table current = table;
+            int id = current.find(key);
+            // A miss is final unless the table grew meanwhile, in which case the symbol may only be in the newer table
+            if (id >= 0 || current == table) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @param id A symbol id.
+     * @return The symbol as it was spelled the first time it was seen, for display.
+     */
+    public static String symbol(int id) {
+        return table.symbols[id];
+    }
+
+    /**
+     * @param id A symbol id.
+     * @return The normalized symbol, as used for keys in files and maps.
+     */
+    public static String key(int id) {
+        return table.keys[id];
+    }
+
+    /**
+     * @return The number of symbols seen, which is one more than the largest id.
+     */
+    public static synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds a symbol under the lock, unless another thread added it first.
+     */
+    private static synchronized int add(String key, String spelling) {
+        Table current = table;
+        int id = current.find(key);
+        if (id >= 0) {
+            return id;
+        }
+        id = size;
+        if (id == current.keys.length) {
+            current = current.grow();
+            table = current;
+        }
+        current.keys[id] = key;
+        current.symbols[id] = spelling.equals(key) ? key : spelling;
+        // The slot is written last, so a lookup that finds the id also sees its Strings
+        current.insert(key, id);
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * The Strings of every symbol by id, and an open-addressing hash table from symbol to id that
+     * is never more than half full.
+     */
+    private static class Table {
+        /** Each slot holds a symbol id plus one, or 0 if the slot is empty. */
+        private final AtomicIntegerArray slots;
+
+        /** Number of bits of a slot index, which is taken from the top bits of the multiplied hash. */
+        private final int bits;
+        private final String[] keys;
+        private final String[] symbols;
+
+        private Table(int capacity) {
+            this(new String[capacity], new String[capacity]);
+        }
+
+        private Table(String[] keys, String[] symbols) {
+            this.slots = new AtomicIntegerArray(keys.length * 2);
+            this.bits = Integer.numberOfTrailingZeros(keys.length * 2);
+            this.keys = keys;
+            this.symbols = symbols;
+        }
+
+        private int find(String key) {
+            int mask = slots.length() - 1;
+            int slot = slot(key);
+            int entry;
+            while ((entry = slots.get(slot)) != 0) {
+                if (keys[entry - 1].equals(key)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void insert(String key, int id) {
+            int mask = slots.length() - 1;
+            int slot = slot(key);
+            while (slots.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.set(slot, id + 1);
+        }
+
+        /**
+         * @return A copy of the table with twice the capacity, holding the same symbols.
+         */
+        private Table grow() {
+            int capacity = keys.length * 2;
+            Table larger = new Table(Arrays.copyOf(keys, capacity), Arrays.copyOf(symbols, capacity));
+            for (int id = 0; id < keys.length; id++) {
+                larger.insert(keys[id], id);
+            }
+            return larger;
+        }
+
+        /**
+         * Finds the first slot to probe for a symbol. Symbols such as S000001, S000002, ... have
+         * consecutive String hash codes, which would fill runs of adjacent slots and make every
+         * probe walk the run, so the hash is multiplied by a large odd constant and the top bits used.
+         */
+        private int slot(String key) {
+            return (key.hashCode() * 0x9E3779B9) >>> (32 - bits);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class is a prefix trie over the normalized symbols of the held positions, mapping each symbol to
+ * its symbol id. It finds the symbols that start with what the user has typed so far, in symbol order,
+ * without looking at any other symbol, and the symbols within a few typing mistakes of it by walking
+ * only the branches that can still be within that many edits.
+ *
+ * Both searches are lazy iterators that find the next match only when asked, so the first page of
+ * results costs the same in a portfolio of a hundred symbols as in one of millions. They can also start
+ * after a given symbol, so a search can be continued page by page even if the trie changed in between.
+ * Like the holdings, the trie is only used on the thread that changes the holdings, and an iterator must
+ * not be used after the trie changes.
+ */
+class SymbolTrie {
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Adds a symbol.
+     *
+     * @param key The normalized symbol.
+     * @param symbolId The symbol's id.
+     */
+    void add(String key, int symbolId) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrAdd(key.charAt(i));
+        }
+        if (node.symbolId < 0) {
+            size++;
+        }
+        node.symbolId = symbolId;
+    }
+
+    /**
+     * Removes a symbol, along with the nodes no other symbol goes through.
+     *
+     * @param key The normalized symbol.
+     */
+    void remove(String key) {
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        if (path[key.length()].symbolId < 0) {
+            return;
+        }
+        path[key.length()].symbolId = -1;
+        size--;
+        for (int i = key.length(); i > 0 && path[i].symbolId < 0 && path[i].count == 0; i--) {
+            path[i - 1].removeChild(key.charAt(i - 1));
+        }
+    }
+
+    /**
+     * @return The number of symbols.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the symbols that start with a prefix, in symbol order.
+     *
+     * @param prefix The normalized prefix; empty for every symbol.
+     * @param after The normalized symbol to start after, or null to start at the first match.
+     * @return The ids of the matching symbols.
+     */
+    PrimitiveIterator.OfInt prefix(String prefix, String after) {
+        return new PrimitiveIterator.OfInt() {
+            private String last = after;
+            private int next = -2;
+
+            @Override
+            public boolean hasNext() {
+                if (next == -2) {
+                    // Symbols with the prefix are consecutive in symbol order, so the next one is the next symbol
+                    next = last == null || last.compareTo(prefix) < 0 ? higher(prefix, true) : higher(last, false);
+                    if (next >= 0 && !SymbolTable.key(next).startsWith(prefix)) {
+                        next = -1;
+                    }
+                }
+                return next >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int symbolId = next;
+                last = SymbolTable.key(symbolId);
+                next = -2;
+                return symbolId;
+            }
+        };
+    }
+
+    /**
+     * Finds the symbols within a number of edits of a query, in symbol order. An edit inserts, deletes,
+     * or replaces one character, or swaps two adjacent ones. A branch is left as soon as every way of
+     * reaching it takes more edits than allowed, so only a small part of the trie is walked.
+     *
+     * @param query The normalized query.
+     * @param maxEdits The most edits a match may be from the query.
+     * @param after The normalized symbol to start after, or null to start at the first match.
+     * @return The ids of the matching symbols.
+     */
+    PrimitiveIterator.OfInt fuzzy(String query, int maxEdits, String after) {
+        return new FuzzyIterator(query, maxEdits, after);
+    }
+
+    /**
+     * Finds the smallest symbol after a key.
+     *
+     * @param key The key to start from.
+     * @param inclusive Whether the key itself may be returned.
+     * @return The id of the smallest symbol greater than the key, or equal to it if inclusive, or -1 if none is.
+     */
+    private int higher(String key, boolean inclusive) {
+        // Follow the key down as far as it goes, remembering each node passed through
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            Node child = path[depth].child(key.charAt(depth));
+            if (child == null) {
+                break;
+            }
+            path[++depth] = child;
+        }
+
+        // The key itself, then anything below it, is larger than every symbol it is a prefix of
+        if (depth == key.length()) {
+            if (inclusive && path[depth].symbolId >= 0) {
+                return path[depth].symbolId;
+            }
+            if (path[depth].count > 0) {
+                return first(path[depth].children[0]);
+            }
+        } else {
+            // The key leaves the trie here, so the next symbol is below the next larger child
+            int index = path[depth].insertionPoint(key.charAt(depth));
+            if (index < path[depth].count) {
+                return first(path[depth].children[index]);
+            }
+        }
+
+        // Otherwise back up to the nearest node with a larger child than the one the key went through
+        while (depth > 0) {
+            int index = path[depth - 1].indexOf(key.charAt(depth - 1)) + 1;
+            depth--;
+            if (index < path[depth].count) {
+                return first(path[depth].children[index]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The id of the smallest symbol at or below a node, which always holds one.
+     */
+    private static int first(Node node) {
+        while (node.symbolId < 0) {
+            node = node.children[0];
+        }
+        return node.symbolId;
+    }
+
+    /**
+     * A node of the trie, with its children sorted by character.
+     */
+    private static final class Node {
+        /** Shared by every node without children, which is most of them. */
+        private static final char[] NO_LABELS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private int count;
+
+        /** The id of the symbol that ends here, or -1 if none does. */
+        private int symbolId = -1;
+
+        private int indexOf(char c) {
+            return Arrays.binarySearch(labels, 0, count, c);
+        }
+
+        private int insertionPoint(char c) {
+            int index = indexOf(c);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        private Node child(char c) {
+            int index = indexOf(c);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node childOrAdd(char c) {
+            int index = indexOf(c);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(2, count * 2));
+                children = Arrays.copyOf(children, labels.length);
+            }
+            System.arraycopy(labels, index, labels, index + 1, count - index);
+            System.arraycopy(children, index, children, index + 1, count - index);
+            labels[index] = c;
+            children[index] = new Node();
+            count++;
+            return children[index];
+        }
+
+        private void removeChild(char c) {
+            int index = indexOf(c);
+            System.arraycopy(labels, index + 1, labels, index, count - index - 1);
+            System.arraycopy(children, index + 1, children, index, count - index - 1);
+            children[--count] = null;
+        }
+    }
+
+    /**
+     * Walks the trie depth first in symbol order, keeping for each node on the path the row of edit
+     * distances between the query's prefixes and the node's symbol prefix, as in the Levenshtein
+     * table, plus the row of its parent for swapped characters.
+     */
+    private final class FuzzyIterator implements PrimitiveIterator.OfInt {
+        private final String query;
+        private final int maxEdits;
+        private final String after;
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        private int next = -1;
+
+        private FuzzyIterator(String query, int maxEdits, String after) {
+            this.query = query;
+            this.maxEdits = maxEdits;
+            this.after = after;
+            int[] row = new int[query.length() + 1];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = i;
+            }
+            stack.push(new Frame(root, "", row, null, (char) 0));
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            int symbolId = next;
+            advance();
+            return symbolId;
+        }
+
+        /**
+         * Walks on to the next match, visiting a node's own symbol before its children.
+         */
+        private void advance() {
+            next = -1;
+            while (!stack.isEmpty()) {
+                Frame frame = stack.pop();
+                Node node = frame.node;
+
+                // Push the children that can still match, largest first so the smallest is visited next
+                for (int i = node.count - 1; i >= 0; i--) {
+                    String path = frame.path + node.labels[i];
+                    // A branch whose symbols all come before the starting point is skipped
+                    if (after != null && path.compareTo(after) < 0 && !after.startsWith(path)) {
+                        continue;
+                    }
+                    int[] row = nextRow(frame, node.labels[i]);
+                    if (min(row) <= maxEdits) {
+                        stack.push(new Frame(node.children[i], path, row, frame.row, node.labels[i]));
+                    }
+                }
+                if (node.symbolId >= 0 && frame.row[query.length()] <= maxEdits
+                        && (after == null || frame.path.compareTo(after) > 0)) {
+                    next = node.symbolId;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Computes the distances for a child of a node, reached by adding one character.
+         */
+        private int[] nextRow(Frame frame, char c) {
+            int[] previous = frame.row;
+            int[] row = new int[previous.length];
+            row[0] = previous[0] + 1;
+            for (int i = 1; i < row.length; i++) {
+                char q = query.charAt(i - 1);
+                int cost = q == c ? 0 : 1;
+                row[i] = Math.min(Math.min(row[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                if (frame.parentRow != null && i > 1 && q == frame.label && query.charAt(i - 2) == c) {
+                    row[i] = Math.min(row[i], frame.parentRow[i - 2] + 1);
+                }
+            }
+            return row;
+        }
+
+        private int min(int[] row) {
+            int min = row[0];
+            for (int value : row) {
+                min = Math.min(min, value);
+            }
+            return min;
+        }
+    }
+
+    /**
+     * A node on the fuzzy walk's path, with its symbol prefix and its row of edit distances.
+     */
+    private static final class Frame {
+        private final Node node;
+        private final String path;
+        private final int[] row;
+        private final int[] parentRow;
+
+        /** The character that led to the node. */
+        private final char label;
+
+        private Frame(Node node, String path, int[] row, int[] parentRow, char label) {
+            this.node = node;
+            this.path = path;
+            this.row = row;
+            this.parentRow = parentRow;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package quoc_a3.ePortfolio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class generates random-walk price quotes for a set of symbols on several threads at once,
+ * to drive a {@link PriceFeed} without a real market connection.
+ *
+ * Run it on its own to measure how many quotes per second the feed sustains:
+ * <pre>
+ * java quoc_a3.ePortfolio.SyntheticFeed [threads] [symbols] [seconds]
+ * </pre>
+ */
+public class SyntheticFeed {
+
+    private final PriceFeed feed;
+    private final List<PriceFeed.Quote> quotes;
+    private final double[] startPrices;
+    private final int threadCount;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * Creates a generator for the given symbols.
+     *
+     * @param feed The feed to publish quotes to.
+     * @param symbols The symbols to quote.
+     * @param startPrices The price each symbol's random walk starts from.
+     * @param threadCount The number of threads publishing quotes.
+     */
+    public SyntheticFeed(PriceFeed feed, List<String> symbols, double[] startPrices, int threadCount) {
+        this.feed = feed;
+        this.quotes = new ArrayList<>();
+        for (String symbol : symbols) {
+            quotes.add(feed.quote(symbol));
+        }
+        this.startPrices = startPrices.clone();
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Starts the publishing threads. Each thread walks the prices of its own share of the symbols,
+     * but quotes every symbol, so every symbol receives quotes from several threads at once.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(this::publishQuotes, "synthetic-feed-" + t);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the publishing threads and waits for them to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+    }
+
+    private void publishQuotes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double[] prices = startPrices.clone();
+        int count = quotes.size();
+        while (running) {
+            // Publish in bursts so the running flag is not read on every quote
+            for (int i = 0; i < 1024; i++) {
+                int index = random.nextInt(count);
+                double price = prices[index] * (1 + (random.nextDouble() - 0.5) * 0.002);
+                prices[index] = Math.max(price, 0.01);
+                quotes.get(index).publish(prices[index]);
+            }
+        }
+    }
+
+    /**
+     * Publishes quotes for a number of seconds while one thread applies them to a portfolio,
+     * then prints the throughput.
+     *
+     * @param args The number of threads, the number of symbols, and the number of seconds to run.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int symbolCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        // Hold every symbol so each applied quote updates an investment
+        Holdings holdings = new Holdings();
+        List<String> symbols = new ArrayList<>();
+        double[] startPrices = new double[symbolCount];
+        for (int i = 0; i < symbolCount; i++) {
+            String symbol = "SYM" + i;
+            symbols.add(symbol);
+            startPrices[i] = 10 + i % 500;
+            holdings.buy(i % 2 == 0 ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND, symbol, "Synthetic " + i, 100, startPrices[i]);
+        }
+
+        PriceFeed feed = new PriceFeed();
+        SyntheticFeed generator = new SyntheticFeed(feed, symbols, startPrices, threadCount);
+        long applied = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        generator.start();
+
+        // The main thread plays the part of the portfolio worker
+        while (System.nanoTime() < end) {
+            applied += feed.applyTo(holdings);
+            Thread.sleep(10);
+        }
+        generator.stop();
+        applied += feed.applyTo(holdings);
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d threads, %d symbols: %,d quotes in %.1f s (%,.0f quotes/s), %,d applied%n",
+                threadCount, symbolCount, feed.getPublished(), elapsed, feed.getPublished() / elapsed, applied);
+        System.out.printf("Total gain: %.2f%n", holdings.getTotals().getGain());
+    }
+}
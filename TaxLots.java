@@ -0,0 +1,211 @@
+package quoc_a3.ePortfolio;
+
+/**
+ * This class keeps the purchase lots of one position, oldest first, so that a sale can relieve
+ * the cost of the units it sells.
+ *
+ * The lots are kept in a ring buffer of two primitive arrays, one for the quantities and one for
+ * the total cost of each lot in {@link Money} units, so a position bought thousands of times costs
+ * 12 bytes per lot and the costs relieved always add up exactly to the book value.
+ * Buying appends a lot at the tail. A first-in, first-out sale takes units from the head and only
+ * visits the lots it consumes, plus the one it leaves partly sold. An average cost sale first pools
+ * every lot into one at their average cost, which visits each lot at most once over the life of the
+ * position; after that the position has a single lot and every average cost sale takes constant time.
+ */
+public class TaxLots {
+
+    /**
+     * The ways a sale can choose which units it sells.
+     */
+    public enum Method {
+        /** Sell the units of the oldest lots first. */
+        FIFO,
+        /** Sell units at the average cost of every unit held. */
+        AVERAGE
+    }
+
+    private int[] quantities;
+    private long[] costs;
+
+    /** Index of the oldest lot. */
+    private int head;
+
+    /** Number of lots held. */
+    private int size;
+
+    /** Number of units held in every lot. */
+    private long quantity;
+
+    /**
+     * Creates the lots of a position with its first lot.
+     *
+     * @param quantity The number of units in the lot.
+     * @param cost The total cost of the lot, in units.
+     */
+    public TaxLots(int quantity, long cost) {
+        quantities = new int[4];
+        costs = new long[4];
+        add(quantity, cost);
+    }
+
+    /**
+     * Adds a newer lot.
+     *
+     * @param quantity The number of units in the lot.
+     * @param cost The total cost of the lot, in units.
+     */
+    public void add(int quantity, long cost) {
+        if (quantity <= 0) {
+            return;
+        }
+        if (size == quantities.length) {
+            grow();
+        }
+        int tail = (head + size) & (quantities.length - 1);
+        quantities[tail] = quantity;
+        costs[tail] = cost;
+        size++;
+        this.quantity += quantity;
+    }
+
+    /**
+     * Removes the cost of sold units from the lots.
+     *
+     * @param sold The number of units sold; at least 1 and at most the number of units held.
+     * @param method How the units sold are chosen.
+     * @return The total cost of the units sold, in units.
+     * @throws IllegalArgumentException If no units, or more units than are held, are sold.
+     */
+    public long relieve(int sold, Method method) {
+        checkSold(sold);
+        if (method == Method.AVERAGE) {
+            pool();
+        }
+
+        long relieved = 0;
+        int remaining = sold;
+        int mask = quantities.length - 1;
+        while (remaining > 0) {
+            if (quantities[head] <= remaining) {
+                // Consume the whole oldest lot
+                remaining -= quantities[head];
+                relieved += costs[head];
+                quantity -= quantities[head];
+                head = (head + 1) & mask;
+                size--;
+            } else {
+                // Sell part of the oldest lot at its cost per unit
+                long cost = Money.share(costs[head], remaining, quantities[head]);
+                quantities[head] -= remaining;
+                costs[head] -= cost;
+                quantity -= remaining;
+                relieved += cost;
+                remaining = 0;
+            }
+        }
+        return relieved;
+    }
+
+    /**
+     * Works out the cost relieve would return for sold units without removing them, so a sale can be
+     * checked before it changes anything.
+     *
+     * @param sold The number of units sold; at least 1 and at most the number of units held.
+     * @param method How the units sold are chosen.
+     * @return The total cost of the units sold, in units.
+     * @throws IllegalArgumentException If no units, or more units than are held, are sold.
+     */
+    public long cost(int sold, Method method) {
+        checkSold(sold);
+        if (method == Method.AVERAGE && size > 1) {
+            // The cost relieve takes from the pooled lot
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total += getCost(i);
+            }
+            return Money.share(total, sold, quantity);
+        }
+
+        long cost = 0;
+        int remaining = sold;
+        for (int lot = 0; remaining > 0; lot++) {
+            int lotQuantity = getQuantity(lot);
+            if (lotQuantity <= remaining) {
+                remaining -= lotQuantity;
+                cost += getCost(lot);
+            } else {
+                cost += Money.share(getCost(lot), remaining, lotQuantity);
+                remaining = 0;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * @throws IllegalArgumentException If no units, or more units than are held, are sold.
+     */
+    private void checkSold(int sold) {
+        if (sold <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than 0.");
+        }
+        if (sold > quantity) {
+            throw new IllegalArgumentException("Not enough quantity to sell.");
+        }
+    }
+
+    /**
+     * @return The number of lots held.
+     */
+    public int getLotCount() {
+        return size;
+    }
+
+    /**
+     * @param lot The lot's position, 0 for the oldest.
+     * @return The number of units in the lot.
+     */
+    public int getQuantity(int lot) {
+        return quantities[(head + lot) & (quantities.length - 1)];
+    }
+
+    /**
+     * @param lot The lot's position, 0 for the oldest.
+     * @return The total cost of the lot, in units.
+     */
+    public long getCost(int lot) {
+        return costs[(head + lot) & (quantities.length - 1)];
+    }
+
+    /**
+     * Replaces every lot with one lot holding all the units at their total cost.
+     */
+    private void pool() {
+        if (size <= 1) {
+            return;
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += getCost(i);
+        }
+        head = 0;
+        size = 1;
+        quantities[0] = (int) quantity;
+        costs[0] = total;
+    }
+
+    /**
+     * Doubles the capacity, moving the lots to the start of the new arrays. The capacity is kept a
+     * power of two so positions wrap with a mask.
+     */
+    private void grow() {
+        int[] newQuantities = new int[quantities.length * 2];
+        long[] newCosts = new long[costs.length * 2];
+        for (int i = 0; i < size; i++) {
+            newQuantities[i] = getQuantity(i);
+            newCosts[i] = getCost(i);
+        }
+        quantities = newQuantities;
+        costs = newCosts;
+        head = 0;
+    }
+}
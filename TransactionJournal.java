@@ -0,0 +1,556 @@
+package quoc_a3.ePortfolio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a crash-safe record of every change made to the portfolio.
+ *
+ * Each buy, sell, and price update is appended to a journal file as a small binary record with a
+ * sequence number and a checksum. Records are written by a background thread that collects every
+ * record waiting at the time and forces them to disk together, so many changes share one fsync.
+ * Every {@value #SNAPSHOT_INTERVAL} records, and when the application quits, the whole portfolio is
+ * written to a snapshot file and the journal is emptied. On startup the latest snapshot is loaded and
+ * only the journal records written after it are replayed.
+ *
+ * For a data file named data.txt, the journal is data.txt.journal and the snapshot is data.txt.snapshot.
+ */
+public class TransactionJournal implements Closeable {
+
+    /** Number of journal records written between automatic snapshots. */
+    public static final int SNAPSHOT_INTERVAL = 10_000;
+
+    /** Longest record read back; a longer length can only come from a torn or corrupt record. */
+    static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static final byte BUY = 1;
+    private static final byte SELL = 2;
+    private static final byte UPDATE = 3;
+
+    private static final byte STOCK = 1;
+    private static final byte MUTUAL_FUND = 2;
+
+    /** Starts a snapshot, which stores each position's purchase lots and the realized gains as exact {@link Money} units. */
+    private static final int SNAPSHOT_MAGIC = 0x65504631;
+
+    /** Queue item that stops the writer thread. */
+    private static final Object CLOSE = new Object();
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final Holdings holdings;
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    /** Sequence number of the last record logged. */
+    private long sequence;
+
+    /** Records logged since the last snapshot was taken. */
+    private int sinceSnapshot;
+
+    /** The first write error, reported by later calls. */
+    private volatile IOException failure;
+
+    /** Whether the write error has been reported yet, only used on the thread that logs changes. */
+    private boolean failureReported;
+
+    /**
+     * A snapshot waiting to be written by the writer thread.
+     */
+    private static class Snapshot {
+        private final byte[] data;
+
+        private Snapshot(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * The result of replaying a journal.
+     */
+    public static class Recovery {
+        /** Sequence number of the last record replayed. */
+        public final long sequence;
+
+        /** Number of records replayed. */
+        public final int replayed;
+
+        /** Number of records that no longer applied, such as a sale of a symbol no longer held. */
+        public final int rejected;
+
+        /** Length of the journal up to the end of its last complete record. */
+        private final long validLength;
+
+        private Recovery(long sequence, int replayed, int rejected, long validLength) {
+            this.sequence = sequence;
+            this.replayed = replayed;
+            this.rejected = rejected;
+            this.validLength = validLength;
+        }
+    }
+
+    private TransactionJournal(Path dataFile, Holdings holdings, long sequence) throws IOException {
+        this.journalFile = journalFile(dataFile);
+        this.snapshotFile = snapshotFile(dataFile);
+        this.holdings = holdings;
+        this.sequence = sequence;
+        this.channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.writer = new Thread(this::writeRecords, "portfolio-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the journal for appending and starts recording the changes made to the holdings.
+     *
+     * @param dataFile The portfolio data file the journal belongs to.
+     * @param holdings The holdings to record and snapshot.
+     * @param recovery The result of replaying the existing journal, so new records continue its sequence.
+     * @return The open journal.
+     * @throws IOException If the journal file can not be opened.
+     */
+    public static TransactionJournal open(Path dataFile, Holdings holdings, Recovery recovery) throws IOException {
+        TransactionJournal journal = new TransactionJournal(dataFile, holdings, recovery.sequence);
+
+        // Drop a record torn by a crash, so new records are not appended after it
+        if (journal.channel.size() > recovery.validLength) {
+            journal.channel.truncate(recovery.validLength);
+        }
+        holdings.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * @param dataFile The portfolio data file.
+     * @return True if a snapshot has been taken for the data file.
+     */
+    public static boolean hasSnapshot(Path dataFile) {
+        return Files.exists(snapshotFile(dataFile));
+    }
+
+    /**
+     * Reads the investments stored in the latest snapshot. A position with several purchase lots is
+     * read as one investment per lot, oldest first, which adding to the holdings merges back into
+     * the same lots.
+     *
+     * @param dataFile The portfolio data file the snapshot belongs to.
+     * @param holdings Receives the realized gains stored in the snapshot.
+     * @param listener Receives each investment in the snapshot.
+     * @return The sequence number of the last journal record included in the snapshot.
+     * @throws IOException If the snapshot can not be read.
+     */
+    public static long readSnapshot(Path dataFile, Holdings holdings, PortfolioLoader.Listener listener) throws IOException {
+        Path file = snapshotFile(dataFile);
+        long size = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a portfolio snapshot.");
+            }
+            long sequence = in.readLong();
+            holdings.addRealizedGain(InvestmentType.STOCK, in.readLong());
+            holdings.addRealizedGain(InvestmentType.MUTUAL_FUND, in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                InvestmentType type = readType(in);
+                int symbolId = SymbolTable.id(readString(in));
+                String name = readString(in);
+                long price = in.readLong();
+                int lotCount = in.readInt();
+                for (int lot = 0; lot < lotCount; lot++) {
+                    listener.loaded(0, new Investment(type, symbolId, name, in.readInt(), price, in.readLong()));
+                }
+                if (i % 10_000 == 0) {
+                    listener.progress((long) i * size / Math.max(count, 1), size);
+                }
+            }
+            listener.progress(size, size);
+            return sequence;
+        }
+    }
+
+    /**
+     * Applies every journal record written after a snapshot to the holdings, using the same
+     * buy, sell, and price update logic as the user. Replay stops at the first incomplete or
+     * corrupt record, which is what a crash in the middle of a write leaves behind.
+     *
+     * @param dataFile The portfolio data file the journal belongs to.
+     * @param holdings The holdings to apply the records to; it must not be journaled yet.
+     * @param afterSequence The sequence number of the last record already included in the holdings.
+     * @return The result of the replay.
+     * @throws IOException If the journal can not be read.
+     */
+    public static Recovery replay(Path dataFile, Holdings holdings, long afterSequence) throws IOException {
+        Path file = journalFile(dataFile);
+        long sequence = afterSequence;
+        int replayed = 0;
+        int rejected = 0;
+        long validLength = 0;
+        if (!Files.exists(file)) {
+            return new Recovery(sequence, replayed, rejected, validLength);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload = readRecord(in, crc);
+                if (payload == null) {
+                    break;
+                }
+                validLength += 8 + payload.length;
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte operation = record.readByte();
+                long recordSequence = record.readLong();
+                if (recordSequence <= afterSequence) {
+                    // Already included in the snapshot
+                    continue;
+                }
+                sequence = recordSequence;
+                replayed++;
+
+                try {
+                    switch (operation) {
+                        case BUY:
+                            holdings.buy(readType(record), readString(record), readString(record), record.readInt(), record.readDouble());
+                            break;
+                        case SELL:
+                            holdings.sell(readString(record), record.readInt(), TaxLots.Method.values()[record.readByte()]);
+                            break;
+                        case UPDATE:
+                            holdings.updatePrice(readString(record), record.readDouble());
+                            break;
+                        default:
+                            rejected++;
+                            break;
+                    }
+                } catch (IllegalArgumentException | IOException e) {
+                    // A record that does not parse or that the holdings refuse is skipped
+                    rejected++;
+                }
+            }
+        }
+        return new Recovery(sequence, replayed, rejected, validLength);
+    }
+
+    /**
+     * @return The byte that stands for an investment type in records and snapshots.
+     */
+    private static byte typeCode(InvestmentType type) {
+        switch (type) {
+            case STOCK:
+                return STOCK;
+            case MUTUAL_FUND:
+                return MUTUAL_FUND;
+            default:
+                throw new IllegalArgumentException("Unknown investment type: " + type);
+        }
+    }
+
+    /**
+     * Reads a byte written by typeCode.
+     */
+    private static InvestmentType readType(DataInputStream in) throws IOException {
+        byte code = in.readByte();
+        if (code == STOCK) {
+            return InvestmentType.STOCK;
+        } else if (code == MUTUAL_FUND) {
+            return InvestmentType.MUTUAL_FUND;
+        }
+        throw new IOException("Corrupt investment type " + code + ".");
+    }
+
+    /**
+     * Writes a String as its length in UTF-8 bytes followed by the bytes, so that a name of any length
+     * can be written, unlike with writeUTF, which is limited to 64 KB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt string length " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads one length-prefixed, checksummed record.
+     *
+     * @return The record's payload, or null at the end of the journal or at a torn or corrupt record.
+     */
+    private static byte[] readRecord(DataInputStream in, CRC32 crc) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records a purchase.
+     */
+    void logBuy(InvestmentType type, String symbol, String name, int quantity, double price) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = startRecord(bytes, BUY)) {
+            out.writeByte(typeCode(type));
+            writeString(out, symbol);
+            writeString(out, name);
+            out.writeInt(quantity);
+            out.writeDouble(price);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Records a sale.
+     */
+    void logSell(String symbol, int quantity, TaxLots.Method method) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = startRecord(bytes, SELL)) {
+            writeString(out, symbol);
+            out.writeInt(quantity);
+            out.writeByte(method.ordinal());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Records a price update.
+     */
+    void logUpdate(String symbol, double price) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = startRecord(bytes, UPDATE)) {
+            writeString(out, symbol);
+            out.writeDouble(price);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Takes a snapshot of the holdings. The holdings are copied on the calling thread, which must be
+     * the thread that changes them; the copy is written to disk by the writer thread, after every
+     * record logged before it, and the journal is emptied once the snapshot is safely on disk.
+     */
+    public void snapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + holdings.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeLong(holdings.getTotals().getRealizedGainUnits(InvestmentType.STOCK));
+            out.writeLong(holdings.getTotals().getRealizedGainUnits(InvestmentType.MUTUAL_FUND));
+            out.writeInt(holdings.size());
+            for (Investment investment : holdings.all()) {
+                out.writeByte(typeCode(investment.getInvestmentType()));
+                writeString(out, investment.getSymbol());
+                writeString(out, investment.getName());
+                out.writeLong(investment.getPriceUnits());
+
+                // Each purchase lot as its quantity and cost, oldest first
+                TaxLots lots = holdings.getLots(investment);
+                if (lots == null) {
+                    out.writeInt(1);
+                    out.writeInt(investment.getQuantity());
+                    out.writeLong(investment.getBookValueUnits());
+                } else {
+                    out.writeInt(lots.getLotCount());
+                    for (int lot = 0; lot < lots.getLotCount(); lot++) {
+                        out.writeInt(lots.getQuantity(lot));
+                        out.writeLong(lots.getCost(lot));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        sinceSnapshot = 0;
+        queue.add(new Snapshot(bytes.toByteArray()));
+    }
+
+    /**
+     * Writes every record still waiting, forces the journal to disk, and stops the writer thread.
+     *
+     * @throws IOException If a record could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        holdings.setJournal(null);
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Starts a record with its operation and the next sequence number.
+     */
+    private DataOutputStream startRecord(ByteArrayOutputStream bytes, byte operation) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(operation);
+        out.writeLong(++sequence);
+        return out;
+    }
+
+    /**
+     * Frames a record with its length and checksum and hands it to the writer thread.
+     */
+    private void append(byte[] payload) {
+        // Once writing has failed nothing more is written, so the failure is reported once and the record dropped
+        if (failure != null) {
+            if (!failureReported) {
+                failureReported = true;
+                System.err.println("Journal " + journalFile + " is not recording changes: " + failure);
+            }
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        queue.add(record);
+
+        if (++sinceSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    /**
+     * The writer thread's loop. Every record waiting in the queue is written in one batch and forced
+     * to disk with a single fsync; snapshots are written in queue order between batches.
+     */
+    private void writeRecords() {
+        ArrayList<Object> batch = new ArrayList<>();
+        ArrayList<ByteBuffer> records = new ArrayList<>();
+        try {
+            while (true) {
+                batch.clear();
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                for (Object item : batch) {
+                    if (item instanceof ByteBuffer) {
+                        records.add((ByteBuffer) item);
+                        continue;
+                    }
+
+                    // Records before a snapshot or close must be on disk first
+                    commit(records);
+                    if (item == CLOSE) {
+                        return;
+                    }
+                    writeSnapshot((Snapshot) item);
+                }
+                commit(records);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a batch of records and forces them to disk with one fsync.
+     */
+    private void commit(ArrayList<ByteBuffer> records) {
+        if (records.isEmpty() || failure != null) {
+            records.clear();
+            return;
+        }
+        try {
+            ByteBuffer[] buffers = records.toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+        }
+        records.clear();
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it to disk, and moves it into place. Every record
+     * in the journal is now included in the snapshot, so the journal is emptied.
+     */
+    private void writeSnapshot(Snapshot snapshot) {
+        if (failure != null) {
+            return;
+        }
+        Path temporary = Paths.get(snapshotFile + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                 BufferedOutputStream out = new BufferedOutputStream(file, 1 << 16)) {
+                out.write(snapshot.data);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.truncate(0);
+            channel.force(true);
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private static Path journalFile(Path dataFile) {
+        return Paths.get(dataFile + ".journal");
+    }
+
+    private static Path snapshotFile(Path dataFile) {
+        return Paths.get(dataFile + ".snapshot");
+    }
+}
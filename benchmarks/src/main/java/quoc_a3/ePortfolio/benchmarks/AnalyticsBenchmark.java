@@ -0,0 +1,98 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.Holdings;
+import quoc_a3.ePortfolio.Investment;
+import quoc_a3.ePortfolio.PortfolioAnalytics;
+import quoc_a3.ePortfolio.PortfolioSnapshot;
+
+/**
+ * Measures the full analytics recompute over a published snapshot, as the Analyze query runs it, and
+ * how it scales with the number of fork/join threads. A parallelism of 0 analyzes on the benchmark
+ * thread alone, as portfolios below the sequential threshold are. The same positions in an array are
+ * measured for comparison, since an array splits into exactly even halves and a snapshot's trie
+ * splits by subtree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g"})
+public class AnalyticsBenchmark {
+
+    /**
+     * The positions analyzed, both as a published snapshot and as an array.
+     */
+    @State(Scope.Benchmark)
+    public static class Positions {
+        @Param({"100000", "1000000", "10000000"})
+        public int size;
+
+        PortfolioSnapshot snapshot;
+        Investment[] array;
+
+        @Setup
+        public void setUp() {
+            Holdings holdings = PortfolioGenerator.holdings(size, PortfolioGenerator.Dataset.MIXED, PortfolioGenerator.SEED);
+            holdings.publish();
+            snapshot = holdings.getSnapshot();
+            array = holdings.all().toArray(new Investment[0]);
+        }
+    }
+
+    /**
+     * The fork/join pool analyzed on, or none for the benchmark thread alone.
+     */
+    @State(Scope.Benchmark)
+    public static class Pool {
+        @Param({"0", "1", "2", "4", "8"})
+        public int parallelism;
+
+        ForkJoinPool pool;
+
+        @Setup
+        public void setUp() {
+            pool = parallelism == 0 ? null : new ForkJoinPool(parallelism);
+        }
+
+        @TearDown
+        public void tearDown() {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The snapshot as the Analyze query analyzes it, on the common pool above the sequential threshold.
+     */
+    @Benchmark
+    public PortfolioAnalytics.Report analyze(Positions positions) {
+        return PortfolioAnalytics.analyze(positions.snapshot, 10);
+    }
+
+    @Benchmark
+    public PortfolioAnalytics.Report analyzeSnapshot(Positions positions, Pool pool) {
+        return PortfolioAnalytics.analyze(positions.snapshot, 10, pool.pool);
+    }
+
+    @Benchmark
+    public PortfolioAnalytics.Report analyzeArray(Positions positions, Pool pool) {
+        return PortfolioAnalytics.analyze(positions.array, 10, pool.pool);
+    }
+}
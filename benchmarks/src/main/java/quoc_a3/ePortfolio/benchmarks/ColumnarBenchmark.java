@@ -0,0 +1,132 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.Holdings;
+import quoc_a3.ePortfolio.Investment;
+
+/**
+ * Compares columnar holdings with holdings that keep an object per position, and with a plain
+ * ArrayList of the same investments: a scan of every position's gain, and one price update. Before
+ * each trial the heap the positions keep alive is measured as the heap a full collection frees once
+ * they are dropped, and printed with the bytes per position. Both kinds of holdings include their symbol, keyword, and price indexes,
+ * which the list does not have.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:+UseSerialGC"})
+public class ColumnarBenchmark {
+
+    /**
+     * How the positions are kept.
+     */
+    public enum Layout {
+        /** An ArrayList of Investment objects, with no indexes. */
+        LIST,
+        /** Holdings that keep an Investment object per position. */
+        OBJECTS,
+        /** Holdings that keep their positions in primitive columns. */
+        COLUMNAR
+    }
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"LIST", "OBJECTS", "COLUMNAR"})
+    public Layout layout;
+
+    private List<Investment> list;
+    private Holdings holdings;
+    private String[] symbols;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        symbols = PortfolioGenerator.randomSymbols(size, 1 << 16, PortfolioGenerator.SEED);
+
+        // Measure a copy by how much heap is freed when it is dropped, then keep another one; a first
+        // copy is built and dropped before, so whatever building leaves behind is not counted
+        long retained = 0;
+        for (int i = 0; i < 2; i++) {
+            build();
+            long kept = usedHeap();
+            list = null;
+            holdings = null;
+            retained = kept - usedHeap();
+        }
+        System.out.printf("%n%s keeps %,d positions in %,d bytes: %.1f bytes per position%n", layout, size,
+                retained, (double) retained / size);
+        build();
+    }
+
+    private void build() {
+        List<Investment> investments = PortfolioGenerator.investments(size, PortfolioGenerator.Dataset.MIXED,
+                PortfolioGenerator.SEED);
+        if (layout == Layout.LIST) {
+            list = new ArrayList<>(investments);
+        } else {
+            holdings = layout == Layout.COLUMNAR ? Holdings.columnar() : new Holdings();
+            for (Investment investment : investments) {
+                holdings.add(investment);
+            }
+        }
+    }
+
+    /**
+     * The total gain of every position, read one position at a time.
+     */
+    @Benchmark
+    public long scan() {
+        long gain = 0;
+        for (Investment investment : layout == Layout.LIST ? list : holdings.all()) {
+            gain += investment.calculateGainUnits();
+        }
+        return gain;
+    }
+
+    /**
+     * One price update, through the holdings, or on the list's investment directly.
+     */
+    @Benchmark
+    public Object updatePrice() {
+        int i = next++ & (symbols.length - 1);
+        double price = 1 + (next & 1023) / 100.0;
+        if (layout == Layout.LIST) {
+            Investment investment = list.get(i % size);
+            investment.setPrice(price);
+            return investment;
+        }
+        return holdings.updatePrice(symbols[i], price);
+    }
+
+    /**
+     * @return The heap in use after as full a collection as can be asked for.
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
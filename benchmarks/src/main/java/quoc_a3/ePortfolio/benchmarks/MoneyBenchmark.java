@@ -0,0 +1,146 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.Money;
+
+/**
+ * Compares fixed-point {@link Money} arithmetic with the double arithmetic it replaced, on the two
+ * paths that matter: summing the gain of every holding, and keeping a running total up to date as
+ * prices change. Each update benchmark keeps both a running total and the prices it was built from;
+ * at the end of each trial the running totals are checked against a fresh sum, which shows the double
+ * total drifting while the fixed-point total stays exact.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    /** Number of price updates cycled through by the update benchmarks. */
+    private static final int UPDATE_COUNT = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private int[] quantities;
+    private double[] prices;
+    private double[] bookValues;
+    private long[] priceUnits;
+    private long[] bookValueUnits;
+
+    private int[] updateRows;
+    private double[] updatePrices;
+    private long[] updatePriceUnits;
+    private int next;
+
+    private double marketValue;
+    private long marketValueUnits;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(PortfolioGenerator.SEED);
+        quantities = new int[size];
+        prices = new double[size];
+        bookValues = new double[size];
+        priceUnits = new long[size];
+        bookValueUnits = new long[size];
+        for (int i = 0; i < size; i++) {
+            quantities[i] = 1 + random.nextInt(10_000);
+            prices[i] = random.nextInt(1, 50_000) / 100.0;
+            bookValues[i] = Math.round(prices[i] * quantities[i] * random.nextDouble(0.8, 1.2) * 100) / 100.0;
+            priceUnits[i] = Money.of(prices[i]);
+            bookValueUnits[i] = Money.of(bookValues[i]);
+        }
+
+        updateRows = new int[UPDATE_COUNT];
+        updatePrices = new double[UPDATE_COUNT];
+        updatePriceUnits = new long[UPDATE_COUNT];
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            updateRows[i] = random.nextInt(size);
+            updatePrices[i] = random.nextInt(1, 50_000) / 100.0;
+            updatePriceUnits[i] = Money.of(updatePrices[i]);
+        }
+
+        for (int i = 0; i < size; i++) {
+            marketValue += prices[i] * quantities[i];
+            marketValueUnits += Money.times(priceUnits[i], quantities[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void checkTotals() {
+        double exactDouble = 0;
+        long exactUnits = 0;
+        for (int i = 0; i < size; i++) {
+            exactDouble += prices[i] * quantities[i];
+            exactUnits += Money.times(priceUnits[i], quantities[i]);
+        }
+        System.out.printf("%nRunning market value after %,d updates: double drifted by %.6f, fixed-point by %d units%n",
+                next, marketValue - exactDouble, marketValueUnits - exactUnits);
+        if (marketValueUnits != exactUnits) {
+            throw new IllegalStateException("The fixed-point running total is not exact.");
+        }
+    }
+
+    @Benchmark
+    public double gainDouble() {
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += prices[i] * quantities[i] - bookValues[i];
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long gainFixed() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += priceUnits[i] * quantities[i] - bookValueUnits[i];
+        }
+        return total;
+    }
+
+    /**
+     * A price update as GainTotals used to apply it: the market value changes by (new - old) * quantity.
+     */
+    @Benchmark
+    public double updateDouble() {
+        int update = next++ & (UPDATE_COUNT - 1);
+        int row = updateRows[update];
+        double price = updatePrices[update];
+        marketValue += (price - prices[row]) * quantities[row];
+        prices[row] = price;
+        return marketValue;
+    }
+
+    /**
+     * The same price update in Money units, with the overflow check GainTotals uses.
+     */
+    @Benchmark
+    public long updateFixed() {
+        int update = next++ & (UPDATE_COUNT - 1);
+        int row = updateRows[update];
+        long price = updatePriceUnits[update];
+        marketValueUnits += Money.times(price - priceUnits[row], quantities[row]);
+        priceUnits[row] = price;
+        return marketValueUnits;
+    }
+}
@@ -0,0 +1,132 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.Holdings;
+import quoc_a3.ePortfolio.Investment;
+import quoc_a3.ePortfolio.InvestmentType;
+import quoc_a3.ePortfolio.PortfolioCommand;
+
+/**
+ * Benchmarks of the portfolio operations behind each command, at several portfolio sizes and mixes
+ * of investment types. The scan benchmarks measure the linear approaches the indexes replaced, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g"})
+public class PortfolioBenchmark {
+
+    /** Number of symbols cycled through by the lookup benchmarks. */
+    private static final int SYMBOL_COUNT = 1 << 16;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"STOCK", "FUND", "MIXED"})
+    public PortfolioGenerator.Dataset dataset;
+
+    private Holdings holdings;
+    private List<Investment> list;
+    private String[] symbols;
+    private InvestmentType buyType;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        holdings = PortfolioGenerator.holdings(size, dataset, PortfolioGenerator.SEED);
+        list = new ArrayList<>(holdings.all());
+        symbols = PortfolioGenerator.randomSymbols(size, SYMBOL_COUNT, PortfolioGenerator.SEED + 1);
+        buyType = dataset == PortfolioGenerator.Dataset.FUND ? InvestmentType.MUTUAL_FUND : InvestmentType.STOCK;
+    }
+
+    private String nextSymbol() {
+        return symbols[next++ & (SYMBOL_COUNT - 1)];
+    }
+
+    /**
+     * Buys more of a held symbol, merging into its position. In the mixed dataset, odd positions are
+     * funds, so only even symbols are bought to keep the type matching.
+     */
+    @Benchmark
+    public Investment buy() {
+        String symbol = PortfolioGenerator.symbol((next++ % size) & ~(dataset == PortfolioGenerator.Dataset.MIXED ? 1 : 0));
+        return holdings.buy(buyType, symbol, "Benchmark", 1, 10.0);
+    }
+
+    @Benchmark
+    public Investment sell() {
+        return holdings.sell(nextSymbol(), 1);
+    }
+
+    @Benchmark
+    public Investment update() {
+        return holdings.updatePrice(nextSymbol(), 1 + (next & 1023) / 100.0);
+    }
+
+    @Benchmark
+    public Investment symbolSearch() {
+        return holdings.find(nextSymbol());
+    }
+
+    /**
+     * The linear symbol scan that searches, sells, and updates used before the symbol index.
+     */
+    @Benchmark
+    public Investment symbolSearchScan() {
+        String symbol = nextSymbol();
+        for (Investment investment : list) {
+            if (investment.getSymbol().equalsIgnoreCase(symbol)) {
+                return investment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A symbol search as run by the Search command, including the toString() output the Search panel shows.
+     */
+    @Benchmark
+    public String symbolSearchOutput() {
+        List<Investment> matches = new PortfolioCommand.Search(nextSymbol(), "", Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY).execute(holdings);
+        StringBuilder resultText = new StringBuilder("Search Results:\n");
+        for (Investment investment : matches) {
+            resultText.append(investment.toString()).append("\n");
+        }
+        return resultText.toString();
+    }
+
+    @Benchmark
+    public double gain() {
+        return holdings.getTotals().getGain();
+    }
+
+    /**
+     * The gain total computed by calling calculateGain() on every holding.
+     */
+    @Benchmark
+    public double gainScan() {
+        double total = 0;
+        for (Investment investment : list) {
+            total += investment.calculateGain();
+        }
+        return total;
+    }
+}
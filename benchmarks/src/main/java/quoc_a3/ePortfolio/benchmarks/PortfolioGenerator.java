@@ -0,0 +1,114 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import quoc_a3.ePortfolio.Holdings;
+import quoc_a3.ePortfolio.Investment;
+import quoc_a3.ePortfolio.MutualFund;
+import quoc_a3.ePortfolio.Stock;
+
+/**
+ * This class generates portfolios for the benchmarks. The same size, dataset, and seed always give
+ * the same investments, so results can be compared between versions.
+ */
+public final class PortfolioGenerator {
+
+    /** Seed used by every benchmark. */
+    public static final long SEED = 20_240_101L;
+
+    /**
+     * The kinds of investments in a generated portfolio.
+     */
+    public enum Dataset {
+        /** Stocks only. */
+        STOCK,
+        /** Mutual funds only. */
+        FUND,
+        /** Alternating stocks and mutual funds. */
+        MIXED
+    }
+
+    /** Words that investment names are built from, so keyword searches have realistic matches. */
+    private static final String[] WORDS = {
+            "global", "equity", "income", "growth", "bond", "index", "technology", "energy",
+            "health", "financial", "dividend", "small", "cap", "emerging", "markets", "value",
+            "canadian", "american", "international", "balanced", "real", "estate", "fund", "trust"
+    };
+
+    private PortfolioGenerator() {
+    }
+
+    /**
+     * @param index The position of the investment in the portfolio.
+     * @return The symbol of the generated investment at that position.
+     */
+    public static String symbol(int index) {
+        return "S" + Integer.toString(index, 36).toUpperCase();
+    }
+
+    /**
+     * Generates a list of investments, one per symbol.
+     *
+     * @param size The number of investments.
+     * @param dataset The kinds of investments.
+     * @param seed The random seed.
+     * @return The generated investments.
+     */
+    public static List<Investment> investments(int size, Dataset dataset, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Investment> investments = new ArrayList<>(size);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            name.setLength(0);
+            for (int w = 0; w < 3; w++) {
+                name.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+
+            // Large quantities, so sell benchmarks never run a position down to zero
+            int quantity = 1_000_000 + random.nextInt(1_000_000);
+            double price = Math.round(random.nextDouble(1, 500) * 100) / 100.0;
+            double bookValue = Math.round(price * quantity * random.nextDouble(0.8, 1.2) * 100) / 100.0;
+            boolean stock = dataset == Dataset.STOCK || (dataset == Dataset.MIXED && i % 2 == 0);
+            investments.add(stock
+                    ? new Stock(symbol(i), name.toString(), quantity, price, bookValue)
+                    : new MutualFund(symbol(i), name.toString(), quantity, price, bookValue));
+        }
+        return investments;
+    }
+
+    /**
+     * Generates indexed holdings.
+     *
+     * @param size The number of positions.
+     * @param dataset The kinds of investments.
+     * @param seed The random seed.
+     * @return The generated holdings.
+     */
+    public static Holdings holdings(int size, Dataset dataset, long seed) {
+        Holdings holdings = new Holdings();
+        for (Investment investment : investments(size, dataset, seed)) {
+            holdings.add(investment);
+        }
+        return holdings;
+    }
+
+    /**
+     * Picks symbols of the generated investments in a random order, for benchmarks to cycle through
+     * so the choice of symbol is not part of the measured time.
+     *
+     * @param size The number of investments generated.
+     * @param count The number of symbols to pick.
+     * @param seed The random seed.
+     * @return The picked symbols.
+     */
+    public static String[] randomSymbols(int size, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] symbols = new String[count];
+        for (int i = 0; i < count; i++) {
+            symbols[i] = symbol(random.nextInt(size));
+        }
+        return symbols;
+    }
+}
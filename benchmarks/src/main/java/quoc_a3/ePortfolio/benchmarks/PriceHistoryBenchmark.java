@@ -0,0 +1,133 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import quoc_a3.ePortfolio.Money;
+import quoc_a3.ePortfolio.PriceHistory;
+
+/**
+ * Measures recording live prices in the price history and reading one symbol's prices over a
+ * one-minute period. The prices follow a random walk with a tick every 16 ms on average per symbol, as
+ * the live price feed applies them; at the end of each trial the bytes stored per price are printed.
+ * Regular ticks arrive exactly 16 ms apart, which is the best case for the delta-of-delta timestamps;
+ * jittered ticks arrive anywhere from 8 to 24 ms apart, as quotes do after crossing a network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceHistoryBenchmark {
+
+    /** Number of ticks recorded for each symbol before the trial. */
+    private static final int TICKS_PER_SYMBOL = 20_000;
+
+    /**
+     * How far apart the ticks of a symbol are.
+     */
+    public enum Ticks {
+        /** Exactly 16 ms apart. */
+        REGULAR(0),
+        /** 16 ms apart, give or take up to 8 ms at random. */
+        JITTERED(8);
+
+        final int jitterMillis;
+
+        Ticks(int jitterMillis) {
+            this.jitterMillis = jitterMillis;
+        }
+    }
+
+    @Param({"10", "1000"})
+    public int symbols;
+
+    @Param({"REGULAR", "JITTERED"})
+    public Ticks ticks;
+
+    private Path directory;
+    private PriceHistory history;
+    private SplittableRandom random;
+    private String[] names;
+    private long[] times;
+    private long[] prices;
+    private long start;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("price-history");
+        history = PriceHistory.open(directory.resolve("portfolio.txt"));
+        random = new SplittableRandom(PortfolioGenerator.SEED);
+        names = new String[symbols];
+        times = new long[symbols];
+        prices = new long[symbols];
+        start = 1_700_000_000_000L;
+        for (int i = 0; i < symbols; i++) {
+            names[i] = PortfolioGenerator.symbol(i);
+            times[i] = start;
+            prices[i] = Money.of(random.nextInt(1, 50_000) / 100.0);
+        }
+        for (int tick = 0; tick < TICKS_PER_SYMBOL; tick++) {
+            for (int i = 0; i < symbols; i++) {
+                recordNext(i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        history.close();
+        System.out.printf("%nStored %,d prices in %,d bytes: %.2f bytes per price%n", history.getTickCount(),
+                history.getStoredBytes(), (double) history.getStoredBytes() / history.getTickCount());
+        history = null;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        recordNext(next++ % symbols);
+    }
+
+    @Benchmark
+    public int queryMinute(Blackhole blackhole) {
+        int symbol = random.nextInt(symbols);
+        long from = start + random.nextLong(TICKS_PER_SYMBOL * 16L - 60_000);
+        return history.query(names[symbol], from, from + 60_000, (timestamp, price) -> blackhole.consume(price));
+    }
+
+    /**
+     * Records the next tick of a symbol: 16 ms later give or take the jitter, with the price unchanged
+     * two times in three.
+     */
+    private void recordNext(int symbol) {
+        times[symbol] += 16 + random.nextInt(-ticks.jitterMillis, ticks.jitterMillis + 1);
+        if (random.nextInt(3) == 0) {
+            prices[symbol] += random.nextInt(-50, 51);
+        }
+        history.record(names[symbol], times[symbol], prices[symbol]);
+    }
+}
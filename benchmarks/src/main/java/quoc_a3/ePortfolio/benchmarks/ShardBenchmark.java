@@ -0,0 +1,88 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.PortfolioCommand;
+import quoc_a3.ePortfolio.PortfolioShards;
+
+/**
+ * Measures how the throughput of price updates spread over many accounts scales with the number of
+ * shards, and how long a gain report across every account takes. Each account holds the same
+ * generated positions. More shards than cores adds no throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g"})
+public class ShardBenchmark {
+
+    /** Number of updates submitted before waiting for them all to run. */
+    private static final int BATCH = 10_000;
+
+    /** Number of positions in each account. */
+    private static final int POSITIONS = 100;
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private PortfolioShards engine;
+    private String[] names;
+    private String[] symbols;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        engine = new PortfolioShards(shards);
+        names = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            names[i] = "account" + i;
+            engine.replaceHoldings(names[i], PortfolioGenerator.holdings(POSITIONS, PortfolioGenerator.Dataset.MIXED,
+                    PortfolioGenerator.SEED + i)).join();
+        }
+        symbols = PortfolioGenerator.randomSymbols(POSITIONS, 1 << 10, PortfolioGenerator.SEED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object update() {
+        CompletableFuture<?>[] updates = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            int n = next++;
+            updates[i] = engine.submit(names[n % accounts],
+                    new PortfolioCommand.Update(symbols[n & (symbols.length - 1)], 1 + (n & 1023) / 100.0));
+        }
+        return CompletableFuture.allOf(updates).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public PortfolioShards.GainReport gainReport() {
+        return engine.getGain().join();
+    }
+}
@@ -0,0 +1,73 @@
+package quoc_a3.ePortfolio.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quoc_a3.ePortfolio.Holdings;
+import quoc_a3.ePortfolio.Investment;
+import quoc_a3.ePortfolio.PortfolioSnapshot;
+
+/**
+ * Measures what publishing copy-on-write snapshots adds to the commands that change the portfolio:
+ * one price update published on its own, as a single Update command does, and a batch of updates
+ * published together, as a window of live quotes is. Also measures a symbol lookup in a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx16g"})
+public class SnapshotBenchmark {
+
+    /** Number of price updates published together by the batch benchmark. */
+    private static final int BATCH = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Holdings holdings;
+    private String[] symbols;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        holdings = PortfolioGenerator.holdings(size, PortfolioGenerator.Dataset.MIXED, PortfolioGenerator.SEED);
+        holdings.publish();
+        symbols = PortfolioGenerator.randomSymbols(size, 1 << 16, PortfolioGenerator.SEED);
+    }
+
+    @Benchmark
+    public PortfolioSnapshot updateAndPublish() {
+        holdings.updatePrice(symbols[next++ & (symbols.length - 1)], 1 + (next & 1023) / 100.0);
+        holdings.publish();
+        return holdings.getSnapshot();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public PortfolioSnapshot updateBatchAndPublish() {
+        for (int i = 0; i < BATCH; i++) {
+            holdings.updatePrice(symbols[next++ & (symbols.length - 1)], 1 + (next & 1023) / 100.0);
+        }
+        holdings.publish();
+        return holdings.getSnapshot();
+    }
+
+    @Benchmark
+    public Investment snapshotFind() {
+        return holdings.getSnapshot().find(symbols[next++ & (symbols.length - 1)]);
+    }
+}
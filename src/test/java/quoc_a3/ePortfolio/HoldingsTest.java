@@ -0,0 +1,154 @@
+package quoc_a3.ePortfolio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HoldingsTest {
+
+    @Test
+    void saleRelievesTheCostOfTheOldestLotsFirst() {
+        Holdings holdings = new Holdings();
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 1);
+        holdings.buy(InvestmentType.STOCK, "abc", "Abc Corp", 10, 3);
+        holdings.updatePrice("ABC", 5);
+
+        Investment investment = holdings.sell("ABC", 15, TaxLots.Method.FIFO);
+        assertEquals(5, investment.getQuantity());
+        assertEquals(Money.of(15), investment.getBookValueUnits());
+        assertEquals(Money.of(50), holdings.getTotals().getRealizedGainUnits(InvestmentType.STOCK));
+
+        holdings.sell("ABC", 5);
+        assertNull(holdings.find("ABC"));
+        assertEquals(0, holdings.size());
+    }
+
+    @Test
+    void purchaseTooLargeToMergeChangesNothing() {
+        Holdings holdings = new Holdings();
+        holdings.buy(InvestmentType.STOCK, "OVF", "Overflow Inc", Integer.MAX_VALUE - 5, 0.0001);
+        String before = state(holdings, "OVF");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> holdings.buy(InvestmentType.STOCK, "OVF", "Overflow Inc", 10, 0.0001));
+        assertEquals(before, state(holdings, "OVF"));
+        assertNull(holdings.getLots(holdings.find("OVF")));
+    }
+
+    @Test
+    void priceTooLargeForTheMarketValueChangesNothing() {
+        Holdings holdings = new Holdings();
+        holdings.buy(InvestmentType.MUTUAL_FUND, "BIG", "Big Fund", 1_000_000_000, 1);
+        String before = state(holdings, "BIG");
+
+        assertThrows(IllegalArgumentException.class, () -> holdings.updatePrice("BIG", 1e9));
+        assertEquals(before, state(holdings, "BIG"));
+    }
+
+    @Test
+    void negativeOrMissingPriceChangesNothing() {
+        Holdings holdings = new Holdings();
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+        String before = state(holdings, "ABC");
+
+        assertThrows(IllegalArgumentException.class, () -> holdings.updatePrice("ABC", -1));
+        assertThrows(IllegalArgumentException.class, () -> holdings.updatePrice("ABC", Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> holdings.updatePrice("ABC", 1e300));
+        assertThrows(IllegalArgumentException.class, () -> holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> holdings.buy(InvestmentType.STOCK, "NEW", "New Corp", 1, -1));
+        assertEquals(before, state(holdings, "ABC"));
+        assertNull(holdings.find("NEW"));
+    }
+
+    @Test
+    void symbolHeldAsOneTypeCanNotBeBoughtAsTheOther() {
+        Holdings holdings = new Holdings();
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> holdings.buy(InvestmentType.MUTUAL_FUND, "ABC", "Abc Fund", 10, 5));
+        assertEquals(InvestmentType.STOCK, holdings.find("ABC").getInvestmentType());
+    }
+
+    @Test
+    void columnarHoldingsBehaveLikeObjectHoldings() {
+        Holdings objects = new Holdings();
+        Holdings columns = Holdings.columnar();
+        Random random = new Random(6);
+        for (int i = 0; i < 20_000; i++) {
+            String symbol = "C" + random.nextInt(200);
+            int operation = random.nextInt(4);
+            InvestmentType type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+            TaxLots.Method method = random.nextBoolean() ? TaxLots.Method.FIFO : TaxLots.Method.AVERAGE;
+            int quantity = 1 + random.nextInt(7);
+            double price = random.nextInt(10_000_000) / 10_000.0 + (random.nextInt(50) == 0 ? 1e11 : 0);
+
+            assertEquals(apply(objects, operation, type, symbol, quantity, price, method),
+                    apply(columns, operation, type, symbol, quantity, price, method), "change " + i);
+            if (i % 500 == 0) {
+                objects.publish();
+                columns.publish();
+                assertEquals(objects.search("", 100, 300).toString(), columns.search("", 100, 300).toString());
+            }
+        }
+        for (Investment investment : objects.all()) {
+            assertEquals(state(objects, investment.getSymbol()), state(columns, investment.getSymbol()));
+        }
+        assertEquals(objects.size(), columns.size());
+    }
+
+    @Test
+    void removedViewKeepsItsValues() {
+        Holdings holdings = Holdings.columnar();
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+        Investment investment = holdings.sell("ABC", 10);
+
+        assertEquals(0, investment.getQuantity());
+        assertEquals("Abc Corp", investment.getName());
+        assertFalse(holdings.remove(investment));
+    }
+
+    /**
+     * Makes one change, and describes its result or why it was refused.
+     */
+    private static String apply(Holdings holdings, int operation, InvestmentType type, String symbol, int quantity,
+                                double price, TaxLots.Method method) {
+        try {
+            switch (operation) {
+                case 0:
+                    return holdings.buy(type, symbol, "Name of " + symbol, quantity, price).toString();
+                case 1:
+                    return holdings.sell(symbol, quantity, method).toString();
+                case 2:
+                    return holdings.updatePrice(symbol, price).toString();
+                default:
+                    Investment investment = holdings.find(symbol);
+                    return investment == null ? "not held" : holdings.remove(investment) + " " + investment;
+            }
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * @return A position with its purchase lots, and the holdings' totals.
+     */
+    private static String state(Holdings holdings, String symbol) {
+        Investment investment = holdings.find(symbol);
+        StringBuilder text = new StringBuilder(String.valueOf(investment));
+        TaxLots lots = investment == null ? null : holdings.getLots(investment);
+        if (lots != null) {
+            for (int lot = 0; lot < lots.getLotCount(); lot++) {
+                text.append(" [").append(lots.getQuantity(lot)).append(' ').append(lots.getCost(lot)).append(']');
+            }
+        }
+        GainTotals totals = holdings.getTotals();
+        return text.append(' ').append(totals.getMarketValue()).append(' ').append(totals.getBookValue())
+                .append(' ').append(totals.getGainUnits()).append(' ').append(totals.getRealizedGainUnits()).toString();
+    }
+}
@@ -0,0 +1,106 @@
+package quoc_a3.ePortfolio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PriceHistoryTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void regularTicksReadBackExactly() throws IOException {
+        roundTrip(0, 50);
+    }
+
+    @Test
+    void jitteredTicksReadBackExactly() throws IOException {
+        roundTrip(8, 50);
+    }
+
+    @Test
+    void largeGapsAndMovesReadBackExactly() throws IOException {
+        roundTrip(86_400_000, Money.of(1e9));
+    }
+
+    /**
+     * Records several chunks of ticks 16 ms apart give or take the jitter, but never out of order, and
+     * with prices that move by up to the given units one tick in three, and checks they read back
+     * the same both before and after the history is closed and opened again.
+     */
+    private void roundTrip(int jitterMillis, long maxMove) throws IOException {
+        int count = PriceHistory.CHUNK_TICKS * 3 + 17;
+        long[] times = new long[count];
+        long[] prices = new long[count];
+        Random random = new Random(jitterMillis);
+        long time = START;
+        long price = Money.of(100);
+        for (int i = 0; i < count; i++) {
+            time += Math.max(0, 16 + (jitterMillis == 0 ? 0 : random.nextInt(2 * jitterMillis + 1) - jitterMillis));
+            price = Math.max(0, price + (random.nextInt(3) == 0 ? random.nextLong() % (maxMove + 1) : 0));
+            times[i] = time;
+            prices[i] = price;
+        }
+
+        Path dataFile = directory.resolve("portfolio.txt");
+        PriceHistory history = PriceHistory.open(dataFile);
+        for (int i = 0; i < count; i++) {
+            history.record("abc", times[i], prices[i]);
+        }
+        assertTicks(history.query("ABC", Long.MIN_VALUE, Long.MAX_VALUE), times, prices, 0, count);
+        history.close();
+
+        PriceHistory reopened = PriceHistory.open(dataFile);
+        assertTicks(reopened.query("ABC", Long.MIN_VALUE, Long.MAX_VALUE), times, prices, 0, count);
+        assertTicks(reopened.query("ABC", times[1000], times[2500]), times, prices, 1000, 2501);
+        reopened.close();
+    }
+
+    private static void assertTicks(PriceHistory.Ticks ticks, long[] times, long[] prices, int from, int to) {
+        assertEquals(to - from, ticks.size());
+        for (int i = from; i < to; i++) {
+            assertEquals(times[i], ticks.getTimestamp(i - from), "time of tick " + i);
+            assertEquals(Money.toDouble(prices[i]), ticks.getPrice(i - from), "price of tick " + i);
+        }
+    }
+
+    @Test
+    void tickBeforeTheLastIsRecordedAtTheLastTime() throws IOException {
+        PriceHistory history = PriceHistory.open(directory.resolve("portfolio.txt"));
+        history.record("ABC", START, Money.of(1));
+        history.record("ABC", START - 5_000, Money.of(2));
+
+        PriceHistory.Ticks ticks = history.query("ABC", START, START);
+        assertEquals(2, ticks.size());
+        assertEquals(2.0, ticks.getPrice(1));
+        history.close();
+    }
+
+    @Test
+    void symbolsAreKeptApart() throws IOException {
+        PriceHistory history = PriceHistory.open(directory.resolve("portfolio.txt"));
+        for (int i = 0; i < 3000; i++) {
+            history.record("ABC", START + i, Money.of(1));
+            history.record("XYZ", START + i, Money.of(2));
+        }
+        history.flush();
+
+        PriceHistory.Ticks ticks = history.query("xyz", START, START + 2999);
+        assertEquals(3000, ticks.size());
+        for (int i = 0; i < ticks.size(); i++) {
+            assertEquals(2.0, ticks.getPrice(i));
+        }
+        assertEquals(0, history.query("NONE", START, START + 2999).size());
+        assertTrue(history.getStoredBytes() > 0);
+        history.close();
+    }
+}
@@ -0,0 +1,96 @@
+package quoc_a3.ePortfolio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TaxLotsTest {
+
+    @Test
+    void fifoSellsTheOldestLotsFirst() {
+        TaxLots lots = new TaxLots(10, 100);
+        lots.add(10, 300);
+
+        // The whole first lot, and half of the second at its cost per unit
+        assertEquals(250, lots.relieve(15, TaxLots.Method.FIFO));
+        assertEquals(1, lots.getLotCount());
+        assertEquals(5, lots.getQuantity(0));
+        assertEquals(150, lots.getCost(0));
+    }
+
+    @Test
+    void averageSellsAtTheAverageCostOfEveryLot() {
+        TaxLots lots = new TaxLots(10, 100);
+        lots.add(30, 500);
+
+        assertEquals(150, lots.relieve(10, TaxLots.Method.AVERAGE));
+        assertEquals(1, lots.getLotCount());
+        assertEquals(30, lots.getQuantity(0));
+        assertEquals(450, lots.getCost(0));
+    }
+
+    @Test
+    void sellingEveryUnitRelievesTheWholeCost() {
+        Random random = new Random(1);
+        for (TaxLots.Method method : TaxLots.Method.values()) {
+            TaxLots lots = new TaxLots(7, 12_345);
+            int quantity = 7;
+            long cost = 12_345;
+            for (int i = 0; i < 100; i++) {
+                int bought = 1 + random.nextInt(50);
+                long paid = random.nextInt(1_000_000);
+                lots.add(bought, paid);
+                quantity += bought;
+                cost += paid;
+            }
+
+            long relieved = 0;
+            while (quantity > 0) {
+                int sold = Math.min(quantity, 1 + random.nextInt(30));
+                relieved += lots.relieve(sold, method);
+                quantity -= sold;
+            }
+            assertEquals(cost, relieved, method.toString());
+        }
+    }
+
+    @Test
+    void costIsWhatRelieveTakes() {
+        Random random = new Random(2);
+        for (int run = 0; run < 200; run++) {
+            TaxLots.Method method = random.nextBoolean() ? TaxLots.Method.FIFO : TaxLots.Method.AVERAGE;
+            TaxLots lots = new TaxLots(1 + random.nextInt(100), random.nextInt(1_000_000));
+            int quantity = lots.getQuantity(0);
+            for (int step = 0; step < 50; step++) {
+                if (random.nextInt(3) > 0) {
+                    int bought = 1 + random.nextInt(100);
+                    lots.add(bought, random.nextInt(1_000_000));
+                    quantity += bought;
+                } else {
+                    int sold = 1 + random.nextInt(quantity);
+                    long expected = lots.cost(sold, method);
+                    assertEquals(expected, lots.relieve(sold, method));
+                    quantity -= sold;
+                    if (quantity == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void sellingNothingOrTooMuchChangesNothing() {
+        TaxLots lots = new TaxLots(10, 100);
+        lots.add(5, 80);
+
+        assertThrows(IllegalArgumentException.class, () -> lots.relieve(0, TaxLots.Method.FIFO));
+        assertThrows(IllegalArgumentException.class, () -> lots.relieve(16, TaxLots.Method.AVERAGE));
+        assertThrows(IllegalArgumentException.class, () -> lots.cost(16, TaxLots.Method.FIFO));
+        assertEquals(2, lots.getLotCount());
+        assertEquals(180, lots.relieve(15, TaxLots.Method.FIFO));
+    }
+}
@@ -0,0 +1,233 @@
+package quoc_a3.ePortfolio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private Path dataFile;
+    private Path journalFile;
+
+    @BeforeEach
+    void setUp() {
+        dataFile = directory.resolve("portfolio.txt");
+        journalFile = directory.resolve("portfolio.txt.journal");
+    }
+
+    @Test
+    void replayRestoresEveryChange() throws IOException {
+        Holdings holdings = new Holdings();
+        TransactionJournal journal = TransactionJournal.open(dataFile, holdings, TransactionJournal.replay(dataFile, holdings, 0));
+        trade(holdings, 2_000);
+        journal.close();
+
+        assertEquals(dump(holdings), dump(recover()));
+    }
+
+    @Test
+    void snapshotAndLaterRecordsRestoreEveryChange() throws IOException {
+        Holdings holdings = new Holdings();
+        TransactionJournal journal = TransactionJournal.open(dataFile, holdings, TransactionJournal.replay(dataFile, holdings, 0));
+        trade(holdings, 2_000);
+
+        // A name too long for writeUTF, with characters that take several bytes in UTF-8
+        holdings.buy(InvestmentType.MUTUAL_FUND, "LONG", "été ".repeat(20_000), 3, 1.5);
+        journal.snapshot();
+        trade(holdings, 500);
+        holdings.updatePrice("LONG", 2.25);
+        journal.close();
+
+        Holdings recovered = recover();
+        assertEquals(dump(holdings), dump(recovered));
+        assertEquals(holdings.find("LONG").getName(), recovered.find("LONG").getName());
+    }
+
+    @Test
+    void tornRecordIsDroppedAndLaterRecordsAreKept() throws IOException {
+        Holdings holdings = new Holdings();
+        TransactionJournal journal = TransactionJournal.open(dataFile, holdings, TransactionJournal.replay(dataFile, holdings, 0));
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+        journal.close();
+        String before = dump(holdings);
+
+        // A crash in the middle of a write leaves a length and part of a record
+        Files.write(journalFile, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        Holdings recovered = new Holdings();
+        TransactionJournal.Recovery recovery = TransactionJournal.replay(dataFile, recovered, 0);
+        assertEquals(1, recovery.replayed);
+        assertEquals(before, dump(recovered));
+
+        // Opening the journal cuts the torn record off, so records written after it are replayed too
+        journal = TransactionJournal.open(dataFile, recovered, recovery);
+        recovered.sell("ABC", 4);
+        journal.close();
+        assertEquals(dump(recovered), dump(recover()));
+    }
+
+    @Test
+    void recordWithABadChecksumEndsTheReplay() throws IOException {
+        Holdings holdings = new Holdings();
+        TransactionJournal journal = TransactionJournal.open(dataFile, holdings, TransactionJournal.replay(dataFile, holdings, 0));
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+        String before = dump(holdings);
+        holdings.updatePrice("ABC", 7);
+        journal.close();
+
+        // Flip a bit in the price of the last record
+        byte[] bytes = Files.readAllBytes(journalFile);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(journalFile, bytes);
+
+        Holdings recovered = new Holdings();
+        TransactionJournal.Recovery recovery = TransactionJournal.replay(dataFile, recovered, 0);
+        assertEquals(1, recovery.replayed);
+        assertEquals(before, dump(recovered));
+    }
+
+    @Test
+    void purchaseOfAnUnknownTypeIsRejected() throws IOException {
+        Holdings holdings = new Holdings();
+        TransactionJournal journal = TransactionJournal.open(dataFile, holdings, TransactionJournal.replay(dataFile, holdings, 0));
+        holdings.buy(InvestmentType.STOCK, "ABC", "Abc Corp", 10, 5);
+        journal.close();
+        String before = dump(holdings);
+
+        // A purchase with a valid checksum but a type byte no version writes
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(1);
+        out.writeLong(2);
+        out.writeByte(9);
+        writeString(out, "XYZ");
+        writeString(out, "Xyz Corp");
+        out.writeInt(10);
+        out.writeDouble(5);
+        appendRecord(payload.toByteArray());
+
+        Holdings recovered = new Holdings();
+        TransactionJournal.Recovery recovery = TransactionJournal.replay(dataFile, recovered, 0);
+        assertEquals(2, recovery.replayed);
+        assertEquals(1, recovery.rejected);
+        assertEquals(2, recovery.sequence);
+        assertEquals(before, dump(recovered));
+    }
+
+    /**
+     * Buys, sells, and reprices a few dozen symbols at random, including changes the holdings refuse.
+     */
+    private static void trade(Holdings holdings, int changes) {
+        Random random = new Random(changes);
+        for (int i = 0; i < changes; i++) {
+            String symbol = "S" + random.nextInt(40);
+            try {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        InvestmentType type = random.nextBoolean() ? InvestmentType.STOCK : InvestmentType.MUTUAL_FUND;
+                        holdings.buy(type, symbol, "Name of " + symbol, 1 + random.nextInt(20), random.nextInt(1_000_000) / 100.0);
+                        break;
+                    case 1:
+                        TaxLots.Method method = random.nextBoolean() ? TaxLots.Method.FIFO : TaxLots.Method.AVERAGE;
+                        holdings.sell(symbol, 1 + random.nextInt(15), method);
+                        break;
+                    default:
+                        holdings.updatePrice(symbol, random.nextInt(1_000_000) / 100.0);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                // Refused changes are not journaled
+            }
+        }
+    }
+
+    /**
+     * Loads the snapshot, if there is one, and replays the journal after it, as the application does on startup.
+     */
+    private Holdings recover() throws IOException {
+        Holdings recovered = new Holdings();
+        long sequence = 0;
+        if (TransactionJournal.hasSnapshot(dataFile)) {
+            sequence = TransactionJournal.readSnapshot(dataFile, recovered, new PortfolioLoader.Listener() {
+                @Override
+                public void loaded(long line, Investment investment) {
+                    recovered.add(investment);
+                }
+
+                @Override
+                public void skipped(long line, String reason) {
+                    fail(reason);
+                }
+
+                @Override
+                public void progress(long bytesRead, long totalBytes) {
+                }
+            });
+        }
+        TransactionJournal.Recovery recovery = TransactionJournal.replay(dataFile, recovered, sequence);
+        assertEquals(0, recovery.rejected);
+        return recovered;
+    }
+
+    /**
+     * @return Every position with its purchase lots, in symbol order, and the realized gains.
+     */
+    private static String dump(Holdings holdings) {
+        List<Investment> positions = new ArrayList<>(holdings.all());
+        positions.sort(Comparator.comparing(Investment::getSymbol));
+        StringBuilder text = new StringBuilder();
+        for (Investment investment : positions) {
+            text.append(investment.getSymbol()).append(' ').append(investment.getInvestmentType())
+                    .append(' ').append(investment.getQuantity()).append(' ').append(investment.getPriceUnits())
+                    .append(' ').append(investment.getBookValueUnits());
+            TaxLots lots = holdings.getLots(investment);
+            if (lots != null) {
+                for (int lot = 0; lot < lots.getLotCount(); lot++) {
+                    text.append(" [").append(lots.getQuantity(lot)).append(' ').append(lots.getCost(lot)).append(']');
+                }
+            }
+            text.append('\n');
+        }
+        text.append(holdings.getTotals().getRealizedGainUnits(InvestmentType.STOCK)).append(' ')
+                .append(holdings.getTotals().getRealizedGainUnits(InvestmentType.MUTUAL_FUND));
+        return text.toString();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Appends a record framed the way the journal frames them, with its length and checksum.
+     */
+    private void appendRecord(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        Files.write(journalFile, record.toByteArray(), StandardOpenOption.APPEND);
+    }
+}